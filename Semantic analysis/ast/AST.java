@@ -100,11 +100,15 @@ public class AST implements Visitable {
     public static class Identifier extends Node implements Expression {
         private final String name;
         private Symbol symbol;
+        private int depth = -1, slot = -1; // frame slot, set by mocha.FrameResolver
 
         public Identifier(int line, int col, String name) { super(line, col); this.name = name; }
         public String getName() { return name; }
         public void setSymbol(Symbol s) { this.symbol = s; }
         public Symbol getSymbol() { return symbol; }
+        public void setSlot(int depth, int slot) { this.depth = depth; this.slot = slot; }
+        public int getDepth() { return depth; }
+        public int getSlot() { return slot; }
         @Override public void accept(NodeVisitor v) { v.visit(this); }
     }
 
@@ -117,9 +121,12 @@ public class AST implements Visitable {
 
     public static class ArrayIndex extends Node implements Expression {
         private final Expression base, index;
+        private boolean inBounds; // set by the type checker when the index is provably in range
         public ArrayIndex(int l, int c, Expression base, Expression index) { super(l, c); this.base = base; this.index = index; }
         public Expression getBase() { return base; }
         public Expression getIndex() { return index; }
+        public boolean isInBounds() { return inBounds; }
+        public void setInBounds(boolean inBounds) { this.inBounds = inBounds; }
         @Override public void accept(NodeVisitor v) { v.visit(this); }
     }
 
@@ -131,6 +138,9 @@ public class AST implements Visitable {
     }
 
     // ========================== EXPRESSIONS ==========================
+    /** The operand types a Relation or Power works on: both int, both float, one of each, or bool. */
+    public enum Operands { INT, FLOAT, MIXED, BOOL }
+
     public static class LogicalNot extends Node implements Expression {
         private final Expression expression;
         public LogicalNot(int l, int c, Expression expr) { super(l, c); this.expression = expr; }
@@ -140,9 +150,12 @@ public class AST implements Visitable {
 
     public static class Power extends Node implements Expression {
         private final Expression base, exponent;
+        private Operands operands;              // set by mocha.FrameResolver
         public Power(int l, int c, Expression base, Expression exponent) { super(l, c); this.base = base; this.exponent = exponent; }
         public Expression getBase() { return base; }
         public Expression getExponent() { return exponent; }
+        public void setOperands(Operands o) { this.operands = o; }
+        public Operands getOperands() { return operands; }
         @Override public void accept(NodeVisitor v) { v.visit(this); }
     }
 
@@ -203,12 +216,28 @@ public class AST implements Visitable {
     }
 
     public static class Relation extends Node implements Expression {
+        /** The comparison, numbered as mocha.Bytecode numbers relations. */
+        public enum Op {
+            EQ("=="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+            private final String symbol;
+            Op(String symbol) { this.symbol = symbol; }
+            public String symbol() { return symbol; }
+            public static Op of(String symbol) {
+                for (Op op : values()) if (op.symbol.equals(symbol)) return op;
+                throw new IllegalArgumentException("Unknown relop: " + symbol);
+            }
+        }
         private final Expression left, right;
         private final String operator;
-        public Relation(int l, int c, Expression left, Expression right, String op) { super(l, c); this.left = left; this.right = right; this.operator = op; }
+        private final Op op;
+        private Operands operands;              // set by mocha.FrameResolver
+        public Relation(int l, int c, Expression left, Expression right, String op) { super(l, c); this.left = left; this.right = right; this.operator = op; this.op = Op.of(op); }
         public Expression getLeft() { return left; }
         public Expression getRight() { return right; }
         public String getOperator() { return operator; }
+        public Op getOp() { return op; }
+        public void setOperands(Operands o) { this.operands = o; }
+        public Operands getOperands() { return operands; }
         @Override public void accept(NodeVisitor v) { v.visit(this); }
     }
 
@@ -251,8 +280,11 @@ public class AST implements Visitable {
 
     public static class ReturnStatement extends Node implements Statement {
         private final Expression value; // can be null
+        private boolean selfTailCall;   // set by mocha.FrameResolver when value calls the enclosing function
         public ReturnStatement(int l, int c, Expression value) { super(l,c); this.value = value; }
         public Expression getValue() { return value; }
+        public void setSelfTailCall(boolean tail) { this.selfTailCall = tail; }
+        public boolean isSelfTailCall() { return selfTailCall; }
         @Override public void accept(NodeVisitor v) { v.visit(this); }
     }
 
@@ -268,9 +300,14 @@ public class AST implements Visitable {
     public static class FunctionCall extends Node implements Expression, Statement {
         private final Identifier identifier;
         private final ArgumentList arguments;
+        private mocha.Builtin builtin;          // callee, set by mocha.FrameResolver:
+        private FunctionDeclaration callee;     // one or the other
         public FunctionCall(int l, int c, Identifier id, ArgumentList args) { super(l,c); this.identifier = id; this.arguments = args; }
         public Identifier getIdentifier() { return identifier; }
         public ArgumentList getArguments() { return arguments; }
+        public void setTarget(mocha.Builtin b, FunctionDeclaration fd) { this.builtin = b; this.callee = fd; }
+        public mocha.Builtin getBuiltin() { return builtin; }
+        public FunctionDeclaration getCallee() { return callee; }
         @Override public void accept(NodeVisitor v) { v.visit(this); }
     }
 
@@ -0,0 +1,193 @@
+package ast;
+import ast.AST.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Visits every node of a tree in source (pre-)order.
+ * Subclasses override enter() to see each node, or a visit method to change how
+ * one kind of node is walked (call super.visit to keep descending).
+ */
+public class TreeWalker implements NodeVisitor {
+
+    /** Called once for every node, before its children are walked. */
+    protected void enter(Visitable node) {
+    }
+
+    /** All nodes below (and including) root, in pre-order. */
+    public static List<Visitable> preOrder(Visitable root) {
+        List<Visitable> nodes = new ArrayList<>();
+        root.accept(new TreeWalker() {
+            @Override
+            protected void enter(Visitable node) {
+                nodes.add(node);
+            }
+        });
+        return nodes;
+    }
+
+    // literals
+    @Override public void visit(BoolLiteral node)    { enter(node); }
+    @Override public void visit(IntegerLiteral node) { enter(node); }
+    @Override public void visit(FloatLiteral node)   { enter(node); }
+
+    // designators
+    @Override
+    public void visit(AddressOf node) {
+        enter(node);
+        node.getIdentifier().accept(this);
+    }
+
+    @Override
+    public void visit(ArrayIndex node) {
+        enter(node);
+        node.getBase().accept(this);
+        node.getIndex().accept(this);
+    }
+
+    @Override
+    public void visit(Dereference node) {
+        enter(node);
+        node.getExpression().accept(this);
+    }
+
+    @Override public void visit(Identifier node) { enter(node); }
+
+    // expressions
+    @Override
+    public void visit(LogicalNot node) {
+        enter(node);
+        node.getExpression().accept(this);
+    }
+
+    @Override
+    public void visit(UnaryMinus node) {
+        enter(node);
+        node.getExpr().accept(this);
+    }
+
+    @Override
+    public void visit(Power node) {
+        enter(node);
+        node.getBase().accept(this);
+        node.getExponent().accept(this);
+    }
+
+    @Override public void visit(Multiplication node) { binary(node, node.getLeft(), node.getRight()); }
+    @Override public void visit(Division node)       { binary(node, node.getLeft(), node.getRight()); }
+    @Override public void visit(Modulo node)         { binary(node, node.getLeft(), node.getRight()); }
+    @Override public void visit(LogicalAnd node)     { binary(node, node.getLeft(), node.getRight()); }
+    @Override public void visit(Addition node)       { binary(node, node.getLeft(), node.getRight()); }
+    @Override public void visit(Subtraction node)    { binary(node, node.getLeft(), node.getRight()); }
+    @Override public void visit(LogicalOr node)      { binary(node, node.getLeft(), node.getRight()); }
+    @Override public void visit(Relation node)       { binary(node, node.getLeft(), node.getRight()); }
+
+    private void binary(Visitable node, Expression left, Expression right) {
+        enter(node);
+        left.accept(this);
+        right.accept(this);
+    }
+
+    // statements
+    @Override
+    public void visit(Assignment node) {
+        enter(node);
+        node.getDestination().accept(this);
+        node.getSource().accept(this);
+    }
+
+    @Override
+    public void visit(IfStatement node) {
+        enter(node);
+        node.getCondition().accept(this);
+        node.getThenBlock().accept(this);
+        if (node.getElseBlock() != null) node.getElseBlock().accept(this);
+    }
+
+    @Override
+    public void visit(WhileStatement node) {
+        enter(node);
+        node.getCondition().accept(this);
+        node.getBody().accept(this);
+    }
+
+    @Override
+    public void visit(RepeatStatement node) {
+        enter(node);
+        node.getBody().accept(this);
+        node.getCondition().accept(this);
+    }
+
+    @Override
+    public void visit(ReturnStatement node) {
+        enter(node);
+        if (node.getValue() != null) node.getValue().accept(this);
+    }
+
+    @Override
+    public void visit(StatementSequence node) {
+        enter(node);
+        for (Statement s : node) {
+            if (s != null) s.accept(this);
+        }
+    }
+
+    // functions
+    @Override
+    public void visit(ArgumentList node) {
+        enter(node);
+        for (Expression e : node.getArguments()) e.accept(this);
+    }
+
+    @Override
+    public void visit(FunctionCall node) {
+        enter(node);
+        node.getIdentifier().accept(this);
+        node.getArguments().accept(this);
+    }
+
+    @Override
+    public void visit(FunctionBody node) {
+        enter(node);
+        node.getDeclarations().accept(this);
+        node.getStatements().accept(this);
+    }
+
+    @Override
+    public void visit(FunctionDeclaration node) {
+        enter(node);
+        node.getIdentifier().accept(this);
+        // FormalParameter.accept is a no-op, so parameters are walked here
+        for (FormalParameter p : node.getParameters()) {
+            enter(p);
+            p.getIdentifier().accept(this);
+            p.getTypeNode().accept(this);
+        }
+        node.getReturnType().accept(this);
+        node.getBody().accept(this);
+    }
+
+    // declarations
+    @Override
+    public void visit(VariableDeclaration node) {
+        enter(node);
+        node.getIdentifier().accept(this);
+        node.getTypeNode().accept(this);
+    }
+
+    @Override
+    public void visit(DeclarationList node) {
+        enter(node);
+        for (Declaration d : node) d.accept(this);
+    }
+
+    @Override
+    public void visit(Computation node) {
+        enter(node);
+        node.variables().accept(this);
+        node.functions().accept(this);
+        node.mainStatementSequence().accept(this);
+    }
+
+    @Override public void visit(TypeNode node) { enter(node); }
+}
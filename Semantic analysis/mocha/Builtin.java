@@ -0,0 +1,30 @@
+package mocha;
+
+/** The built-in functions, as a FunctionCall resolves to them (see FrameResolver). */
+public enum Builtin {
+    PRINT_INT("printInt"),
+    PRINT_FLOAT("printFloat"),
+    PRINT_BOOL("printBool"),
+    PRINTLN("println"),
+    READ_INT("readInt"),
+    READ_FLOAT("readFloat"),
+    READ_BOOL("readBool");
+
+    private final String name;
+
+    Builtin(String name) {
+        this.name = name;
+    }
+
+    public String functionName() {
+        return name;
+    }
+
+    /** The built-in called name, or null. */
+    public static Builtin named(String name) {
+        for (Builtin b : values()) {
+            if (b.name.equals(name)) return b;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,119 @@
+package mocha;
+
+/**
+ * Register bytecode produced by BytecodeCompiler and run by RegisterVM.
+ *
+ * A program is a flat int[]. The header holds the pc of main, the register count
+ * of main's frame and the number of globals; instructions follow, one opcode word
+ * and then its operands. Operands named d, s, a, b, i are registers of the current
+ * frame, g is a global, t is an absolute pc. Every register has an int, a double and
+ * a reference cell; an opcode picks the one it uses (bools are ints 0/1). A function
+ * starts with a word holding its frame size; its parameters are registers 0..n-1,
+ * its locals follow and temporaries come after them.
+ */
+final class Bytecode {
+
+    private Bytecode() {
+    }
+
+    // header
+    static final int MAIN_PC = 0, MAIN_SIZE = 1, GLOBAL_COUNT = 2, HEADER = 3;
+
+    // element kinds of NEWARR; bool arrays are int arrays
+    static final int ELEM_INT = 0, ELEM_FLOAT = 1;
+
+    static final int
+        HALT   = 0,
+        ICONST = 1,   // d imm
+        FCONST = 2,   // d floatBits
+        IMOV   = 3,   // d s
+        FMOV   = 4,   // d s
+        AMOV   = 5,   // d s
+        I2F    = 6,   // d s
+
+        GETI   = 7,   // d g
+        GETF   = 8,
+        GETA   = 9,
+        PUTI   = 10,  // g s
+        PUTF   = 11,
+        PUTA   = 12,
+
+        IADD   = 13,  // d a b
+        ISUB   = 14,
+        IMUL   = 15,
+        IDIV   = 16,
+        IMOD   = 17,
+        IPOW   = 18,
+        FADD   = 19,
+        FSUB   = 20,
+        FMUL   = 21,
+        FDIV   = 22,
+        FPOW   = 23,
+        INEG   = 24,  // d a
+        FNEG   = 25,
+        NOT    = 26,
+
+        IEQ    = 27,  // d a b, in the order EQ NE LT LE GT GE
+        INE    = 28,
+        ILT    = 29,
+        ILE    = 30,
+        IGT    = 31,
+        IGE    = 32,
+        FEQ    = 33,
+        FNE    = 34,
+        FLT    = 35,
+        FLE    = 36,
+        FGT    = 37,
+        FGE    = 38,
+
+        JMP    = 39,  // t
+        JZ     = 40,  // a t
+        JNZ    = 41,  // a t
+        IJEQ   = 42,  // a b t: jump if the relation holds, same order as IEQ
+        IJNE   = 43,
+        IJLT   = 44,
+        IJLE   = 45,
+        IJGT   = 46,
+        IJGE   = 47,
+
+        NEWARR = 48,  // d elem ndims extent...
+        ALOADI = 49,  // d a i
+        ALOADF = 50,
+        ALOADA = 51,
+        ASTOREI = 52, // a i s
+        ASTOREF = 53,
+        ASTOREA = 54,
+
+        CALL   = 55,  // t base nargs d: arguments in base.., result into d
+        RET    = 56,
+        RETI   = 57,  // s
+        RETF   = 58,
+        RETA   = 59,
+
+        RDI    = 60,  // d
+        RDF    = 61,
+        RDB    = 62,
+        WRI    = 63,  // s
+        WRF    = 64,
+        WRB    = 65,
+        WRL    = 66;
+
+    // relation offsets from IEQ, FEQ and IJEQ
+    static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+
+    /** The relation that holds exactly when rel does not. */
+    static int negate(int rel) {
+        switch (rel) {
+            case EQ: return NE;
+            case NE: return EQ;
+            case LT: return GE;
+            case LE: return GT;
+            case GT: return LE;
+            default: return LT;
+        }
+    }
+
+    static int relation(ast.AST.Relation.Op op) {
+        return op.ordinal(); // declared in the same order
+    }
+}
@@ -0,0 +1,472 @@
+package mocha;
+
+import static mocha.Bytecode.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import ast.AST;
+
+/**
+ * Translates a type-checked program into the register bytecode of Bytecode.
+ *
+ * Parameters and locals use the registers FrameResolver assigns them; temporaries are
+ * handed out above them and released after every statement. An expression is
+ * compiled into the register its consumer asks for when there is one (the variable of
+ * an assignment, an argument slot), so most values are never moved. Conditions of
+ * if, while and repeat compile to branches, int comparisons to single fused
+ * compare-and-branch instructions.
+ */
+final class BytecodeCompiler implements ast.NodeVisitor {
+
+    private static final int INT = MiniInterpreter.INT, FLOAT = MiniInterpreter.FLOAT,
+                             BOOL = MiniInterpreter.BOOL, REF = MiniInterpreter.REF;
+
+    private int[] code = new int[256];
+    private int pc;
+
+    private FrameResolver frames;
+    private final Map<AST.FunctionDeclaration, Integer> entries = new IdentityHashMap<>();
+    private final Map<AST.FunctionDeclaration, List<Integer>> callSites = new IdentityHashMap<>();
+
+    private int next;          // first free register
+    private int max;           // registers used by the function being compiled
+    private boolean inMain;
+
+    // visitor protocol: the register wanted (-1 for any) and the register produced
+    private int want;
+    private int reg;
+
+    int[] compile(ast.Computation prog, FrameResolver frames) {
+        this.frames = frames;
+        pc = HEADER;
+
+        // main: allocate the global arrays, then run the statements
+        inMain = true;
+        next = max = 0;
+        code[MAIN_PC] = pc;
+        for (AST.Declaration d : prog.variables()) {
+            AST.VariableDeclaration vd = (AST.VariableDeclaration) d;
+            types.Type t = ((AST.TypeNode) vd.getTypeNode()).getActualType();
+            if (MiniInterpreter.kind(t) == REF) {
+                int r = temp();
+                newArray(r, t);
+                emit(PUTA, vd.getIdentifier().getSlot(), r);
+                next = 0;
+            }
+        }
+        block(prog.mainStatementSequence());
+        emit(HALT);
+        code[MAIN_SIZE] = max;
+        code[GLOBAL_COUNT] = frames.globalCount();
+
+        inMain = false;
+        for (AST.Declaration d : prog.functions()) function((AST.FunctionDeclaration) d);
+        for (Map.Entry<AST.FunctionDeclaration, List<Integer>> e : callSites.entrySet()) {
+            for (int at : e.getValue()) code[at] = entries.get(e.getKey());
+        }
+        return java.util.Arrays.copyOf(code, pc);
+    }
+
+    private void function(AST.FunctionDeclaration fd) {
+        int entry = pc;
+        entries.put(fd, entry);
+        emit(0); // frame size, patched below
+        next = max = frames.frameSize(fd);
+        for (AST.Declaration d : fd.getBody().getDeclarations()) {
+            AST.VariableDeclaration vd = (AST.VariableDeclaration) d;
+            types.Type t = ((AST.TypeNode) vd.getTypeNode()).getActualType();
+            if (MiniInterpreter.kind(t) == REF) newArray(vd.getIdentifier().getSlot(), t);
+        }
+        block(fd.getBody().getStatements());
+        emit(RET);
+        code[entry] = Math.max(max, 1);
+    }
+
+    // ---------- emission ----------
+
+    private void emit(int... words) {
+        if (pc + words.length > code.length) code = java.util.Arrays.copyOf(code, Math.max(code.length * 2, pc + words.length));
+        for (int w : words) code[pc++] = w;
+    }
+
+    /** Emits a jump whose target is filled in later; returns where the target goes. */
+    private int emitJump(int... head) {
+        emit(head);
+        emit(-1);
+        return pc - 1;
+    }
+
+    private void patch(List<Integer> sites, int target) {
+        for (int at : sites) code[at] = target;
+    }
+
+    private int temp() {
+        int r = next++;
+        if (next > max) max = next;
+        return r;
+    }
+
+    private int target() {
+        return (want >= 0) ? want : temp();
+    }
+
+    private void newArray(int d, types.Type t) {
+        List<Integer> extents = new ArrayList<>();
+        while (t instanceof types.ArrayType) {
+            extents.add(((types.ArrayType) t).getExtent());
+            t = ((types.ArrayType) t).getBase();
+        }
+        emit(NEWARR, d, (t instanceof types.FloatType) ? ELEM_FLOAT : ELEM_INT, extents.size());
+        for (int e : extents) emit(e);
+    }
+
+    // ---------- expressions ----------
+
+    private static int kind(ast.Expression e) {
+        return MiniInterpreter.kind(e.getType());
+    }
+
+    /** Compiles e into register dst, or into any register if dst is -1. */
+    private int expr(ast.Expression e, int dst) {
+        want = dst;
+        e.accept(this);
+        return reg;
+    }
+
+    /** Like expr, converting an int to float when k is FLOAT. */
+    private int expr(ast.Expression e, int k, int dst) {
+        if (k == FLOAT && kind(e) == INT) {
+            int r = expr(e, -1);
+            int d = (dst >= 0) ? dst : temp();
+            emit(I2F, d, r);
+            return d;
+        }
+        return expr(e, dst);
+    }
+
+    @Override
+    public void visit(AST.IntegerLiteral n) {
+        reg = target();
+        emit(ICONST, reg, n.getValue());
+    }
+
+    @Override
+    public void visit(AST.FloatLiteral n) {
+        reg = target();
+        emit(FCONST, reg, Float.floatToRawIntBits(n.getValue()));
+    }
+
+    @Override
+    public void visit(AST.BoolLiteral n) {
+        reg = target();
+        emit(ICONST, reg, n.getValue() ? 1 : 0);
+    }
+
+    @Override
+    public void visit(AST.Identifier n) {
+        int k = kind(n);
+        switch (n.getDepth()) {
+            case FrameResolver.LOCAL:
+                if (want < 0 || want == n.getSlot()) {
+                    reg = n.getSlot(); // read in place
+                } else {
+                    reg = want;
+                    emit(k == FLOAT ? FMOV : k == REF ? AMOV : IMOV, reg, n.getSlot());
+                }
+                break;
+            case FrameResolver.GLOBAL:
+                reg = target();
+                emit(k == FLOAT ? GETF : k == REF ? GETA : GETI, reg, n.getSlot());
+                break;
+            default:
+                throw new RuntimeException("Unresolved variable: " + n.getName());
+        }
+    }
+
+    @Override
+    public void visit(AST.ArrayIndex n) {
+        int d = want;
+        int a = expr(n.getBase(), -1);
+        int i = expr(n.getIndex(), -1);
+        int k = kind(n);
+        reg = (d >= 0) ? d : temp();
+        emit(k == FLOAT ? ALOADF : k == REF ? ALOADA : ALOADI, reg, a, i);
+    }
+
+    private void arithmetic(ast.Expression n, ast.Expression left, ast.Expression right, int intOp, int floatOp) {
+        int d = want;
+        boolean isInt = kind(n) == INT;
+        int a = expr(left, isInt ? INT : FLOAT, -1);
+        int b = expr(right, isInt ? INT : FLOAT, -1);
+        reg = (d >= 0) ? d : temp();
+        emit(isInt ? intOp : floatOp, reg, a, b);
+    }
+
+    @Override public void visit(AST.Addition n)       { arithmetic(n, n.getLeft(), n.getRight(), IADD, FADD); }
+    @Override public void visit(AST.Subtraction n)    { arithmetic(n, n.getLeft(), n.getRight(), ISUB, FSUB); }
+    @Override public void visit(AST.Multiplication n) { arithmetic(n, n.getLeft(), n.getRight(), IMUL, FMUL); }
+    @Override public void visit(AST.Division n)       { arithmetic(n, n.getLeft(), n.getRight(), IDIV, FDIV); }
+    @Override public void visit(AST.Modulo n)         { arithmetic(n, n.getLeft(), n.getRight(), IMOD, IMOD); }
+    @Override public void visit(AST.Power n)          { arithmetic(n, n.getBase(), n.getExponent(), IPOW, FPOW); }
+
+    @Override
+    public void visit(AST.UnaryMinus n) {
+        int d = want;
+        boolean isInt = kind(n) == INT;
+        int a = expr(n.getExpr(), isInt ? INT : FLOAT, -1);
+        reg = (d >= 0) ? d : temp();
+        emit(isInt ? INEG : FNEG, reg, a);
+    }
+
+    @Override
+    public void visit(AST.LogicalNot n) {
+        int d = want;
+        int a = expr(n.getExpression(), -1);
+        reg = (d >= 0) ? d : temp();
+        emit(NOT, reg, a);
+    }
+
+    // a = l; if it decides, skip r; else a = r. A fresh register, since r may read the destination.
+    private void shortCircuit(ast.Expression l, ast.Expression r, int skipOp) {
+        int d = want;
+        int t = temp();
+        expr(l, t);
+        int skip = emitJump(skipOp, t);
+        expr(r, t);
+        code[skip] = pc;
+        reg = t;
+        if (d >= 0) {
+            emit(IMOV, d, t);
+            reg = d;
+        }
+    }
+
+    @Override public void visit(AST.LogicalAnd n) { shortCircuit(n.getLeft(), n.getRight(), JZ); }
+    @Override public void visit(AST.LogicalOr n)  { shortCircuit(n.getLeft(), n.getRight(), JNZ); }
+
+    @Override
+    public void visit(AST.Relation n) {
+        int d = want;
+        int rel = Bytecode.relation(n.getOp());
+        int op;
+        int a, b;
+        if (kind(n.getLeft()) == BOOL) {
+            if (rel != EQ && rel != NE) throw new RuntimeException("Bool relop not supported: " + n.getOperator());
+            a = expr(n.getLeft(), -1);
+            b = expr(n.getRight(), -1);
+            op = IEQ + rel;
+        } else if (kind(n.getLeft()) == INT && kind(n.getRight()) == INT) {
+            a = expr(n.getLeft(), -1);
+            b = expr(n.getRight(), -1);
+            op = IEQ + rel;
+        } else {
+            a = expr(n.getLeft(), FLOAT, -1);
+            b = expr(n.getRight(), FLOAT, -1);
+            op = FEQ + rel;
+        }
+        reg = (d >= 0) ? d : temp();
+        emit(op, reg, a, b);
+    }
+
+    @Override
+    public void visit(AST.FunctionCall n) {
+        int d = want;
+        List<ast.Expression> args = n.getArguments().getArguments();
+
+        // 1) Built-ins
+        if (n.getBuiltin() != null) switch (n.getBuiltin()) {
+            case PRINT_INT:   emit(WRI, expr(args.get(0), INT, -1)); return;
+            case PRINT_FLOAT: emit(WRF, expr(args.get(0), FLOAT, -1)); return;
+            case PRINT_BOOL:  emit(WRB, expr(args.get(0), -1)); return;
+            case PRINTLN:     emit(WRL); return;
+            case READ_INT:    reg = (d >= 0) ? d : temp(); emit(RDI, reg); return;
+            case READ_FLOAT:  reg = (d >= 0) ? d : temp(); emit(RDF, reg); return;
+            case READ_BOOL:   reg = (d >= 0) ? d : temp(); emit(RDB, reg); return;
+            default:
+        }
+
+        // 2) User-defined function: arguments go to consecutive registers
+        AST.FunctionDeclaration fd = n.getCallee();
+        if (fd == null) throw new RuntimeException("N/A");
+        int base = next;
+        for (int i = 0; i < args.size(); i++) temp();
+        for (int i = 0; i < args.size(); i++) expr(args.get(i), base + i);
+        reg = (d >= 0) ? d : temp();
+        emit(CALL);
+        callSites.computeIfAbsent(fd, k -> new ArrayList<>()).add(pc);
+        emit(-1, base, args.size(), reg);
+    }
+
+    // ---------- conditions ----------
+
+    /** Emits code that jumps to a site added to fixups when e is false, else falls through. */
+    private void jumpIfFalse(ast.Expression e, List<Integer> fixups) {
+        if (e instanceof AST.LogicalAnd) {
+            jumpIfFalse(((AST.LogicalAnd) e).getLeft(), fixups);
+            jumpIfFalse(((AST.LogicalAnd) e).getRight(), fixups);
+        } else if (e instanceof AST.LogicalOr) {
+            List<Integer> taken = new ArrayList<>();
+            jumpIfTrue(((AST.LogicalOr) e).getLeft(), taken);
+            jumpIfFalse(((AST.LogicalOr) e).getRight(), fixups);
+            patch(taken, pc);
+        } else if (e instanceof AST.LogicalNot) {
+            jumpIfTrue(((AST.LogicalNot) e).getExpression(), fixups);
+        } else if (isIntRelation(e)) {
+            AST.Relation r = (AST.Relation) e;
+            int a = expr(r.getLeft(), -1);
+            int b = expr(r.getRight(), -1);
+            fixups.add(emitJump(IJEQ + Bytecode.negate(Bytecode.relation(r.getOp())), a, b));
+        } else {
+            fixups.add(emitJump(JZ, expr(e, -1)));
+        }
+    }
+
+    /** Emits code that jumps to a site added to fixups when e is true, else falls through. */
+    private void jumpIfTrue(ast.Expression e, List<Integer> fixups) {
+        if (e instanceof AST.LogicalOr) {
+            jumpIfTrue(((AST.LogicalOr) e).getLeft(), fixups);
+            jumpIfTrue(((AST.LogicalOr) e).getRight(), fixups);
+        } else if (e instanceof AST.LogicalAnd) {
+            List<Integer> notTaken = new ArrayList<>();
+            jumpIfFalse(((AST.LogicalAnd) e).getLeft(), notTaken);
+            jumpIfTrue(((AST.LogicalAnd) e).getRight(), fixups);
+            patch(notTaken, pc);
+        } else if (e instanceof AST.LogicalNot) {
+            jumpIfFalse(((AST.LogicalNot) e).getExpression(), fixups);
+        } else if (isIntRelation(e)) {
+            AST.Relation r = (AST.Relation) e;
+            int a = expr(r.getLeft(), -1);
+            int b = expr(r.getRight(), -1);
+            fixups.add(emitJump(IJEQ + Bytecode.relation(r.getOp()), a, b));
+        } else {
+            fixups.add(emitJump(JNZ, expr(e, -1)));
+        }
+    }
+
+    private static boolean isIntRelation(ast.Expression e) {
+        return e instanceof AST.Relation
+            && kind(((AST.Relation) e).getLeft()) == INT && kind(((AST.Relation) e).getRight()) == INT;
+    }
+
+    // ---------- statements ----------
+
+    private void block(AST.StatementSequence seq) {
+        for (ast.Statement s : seq) {
+            if (s == null) continue;
+            int mark = next;
+            want = -1;
+            s.accept(this);
+            next = mark; // temporaries die with the statement
+        }
+    }
+
+    @Override
+    public void visit(AST.StatementSequence n) {
+        block(n);
+    }
+
+    @Override
+    public void visit(AST.Assignment n) {
+        ast.Expression dest = n.getDestination();
+        ast.Expression src = n.getSource();
+        int k = kind(dest);
+
+        if (dest instanceof AST.Identifier) {
+            AST.Identifier id = (AST.Identifier) dest;
+            switch (id.getDepth()) {
+                case FrameResolver.LOCAL:
+                    expr(src, k, id.getSlot());
+                    break;
+                case FrameResolver.GLOBAL:
+                    emit(k == FLOAT ? PUTF : k == REF ? PUTA : PUTI, id.getSlot(), expr(src, k, -1));
+                    break;
+                default:
+                    throw new RuntimeException("Unresolved variable: " + id.getName());
+            }
+        } else if (dest instanceof AST.ArrayIndex) {
+            AST.ArrayIndex ai = (AST.ArrayIndex) dest;
+            int v = expr(src, k, -1); // right-hand side first
+            int a = expr(ai.getBase(), -1);
+            int i = expr(ai.getIndex(), -1);
+            emit(k == FLOAT ? ASTOREF : k == REF ? ASTOREA : ASTOREI, a, i, v);
+        } else {
+            throw new RuntimeException("Unsupported lvalue: " + dest.getClass().getSimpleName());
+        }
+    }
+
+    @Override
+    public void visit(AST.VariableDeclaration n) {
+        // a declaration in a statement sequence resets the variable to its default
+        AST.Identifier id = n.getIdentifier();
+        types.Type t = ((AST.TypeNode) n.getTypeNode()).getActualType();
+        int k = MiniInterpreter.kind(t);
+        boolean local = id.getDepth() == FrameResolver.LOCAL;
+        int r = local ? id.getSlot() : temp();
+        if (k == REF)        newArray(r, t);
+        else if (k == FLOAT) emit(FCONST, r, 0);
+        else                 emit(ICONST, r, 0);
+        if (!local) emit(k == FLOAT ? PUTF : k == REF ? PUTA : PUTI, id.getSlot(), r);
+    }
+
+    @Override
+    public void visit(AST.IfStatement n) {
+        List<Integer> otherwise = new ArrayList<>();
+        jumpIfFalse(n.getCondition(), otherwise);
+        block(n.getThenBlock());
+        if (n.getElseBlock() == null) {
+            patch(otherwise, pc);
+        } else {
+            int end = emitJump(JMP);
+            patch(otherwise, pc);
+            block(n.getElseBlock());
+            code[end] = pc;
+        }
+    }
+
+    @Override
+    public void visit(AST.WhileStatement n) {
+        // test at the bottom: one branch per iteration
+        int enter = emitJump(JMP);
+        int top = pc;
+        block(n.getBody());
+        code[enter] = pc;
+        List<Integer> again = new ArrayList<>();
+        jumpIfTrue(n.getCondition(), again);
+        patch(again, top);
+    }
+
+    @Override
+    public void visit(AST.RepeatStatement n) {
+        int top = pc;
+        block(n.getBody());
+        List<Integer> again = new ArrayList<>();
+        jumpIfFalse(n.getCondition(), again);
+        patch(again, top);
+    }
+
+    @Override
+    public void visit(AST.ReturnStatement n) {
+        ast.Expression v = n.getValue();
+        if (inMain) {
+            if (v != null) expr(v, -1);
+            emit(HALT); // return from main ends the program
+        } else if (v == null) {
+            emit(RET);
+        } else {
+            int k = kind(v);
+            emit(k == FLOAT ? RETF : k == REF ? RETA : RETI, expr(v, -1));
+        }
+    }
+
+    // Not reached: these never occur in a statement or expression
+    @Override public void visit(AST.ArgumentList n)        { throw new RuntimeException("N/A"); }
+    @Override public void visit(ast.Computation n)         { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.AddressOf n)           { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.Dereference n)         { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.FunctionBody n)        { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.FunctionDeclaration n) { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.DeclarationList n)     { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.TypeNode n)            { throw new RuntimeException("N/A"); }
+}
@@ -0,0 +1,274 @@
+package mocha;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer for JVM class files: a constant pool, static fields and methods
+ * with a Code attribute. Classes are written as version 49, which the verifier
+ * checks by type inference, so no StackMapTable frames are needed; Code tracks the
+ * operand stack depth itself to fill in max_stack.
+ */
+final class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_STATIC = 0x0008,
+                     ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassFileWriter(String name, String superName) {
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+    }
+
+    // ---------- constant pool ----------
+
+    private int constant(String key, int slots, PoolEntry writer) {
+        Integer index = constants.get(key);
+        if (index != null) return index;
+        try {
+            writer.write(pool);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        index = poolCount;
+        poolCount += slots;
+        constants.put(key, index);
+        return index;
+    }
+
+    private interface PoolEntry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    int utf8(String s) {
+        return constant("U" + s, 1, out -> { out.writeByte(1); out.writeUTF(s); });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 1, out -> { out.writeByte(7); out.writeShort(name); });
+    }
+
+    int integer(int v) {
+        return constant("I" + v, 1, out -> { out.writeByte(3); out.writeInt(v); });
+    }
+
+    int doubleConstant(double v) {
+        return constant("D" + Double.doubleToRawLongBits(v), 2, out -> { out.writeByte(6); out.writeDouble(v); });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int n = utf8(name), d = utf8(descriptor);
+        return constant("N" + name + ":" + descriptor, 1, out -> { out.writeByte(12); out.writeShort(n); out.writeShort(d); });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        int c = classRef(owner), nt = nameAndType(name, descriptor);
+        return constant("F" + owner + "." + name + ":" + descriptor, 1,
+                        out -> { out.writeByte(9); out.writeShort(c); out.writeShort(nt); });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int c = classRef(owner), nt = nameAndType(name, descriptor);
+        return constant("M" + owner + "." + name + descriptor, 1,
+                        out -> { out.writeByte(10); out.writeShort(c); out.writeShort(nt); });
+    }
+
+    // ---------- members ----------
+
+    void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8("Code"));
+            byte[] body = code.bytes();
+            out.writeInt(12 + body.length);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            out.write(poolBytes.toByteArray());
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(fields.size());
+            for (byte[] f : fields) out.write(f);
+            out.writeShort(methods.size());
+            for (byte[] m : methods) out.write(m);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // ---------- code ----------
+
+    /** A branch target; forward uses are patched when it is placed. */
+    static final class Label {
+        int position = -1;
+        int stack = -1;                               // operand depth on arrival
+        final List<int[]> uses = new ArrayList<>();   // {instruction start, offset position}
+    }
+
+    /** Bytecode of one method. Each emitter states its effect on the operand stack. */
+    static final class Code {
+        private byte[] code = new byte[256];
+        private int length;
+        private int stack;
+        int maxStack;
+        int maxLocals;
+
+        byte[] bytes() {
+            return java.util.Arrays.copyOf(code, length);
+        }
+
+        private void put(int b) {
+            if (length == code.length) code = java.util.Arrays.copyOf(code, length * 2);
+            code[length++] = (byte) b;
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            if (stack < 0) throw new IllegalStateException("operand stack underflow");
+            if (stack > maxStack) maxStack = stack;
+        }
+
+        /** A one-byte instruction changing the stack depth by delta. */
+        void op(int opcode, int delta) {
+            put(opcode);
+            adjust(delta);
+        }
+
+        void opByte(int opcode, int operand, int delta) {
+            put(opcode);
+            put(operand);
+            adjust(delta);
+        }
+
+        void opShort(int opcode, int operand, int delta) {
+            put(opcode);
+            put(operand >> 8);
+            put(operand);
+            adjust(delta);
+        }
+
+        /** A local variable instruction, widened for indexes above 255. */
+        void local(int opcode, int index, int delta) {
+            if (index > 255) {
+                put(0xc4); // wide
+                opShort(opcode, index, delta);
+            } else {
+                opByte(opcode, index, delta);
+            }
+        }
+
+        void iinc(int index, int amount) {
+            put(0xc4);
+            put(0x84);
+            put(index >> 8);
+            put(index);
+            put(amount >> 8);
+            put(amount);
+        }
+
+        void multianewarray(int classIndex, int dims) {
+            opShort(0xc5, classIndex, 1 - dims);
+            put(dims);
+        }
+
+        /** A branch to target; delta is the stack effect of the instruction. */
+        void jump(int opcode, Label target, int delta) {
+            int start = length;
+            put(opcode);
+            adjust(delta);
+            if (target.position >= 0) {
+                int offset = target.position - start;
+                put(offset >> 8);
+                put(offset);
+            } else {
+                target.uses.add(new int[] {start, length});
+                put(0);
+                put(0);
+            }
+            arrive(target);
+        }
+
+        private void arrive(Label target) {
+            if (target.stack < 0) target.stack = stack;
+            else if (target.stack != stack) throw new IllegalStateException("inconsistent stack at label");
+        }
+
+        /** Places target here; code after an unconditional jump continues at its depth. */
+        void place(Label target) {
+            target.position = length;
+            for (int[] use : target.uses) {
+                int offset = length - use[0];
+                code[use[1]] = (byte) (offset >> 8);
+                code[use[1] + 1] = (byte) offset;
+            }
+            if (target.stack >= 0) stack = target.stack;
+            else target.stack = stack;
+        }
+
+        /** After goto, return or athrow: nothing falls through. */
+        void unreachable() {
+            stack = 0;
+        }
+
+        int stack() {
+            return stack;
+        }
+    }
+}
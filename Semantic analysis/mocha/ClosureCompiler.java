@@ -0,0 +1,646 @@
+package mocha;
+
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import ast.AST;
+
+/**
+ * Closure-compiling engine. Every node of the type-checked tree is compiled once into
+ * a Java lambda chosen by its static type: IntSupplier for int expressions,
+ * DoubleSupplier for floats, BooleanSupplier for conditions, Supplier for arrays and
+ * Runnable for statements. Variable slots are resolved at compile time and captured
+ * as array indices, so running a program is a single call of the root closure with
+ * no visitor dispatch and no result-field round trip.
+ *
+ * Globals live in arrays captured by the closures; each call gets its own frame
+ * arrays, which the closures of the callee reach through the prims/refs fields.
+ * Results match MiniInterpreter.
+ */
+final class ClosureCompiler implements ast.NodeVisitor, Engine {
+
+    private static final int INT = MiniInterpreter.INT, FLOAT = MiniInterpreter.FLOAT,
+                             BOOL = MiniInterpreter.BOOL, REF = MiniInterpreter.REF;
+
+    private final MochaIO io;
+    private FrameResolver frames;
+    private Object[] globals;        // arrays
+    private long[] globalPrims;      // int, float (raw double bits) and bool (0/1)
+    private final Map<AST.FunctionDeclaration, Function> compiled = new IdentityHashMap<>();
+
+    // frame of the active call
+    private long[] prims = new long[0];
+    private Object[] refs = new Object[0];
+
+    // value of the last return, in the field for its kind
+    private long retPrim;
+    private Object retRef;
+
+    // closure built by the last visit
+    private Object result;
+
+    ClosureCompiler(InputStream in, java.io.PrintStream out) {
+        this.io = new MochaIO(in, out);
+    }
+
+    @Override
+    public void run(ast.Computation prog, FrameResolver frames) {
+        this.frames = frames;
+        globals = new Object[frames.globalCount()];
+        globalPrims = new long[frames.globalCount()];
+
+        // create every function before compiling any body, so calls can bind to them
+        for (AST.Declaration d : prog.functions()) {
+            AST.FunctionDeclaration fd = (AST.FunctionDeclaration) d;
+            compiled.put(fd, new Function(fd));
+        }
+        for (Function f : compiled.values()) f.compile();
+
+        for (AST.Declaration d : prog.variables()) {
+            AST.VariableDeclaration vd = (AST.VariableDeclaration) d;
+            types.Type t = ((AST.TypeNode) vd.getTypeNode()).getActualType();
+            if (MiniInterpreter.kind(t) == REF) globals[vd.getIdentifier().getSlot()] = defaultValueForType(t);
+        }
+
+        Runnable main = block(prog.mainStatementSequence());
+        try {
+            main.run();
+        } catch (ReturnSignal r) {
+            // return from main ends the program
+        } finally {
+            io.flush();
+        }
+    }
+
+    /** Default array element for a type (ints 0, floats 0.0, bool false, arrays allocated and filled). */
+    private static Object defaultValueForType(types.Type t) {
+        if (t instanceof types.IntType)   return Integer.valueOf(0);
+        if (t instanceof types.FloatType) return Double.valueOf(0.0);
+        if (t instanceof types.BoolType)  return Boolean.FALSE;
+        if (t instanceof types.ArrayType) return allocArray((types.ArrayType) t);
+        return null;
+    }
+
+    private static Object allocArray(types.ArrayType at) {
+        int n = at.getExtent();
+        if (n < 0) return null;
+        Object[] arr = new Object[n];
+        for (int i = 0; i < n; i++) arr[i] = defaultValueForType(at.getBase());
+        return arr;
+    }
+
+    /** Unwinds a call; the value is in retPrim or retRef. */
+    private static final class ReturnSignal extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final ReturnSignal INSTANCE = new ReturnSignal();
+
+        private ReturnSignal() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** Stores one argument into the callee frame, evaluated in the caller's. */
+    private interface ArgWriter {
+        void write(long[] calleePrims, Object[] calleeRefs);
+    }
+
+    /** A compiled function: frame size, array locals to allocate, and body. */
+    private final class Function {
+        final AST.FunctionDeclaration decl;
+        final int frameSize;
+        int[] arraySlots;
+        types.ArrayType[] arrayTypes;
+        Runnable body;
+
+        Function(AST.FunctionDeclaration decl) {
+            this.decl = decl;
+            this.frameSize = frames.frameSize(decl);
+        }
+
+        void compile() {
+            List<AST.Declaration> locals = decl.getBody().getDeclarations();
+            int n = 0;
+            int[] slots = new int[locals.size()];
+            types.ArrayType[] types = new types.ArrayType[locals.size()];
+            for (AST.Declaration d : locals) {
+                AST.VariableDeclaration vd = (AST.VariableDeclaration) d;
+                types.Type t = ((AST.TypeNode) vd.getTypeNode()).getActualType();
+                if (t instanceof types.ArrayType) {
+                    slots[n] = vd.getIdentifier().getSlot();
+                    types[n++] = (types.ArrayType) t;
+                }
+            }
+            arraySlots = java.util.Arrays.copyOf(slots, n);
+            arrayTypes = java.util.Arrays.copyOf(types, n);
+            body = block(decl.getBody().getStatements());
+        }
+
+        /** Runs the body in a fresh frame whose parameter slots args fill. */
+        void invoke(ArgWriter[] args) {
+            long[] p = new long[frameSize];     // primitives start at 0, 0.0 and false
+            Object[] r = new Object[frameSize];
+            for (ArgWriter a : args) a.write(p, r);
+            for (int i = 0; i < arraySlots.length; i++) r[arraySlots[i]] = allocArray(arrayTypes[i]);
+
+            long[] savedPrims = prims;
+            Object[] savedRefs = refs;
+            prims = p;
+            refs = r;
+            try {
+                body.run();
+            } catch (ReturnSignal s) {
+                // returned
+            } finally {
+                prims = savedPrims;
+                refs = savedRefs;
+            }
+        }
+    }
+
+    // ---------- compilation entry points ----------
+
+    private IntSupplier compileInt(ast.Expression e) {
+        e.accept(this);
+        return (IntSupplier) result;
+    }
+
+    private DoubleSupplier compileFloat(ast.Expression e) {
+        if (e.getType() instanceof types.IntType) { // int operand of mixed arithmetic
+            IntSupplier i = compileInt(e);
+            return () -> i.getAsInt();
+        }
+        e.accept(this);
+        return (DoubleSupplier) result;
+    }
+
+    private BooleanSupplier compileBool(ast.Expression e) {
+        e.accept(this);
+        return (BooleanSupplier) result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Supplier<Object> compileRef(ast.Expression e) {
+        e.accept(this);
+        return (Supplier<Object>) result;
+    }
+
+    // Value of e boxed, for array elements
+    private Supplier<Object> compileBoxed(ast.Expression e) {
+        switch (MiniInterpreter.kind(e.getType())) {
+            case INT:   { IntSupplier s = compileInt(e);       return () -> s.getAsInt(); }
+            case FLOAT: { DoubleSupplier s = compileFloat(e);  return () -> s.getAsDouble(); }
+            case BOOL:  { BooleanSupplier s = compileBool(e);  return () -> s.getAsBoolean(); }
+            default:    return compileRef(e);
+        }
+    }
+
+    private Runnable compileStatement(ast.Statement s) {
+        s.accept(this);
+        Object c = result;
+        if (c instanceof Runnable)        return (Runnable) c;
+        if (c instanceof IntSupplier)     return () -> ((IntSupplier) c).getAsInt();
+        if (c instanceof DoubleSupplier)  return () -> ((DoubleSupplier) c).getAsDouble();
+        if (c instanceof BooleanSupplier) return () -> ((BooleanSupplier) c).getAsBoolean();
+        return () -> ((Supplier<?>) c).get();
+    }
+
+    private Runnable block(AST.StatementSequence seq) {
+        java.util.ArrayList<Runnable> list = new java.util.ArrayList<>();
+        for (ast.Statement s : seq) if (s != null) list.add(compileStatement(s));
+        Runnable[] stmts = list.toArray(new Runnable[0]);
+        switch (stmts.length) {
+            case 0: return () -> { };
+            case 1: return stmts[0];
+            case 2: {
+                Runnable a = stmts[0], b = stmts[1];
+                return () -> { a.run(); b.run(); };
+            }
+            default:
+                return () -> { for (Runnable r : stmts) r.run(); };
+        }
+    }
+
+    private static boolean isInt(ast.Expression e) {
+        return e.getType() instanceof types.IntType;
+    }
+
+    private static void checkIndex(Object[] arr, int idx) {
+        if (idx < 0 || idx >= arr.length) throw new RuntimeException("Index out of bounds: " + idx);
+    }
+
+    // ---------- expressions ----------
+
+    @Override public void visit(AST.IntegerLiteral n) { int v = n.getValue();     result = (IntSupplier) () -> v; }
+    @Override public void visit(AST.FloatLiteral n)   { double v = n.getValue();  result = (DoubleSupplier) () -> v; }
+    @Override public void visit(AST.BoolLiteral n)    { boolean v = n.getValue(); result = (BooleanSupplier) () -> v; }
+
+    @Override
+    public void visit(AST.Identifier n) {
+        int slot = n.getSlot();
+        int k = MiniInterpreter.kind(n.getType());
+        switch (n.getDepth()) {
+            case FrameResolver.GLOBAL: {
+                long[] gp = globalPrims;
+                Object[] g = globals;
+                switch (k) {
+                    case INT:   result = (IntSupplier) () -> (int) gp[slot]; break;
+                    case FLOAT: result = (DoubleSupplier) () -> Double.longBitsToDouble(gp[slot]); break;
+                    case BOOL:  result = (BooleanSupplier) () -> gp[slot] != 0; break;
+                    default:    result = (Supplier<Object>) () -> nonNull(g[slot], n);
+                }
+                break;
+            }
+            case FrameResolver.LOCAL:
+                switch (k) {
+                    case INT:   result = (IntSupplier) () -> (int) prims[slot]; break;
+                    case FLOAT: result = (DoubleSupplier) () -> Double.longBitsToDouble(prims[slot]); break;
+                    case BOOL:  result = (BooleanSupplier) () -> prims[slot] != 0; break;
+                    default:    result = (Supplier<Object>) () -> nonNull(refs[slot], n);
+                }
+                break;
+            default:
+                throw new RuntimeException("Unresolved variable: " + n.getName());
+        }
+    }
+
+    private static Object nonNull(Object v, AST.Identifier n) {
+        if (v == null) throw new RuntimeException("Uninitialized var: " + n.getName());
+        return v;
+    }
+
+    @Override
+    public void visit(AST.ArrayIndex n) {
+        Supplier<Object> base = compileRef(n.getBase());
+        IntSupplier index = compileInt(n.getIndex());
+        // the type checker proved some accesses in range; only the rest are checked
+        Supplier<Object> element;
+        if (n.isInBounds()) {
+            element = () -> ((Object[]) base.get())[index.getAsInt()];
+        } else {
+            element = () -> {
+                Object[] arr = (Object[]) base.get();
+                int idx = index.getAsInt();
+                checkIndex(arr, idx);
+                return arr[idx];
+            };
+        }
+        switch (MiniInterpreter.kind(n.getType())) {
+            case INT:   result = (IntSupplier) () -> (Integer) element.get(); break;
+            case FLOAT: result = (DoubleSupplier) () -> ((Number) element.get()).doubleValue(); break;
+            case BOOL:  result = (BooleanSupplier) () -> (Boolean) element.get(); break;
+            default:    result = element;
+        }
+    }
+
+    @Override
+    public void visit(AST.UnaryMinus n) {
+        if (isInt(n)) {
+            IntSupplier e = compileInt(n.getExpr());
+            result = (IntSupplier) () -> -e.getAsInt();
+        } else {
+            DoubleSupplier e = compileFloat(n.getExpr());
+            result = (DoubleSupplier) () -> (float) -e.getAsDouble();
+        }
+    }
+
+    @Override
+    public void visit(AST.Addition n) {
+        if (isInt(n)) {
+            IntSupplier l = compileInt(n.getLeft()), r = compileInt(n.getRight());
+            result = (IntSupplier) () -> l.getAsInt() + r.getAsInt();
+        } else {
+            DoubleSupplier l = compileFloat(n.getLeft()), r = compileFloat(n.getRight());
+            result = (DoubleSupplier) () -> (float) (l.getAsDouble() + r.getAsDouble());
+        }
+    }
+
+    @Override
+    public void visit(AST.Subtraction n) {
+        if (isInt(n)) {
+            IntSupplier l = compileInt(n.getLeft()), r = compileInt(n.getRight());
+            result = (IntSupplier) () -> l.getAsInt() - r.getAsInt();
+        } else {
+            DoubleSupplier l = compileFloat(n.getLeft()), r = compileFloat(n.getRight());
+            result = (DoubleSupplier) () -> (float) (l.getAsDouble() - r.getAsDouble());
+        }
+    }
+
+    @Override
+    public void visit(AST.Multiplication n) {
+        if (isInt(n)) {
+            IntSupplier l = compileInt(n.getLeft()), r = compileInt(n.getRight());
+            result = (IntSupplier) () -> l.getAsInt() * r.getAsInt();
+        } else {
+            DoubleSupplier l = compileFloat(n.getLeft()), r = compileFloat(n.getRight());
+            result = (DoubleSupplier) () -> (float) (l.getAsDouble() * r.getAsDouble());
+        }
+    }
+
+    @Override
+    public void visit(AST.Division n) {
+        if (isInt(n)) {
+            IntSupplier l = compileInt(n.getLeft()), r = compileInt(n.getRight());
+            result = (IntSupplier) () -> l.getAsInt() / r.getAsInt();
+        } else {
+            DoubleSupplier l = compileFloat(n.getLeft()), r = compileFloat(n.getRight());
+            result = (DoubleSupplier) () -> (float) (l.getAsDouble() / r.getAsDouble());
+        }
+    }
+
+    @Override
+    public void visit(AST.Modulo n) {
+        IntSupplier l = compileInt(n.getLeft()), r = compileInt(n.getRight());
+        result = (IntSupplier) () -> l.getAsInt() % r.getAsInt();
+    }
+
+    @Override
+    public void visit(AST.Power n) {
+        if (isInt(n)) {
+            IntSupplier b = compileInt(n.getBase()), e = compileInt(n.getExponent());
+            result = (IntSupplier) () -> {
+                int bv = b.getAsInt(), ev = e.getAsInt();
+                // a negative int exponent truncates like any other int result
+                return (ev < 0) ? (int) Math.pow(bv, ev) : intPow(bv, ev);
+            };
+        } else {
+            DoubleSupplier b = compileFloat(n.getBase()), e = compileFloat(n.getExponent());
+            result = (DoubleSupplier) () -> (float) Math.pow(b.getAsDouble(), e.getAsDouble());
+        }
+    }
+
+    // fast integer power (non-negative exponent)
+    private static int intPow(int b, int e) {
+        int result = 1;
+        while (e > 0) {
+            if ((e & 1) == 1) result *= b;
+            b *= b;
+            e >>= 1;
+        }
+        return result;
+    }
+
+    @Override
+    public void visit(AST.LogicalNot n) {
+        BooleanSupplier e = compileBool(n.getExpression());
+        result = (BooleanSupplier) () -> !e.getAsBoolean();
+    }
+
+    @Override
+    public void visit(AST.LogicalAnd n) {
+        BooleanSupplier l = compileBool(n.getLeft()), r = compileBool(n.getRight());
+        result = (BooleanSupplier) () -> l.getAsBoolean() && r.getAsBoolean();
+    }
+
+    @Override
+    public void visit(AST.LogicalOr n) {
+        BooleanSupplier l = compileBool(n.getLeft()), r = compileBool(n.getRight());
+        result = (BooleanSupplier) () -> l.getAsBoolean() || r.getAsBoolean();
+    }
+
+    @Override
+    public void visit(AST.Relation n) {
+        ast.Expression left = n.getLeft(), right = n.getRight();
+        AST.Relation.Op op = n.getOp();
+
+        if (left.getType() instanceof types.BoolType) {
+            BooleanSupplier a = compileBool(left), b = compileBool(right);
+            switch (op) {
+                case EQ: result = (BooleanSupplier) () -> a.getAsBoolean() == b.getAsBoolean(); break;
+                case NE: result = (BooleanSupplier) () -> a.getAsBoolean() != b.getAsBoolean(); break;
+                default: throw new RuntimeException("Bool relop not supported: " + n.getOperator());
+            }
+        } else if (isInt(left) && isInt(right)) {
+            IntSupplier a = compileInt(left), b = compileInt(right);
+            switch (op) {
+                case EQ: result = (BooleanSupplier) () -> a.getAsInt() == b.getAsInt(); break;
+                case NE: result = (BooleanSupplier) () -> a.getAsInt() != b.getAsInt(); break;
+                case LT: result = (BooleanSupplier) () -> a.getAsInt() <  b.getAsInt(); break;
+                case LE: result = (BooleanSupplier) () -> a.getAsInt() <= b.getAsInt(); break;
+                case GT: result = (BooleanSupplier) () -> a.getAsInt() >  b.getAsInt(); break;
+                case GE: result = (BooleanSupplier) () -> a.getAsInt() >= b.getAsInt(); break;
+                default: throw new RuntimeException("Unknown relop: " + n.getOperator());
+            }
+        } else {
+            DoubleSupplier a = compileFloat(left), b = compileFloat(right);
+            switch (op) {
+                case EQ: result = (BooleanSupplier) () -> a.getAsDouble() == b.getAsDouble(); break;
+                case NE: result = (BooleanSupplier) () -> a.getAsDouble() != b.getAsDouble(); break;
+                case LT: result = (BooleanSupplier) () -> a.getAsDouble() <  b.getAsDouble(); break;
+                case LE: result = (BooleanSupplier) () -> a.getAsDouble() <= b.getAsDouble(); break;
+                case GT: result = (BooleanSupplier) () -> a.getAsDouble() >  b.getAsDouble(); break;
+                case GE: result = (BooleanSupplier) () -> a.getAsDouble() >= b.getAsDouble(); break;
+                default: throw new RuntimeException("Unknown relop: " + n.getOperator());
+            }
+        }
+    }
+
+    @Override
+    public void visit(AST.FunctionCall n) {
+        List<ast.Expression> args = n.getArguments().getArguments();
+
+        // 1) Built-ins
+        if (n.getBuiltin() != null) switch (n.getBuiltin()) {
+            case PRINT_INT: {
+                IntSupplier a = compileInt(args.get(0));
+                result = (Runnable) () -> io.printInt(a.getAsInt());
+                return;
+            }
+            case PRINT_FLOAT: {
+                DoubleSupplier a = compileFloat(args.get(0));
+                result = (Runnable) () -> io.printFloat(a.getAsDouble());
+                return;
+            }
+            case PRINT_BOOL: {
+                BooleanSupplier a = compileBool(args.get(0));
+                result = (Runnable) () -> io.printBool(a.getAsBoolean());
+                return;
+            }
+            case PRINTLN:
+                result = (Runnable) io::println;
+                return;
+            case READ_INT:
+                result = (IntSupplier) io::readInt;
+                return;
+            case READ_FLOAT:
+                result = (DoubleSupplier) io::readFloat;
+                return;
+            case READ_BOOL:
+                result = (BooleanSupplier) io::readBool;
+                return;
+            default:
+        }
+
+        // 2) User-defined function
+        AST.FunctionDeclaration fd = n.getCallee();
+        if (fd == null) throw new RuntimeException("N/A");
+        Function f = compiled.get(fd);
+        ArgWriter[] writers = new ArgWriter[args.size()];
+        for (int i = 0; i < writers.length; i++) writers[i] = argWriter(args.get(i), i);
+
+        switch (MiniInterpreter.kind(n.getType())) {
+            case INT:   result = (IntSupplier) () -> { f.invoke(writers); return (int) retPrim; }; break;
+            case FLOAT: result = (DoubleSupplier) () -> { f.invoke(writers); return Double.longBitsToDouble(retPrim); }; break;
+            case BOOL:  result = (BooleanSupplier) () -> { f.invoke(writers); return retPrim != 0; }; break;
+            case REF:   result = (Supplier<Object>) () -> { f.invoke(writers); return retRef; }; break;
+            default:    result = (Runnable) () -> f.invoke(writers);
+        }
+    }
+
+    private ArgWriter argWriter(ast.Expression e, int slot) {
+        switch (MiniInterpreter.kind(e.getType())) {
+            case INT:   { IntSupplier s = compileInt(e);      return (p, r) -> p[slot] = s.getAsInt(); }
+            case FLOAT: { DoubleSupplier s = compileFloat(e); return (p, r) -> p[slot] = Double.doubleToRawLongBits(s.getAsDouble()); }
+            case BOOL:  { BooleanSupplier s = compileBool(e); return (p, r) -> p[slot] = s.getAsBoolean() ? 1 : 0; }
+            default:    { Supplier<Object> s = compileRef(e); return (p, r) -> r[slot] = s.get(); }
+        }
+    }
+
+    // ---------- statements ----------
+
+    @Override
+    public void visit(AST.StatementSequence node) {
+        result = block(node);
+    }
+
+    @Override
+    public void visit(AST.ReturnStatement node) {
+        ast.Expression v = node.getValue();
+        if (v == null) {
+            result = (Runnable) () -> { throw ReturnSignal.INSTANCE; };
+            return;
+        }
+        switch (MiniInterpreter.kind(v.getType())) {
+            case INT: {
+                IntSupplier s = compileInt(v);
+                result = (Runnable) () -> { retPrim = s.getAsInt(); throw ReturnSignal.INSTANCE; };
+                break;
+            }
+            case FLOAT: {
+                DoubleSupplier s = compileFloat(v);
+                result = (Runnable) () -> { retPrim = Double.doubleToRawLongBits(s.getAsDouble()); throw ReturnSignal.INSTANCE; };
+                break;
+            }
+            case BOOL: {
+                BooleanSupplier s = compileBool(v);
+                result = (Runnable) () -> { retPrim = s.getAsBoolean() ? 1 : 0; throw ReturnSignal.INSTANCE; };
+                break;
+            }
+            default: {
+                Supplier<Object> s = compileRef(v);
+                result = (Runnable) () -> { retRef = s.get(); throw ReturnSignal.INSTANCE; };
+            }
+        }
+    }
+
+    @Override
+    public void visit(AST.IfStatement n) {
+        BooleanSupplier cond = compileBool(n.getCondition());
+        Runnable then = block(n.getThenBlock());
+        if (n.getElseBlock() == null) {
+            result = (Runnable) () -> { if (cond.getAsBoolean()) then.run(); };
+        } else {
+            Runnable otherwise = block(n.getElseBlock());
+            result = (Runnable) () -> { if (cond.getAsBoolean()) then.run(); else otherwise.run(); };
+        }
+    }
+
+    @Override
+    public void visit(AST.WhileStatement n) {
+        BooleanSupplier cond = compileBool(n.getCondition());
+        Runnable body = block(n.getBody());
+        result = (Runnable) () -> { while (cond.getAsBoolean()) body.run(); };
+    }
+
+    @Override
+    public void visit(AST.RepeatStatement n) {
+        Runnable body = block(n.getBody());
+        BooleanSupplier cond = compileBool(n.getCondition());
+        result = (Runnable) () -> { do body.run(); while (!cond.getAsBoolean()); };
+    }
+
+    @Override
+    public void visit(AST.Assignment node) {
+        ast.Expression dest = node.getDestination();
+        ast.Expression src = node.getSource();
+
+        if (dest instanceof AST.Identifier) {
+            result = store((AST.Identifier) dest, src);
+        } else if (dest instanceof AST.ArrayIndex) {
+            AST.ArrayIndex ai = (AST.ArrayIndex) dest;
+            Supplier<Object> rhs = compileBoxed(src);
+            Supplier<Object> base = compileRef(ai.getBase());
+            IntSupplier index = compileInt(ai.getIndex());
+            boolean checked = !ai.isInBounds();
+            result = (Runnable) () -> {
+                Object v = rhs.get(); // right-hand side first
+                Object b = base.get();
+                if (!(b instanceof Object[])) throw new RuntimeException("Assigning into non-array");
+                Object[] arr = (Object[]) b;
+                int idx = index.getAsInt();
+                if (checked) checkIndex(arr, idx);
+                arr[idx] = v;
+            };
+        } else {
+            throw new RuntimeException("Unsupported lvalue: " + dest.getClass().getSimpleName());
+        }
+    }
+
+    @Override
+    public void visit(AST.VariableDeclaration n) {
+        // a declaration in a statement sequence resets the variable to its default
+        AST.Identifier id = n.getIdentifier();
+        types.Type t = ((AST.TypeNode) n.getTypeNode()).getActualType();
+        int slot = id.getSlot();
+        boolean global = id.getDepth() == FrameResolver.GLOBAL;
+        if (MiniInterpreter.kind(t) == REF) {
+            Object[] g = globals;
+            result = global ? (Runnable) () -> g[slot] = defaultValueForType(t)
+                            : (Runnable) () -> refs[slot] = defaultValueForType(t);
+        } else {
+            long[] gp = globalPrims;
+            result = global ? (Runnable) () -> gp[slot] = 0L
+                            : (Runnable) () -> prims[slot] = 0L; // 0, 0.0 and false
+        }
+    }
+
+    private Runnable store(AST.Identifier id, ast.Expression src) {
+        int slot = id.getSlot();
+        int k = MiniInterpreter.kind(id.getType());
+        switch (id.getDepth()) {
+            case FrameResolver.GLOBAL: {
+                long[] gp = globalPrims;
+                Object[] g = globals;
+                switch (k) {
+                    case INT:   { IntSupplier s = compileInt(src);      return () -> gp[slot] = s.getAsInt(); }
+                    case FLOAT: { DoubleSupplier s = compileFloat(src); return () -> gp[slot] = Double.doubleToRawLongBits(s.getAsDouble()); }
+                    case BOOL:  { BooleanSupplier s = compileBool(src); return () -> gp[slot] = s.getAsBoolean() ? 1 : 0; }
+                    default:    { Supplier<Object> s = compileRef(src); return () -> g[slot] = s.get(); }
+                }
+            }
+            case FrameResolver.LOCAL:
+                switch (k) {
+                    case INT:   { IntSupplier s = compileInt(src);      return () -> prims[slot] = s.getAsInt(); }
+                    case FLOAT: { DoubleSupplier s = compileFloat(src); return () -> prims[slot] = Double.doubleToRawLongBits(s.getAsDouble()); }
+                    case BOOL:  { BooleanSupplier s = compileBool(src); return () -> prims[slot] = s.getAsBoolean() ? 1 : 0; }
+                    default:    { Supplier<Object> s = compileRef(src); return () -> refs[slot] = s.get(); }
+                }
+            default:
+                throw new RuntimeException("Unresolved variable: " + id.getName());
+        }
+    }
+
+    // Not reached: these never occur in a statement or expression
+    @Override public void visit(AST.ArgumentList n)        { throw new RuntimeException("N/A"); }
+    @Override public void visit(ast.Computation n)         { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.AddressOf n)           { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.Dereference n)         { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.FunctionBody n)        { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.FunctionDeclaration n) { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.DeclarationList n)     { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.TypeNode n)            { throw new RuntimeException("N/A"); }
+}
@@ -81,6 +81,7 @@ public class Compiler {
     private int numDataRegisters;
     private List<Integer> instructions;
     private ast.AST astRoot;
+    private FrameResolver frames; // astRoot resolved, once it is run or compiled
 
     public Compiler(Scanner scanner, int numRegs) {
         this.scanner = scanner;
@@ -89,8 +90,29 @@ public class Compiler {
         instructions = new ArrayList<>();
     }
 
+    /**
+     * Fused pipeline: type each node and resolve its symbols as the parser builds it,
+     * using the parser's own symbol table, instead of running types.TypeChecker as a
+     * second pass. Must be set before genAST().
+     */
+    public void setFusedTypeCheck(boolean fused) {
+        this.fusedTypeCheck = fused;
+    }
+
+    /**
+     * True if genAST() ran in fused mode and typed the whole tree without error. When
+     * false (a type error, or something a single pass cannot decide such as a call to a
+     * function declared later), the full TypeChecker has to run.
+     */
+    public boolean isFusedTyped() {
+        return fusedChecker != null && astRoot != null && astRoot.getRoot() != null
+            && fusedChecker.isComplete();
+    }
+
     public ast.AST genAST() {
         initSymbolTable();
+        fusedChecker = fusedTypeCheck ? types.TypeChecker.fused(symbolTable) : null;
+        frames = null;
         try {
             Computation root = computation();
             this.astRoot = new AST(root); 
@@ -101,22 +123,201 @@ public class Compiler {
         }
     }
     
+    /**
+     * Selects the engine interpret() runs the program with:
+     *   ast  - MiniInterpreter, a tree-walking interpreter (default)
+     *   spec - SpecializingInterpreter, self-specializing executable nodes
+     *   closure - ClosureCompiler, the tree compiled once into Java lambdas
+     *   vm   - RegisterVM, running the register bytecode of compile()
+     *   jvm  - JvmCompiler, the program translated to a JVM class
+     */
+    public void setEngine(String name) {
+        switch (name) {
+            case "ast":
+            case "spec":
+            case "closure":
+            case "vm":
+            case "jvm":
+                this.engine = name;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + name);
+        }
+    }
+
+    /**
+     * Profiles the following interpret() runs into profile, or stops profiling if it
+     * is null. A profiled run always uses ProfilingInterpreter, the ast engine with
+     * instrumentation, whatever engine is selected.
+     */
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Traces the following interpret() runs into trace (see TracingInterpreter), or
+     * stops tracing if it is null. Like profiling, tracing always runs the ast engine;
+     * a run that is profiled is not traced.
+     */
+    public void setTrace(Trace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Lets the ast engine (and profiled or metered runs) remember the results of pure
+     * functions (see PurityAnalysis) by their arguments, so a call repeated with the
+     * same arguments does not run again. The other engines ignore it.
+     */
+    public void setMemoize(boolean memoize) {
+        this.memoize = memoize;
+    }
+
+    /**
+     * Has the following interpret() runs save their state to file once they have run
+     * statements statements of main, so a later run can resume there (see Snapshot),
+     * or stops saving if file is null. Such runs use the ast engine.
+     */
+    public void setSnapshot(java.nio.file.Path file, int statements) {
+        this.snapshotFile = file;
+        this.snapshotAt = statements;
+    }
+
+    /**
+     * Has the following interpret() runs start from the state a run saved to file,
+     * skipping the main statements and input before it, or start afresh if file is
+     * null. Such runs use the ast engine.
+     */
+    public void setRestore(java.nio.file.Path file) {
+        this.restoreFile = file;
+    }
+
     public void interpret(InputStream in) {
+        interpret(in, System.out);
+    }
+
+    public void interpret(InputStream in, java.io.PrintStream out) {
     	if (astRoot == null || astRoot.getRoot() == null) {
-            System.out.println("Interpreter: no program to run.");
+            out.println("Interpreter: no program to run.");
             return;
         }
-        new MiniInterpreter(in, System.out).run(astRoot.getRoot());
+        newEngine(in, out).run(astRoot.getRoot(), frames());
     }
 
+    /**
+     * Runs the program on MiniInterpreter (instrumented when profiling or tracing),
+     * metered by fuel, and reports how it ended rather than throwing: a program that
+     * loops forever comes back OUT_OF_FUEL once it has burned its limit.
+     */
+    public RunResult interpret(InputStream in, java.io.PrintStream out, Fuel fuel) {
+        if (astRoot == null || astRoot.getRoot() == null) {
+            out.println("Interpreter: no program to run.");
+            return new RunResult(RunResult.Status.COMPLETED, 0, null);
+        }
+        MiniInterpreter interpreter = newInterpreter(in, out);
+        interpreter.setFuel(fuel);
+        try {
+            interpreter.run(astRoot.getRoot(), frames());
+            return new RunResult(RunResult.Status.COMPLETED, interpreter.fuelUsed(), null);
+        } catch (MiniInterpreter.Halt h) {
+            return new RunResult(h.status, interpreter.fuelUsed(), null);
+        } catch (RuntimeException e) {
+            return new RunResult(RunResult.Status.FAILED, interpreter.fuelUsed(), e);
+        }
+    }
+
+    // The ast engine, instrumented if profiling, tracing or recording its JFR events
+    private MiniInterpreter newInterpreter(InputStream in, java.io.PrintStream out) {
+        MiniInterpreter interpreter = (profile != null) ? new ProfilingInterpreter(in, out, profile)
+                                    : (trace != null)   ? new TracingInterpreter(in, out, trace)
+                                    : FlightRecordingInterpreter.enabled() ? new FlightRecordingInterpreter(in, out)
+                                                        : new MiniInterpreter(in, out);
+        interpreter.setMemoize(memoize);
+        if (snapshotFile != null) interpreter.setSnapshot(snapshotFile, snapshotAt);
+        interpreter.setRestore(restoreFile);
+        return interpreter;
+    }
+
+    /**
+     * True if interpret() would run a self tail call of the program (see FrameResolver)
+     * as an ordinary call on the Java stack: the ast engine loops in place of one and
+     * the vm keeps its frames on the heap, so deep tail recursion can only overflow the
+     * stack on spec, closure and jvm. Self tail calls are marked by the resolution that
+     * interpret() uses (see frames()), so asking first does not resolve the tree twice.
+     */
+    public boolean tailCallsUseStack() {
+        if (astRoot == null || astRoot.getRoot() == null || runsInterpreter() || engine.equals("vm")) return false;
+        frames();
+        for (Visitable n : ast.TreeWalker.preOrder(astRoot.getRoot())) {
+            if (n instanceof ReturnStatement && ((ReturnStatement) n).isSelfTailCall()) return true;
+        }
+        return false;
+    }
+
+    // Whether interpret() runs the ast engine, selected or forced by an option that needs it
+    private boolean runsInterpreter() {
+        return engine.equals("ast") || profile != null || trace != null || snapshotFile != null || restoreFile != null;
+    }
+
+    private Engine newEngine(InputStream in, java.io.PrintStream out) {
+        if (runsInterpreter()) return newInterpreter(in, out);
+        switch (engine) {
+            case "spec":    return new SpecializingInterpreter(in, out);
+            case "closure": return new ClosureCompiler(in, out);
+            case "vm":      return new RegisterVM(in, out);
+            case "jvm":     return new JvmCompiler(in, out);
+            default:        return newInterpreter(in, out);
+        }
+    }
+
+    /** Register bytecode (see Bytecode) for the type-checked program. */
     public int[] compile() {
-        System.out.println("Compiler not implemented for this assignment.");
-        return new int[0];
+        if (astRoot == null || astRoot.getRoot() == null) {
+            return new int[0];
+        }
+        return new BytecodeCompiler().compile(astRoot.getRoot(), frames());
     }
 
+    /**
+     * Slots, call targets and the other facts of FrameResolver, written onto the tree
+     * the first time the program is run or compiled. Every later run only reads them,
+     * so runs may share the tree once this has returned.
+     */
+    synchronized FrameResolver frames() {
+        if (frames == null) frames = new FrameResolver(astRoot.getRoot());
+        return frames;
+    }
+
+    private String engine = "ast";
+    private Profile profile;
+    private Trace trace;
+    private boolean memoize;
+    private java.nio.file.Path snapshotFile;
+    private int snapshotAt;
+    private java.nio.file.Path restoreFile;
+
     // SymbolTable Management =====================================================
     private SymbolTable symbolTable;
 
+    // Fused type checking ========================================================
+    private boolean fusedTypeCheck;
+    private types.TypeChecker fusedChecker;
+    private int blockDepth;                          // inside if/while/repeat blocks
+    private java.util.Set<String> fusedParamNames = java.util.Collections.emptySet();
+
+    // Types the node just built (its children were typed when they were built)
+    private <T extends Visitable> T typed(T node) {
+        if (fusedChecker != null) node.accept(fusedChecker);
+        return node;
+    }
+
+    // The checker gives blocks their own scope and puts parameters and locals in one
+    // scope; the parser does neither, so declarations that depend on it go to the checker
+    private void checkFusedDeclaration(Token ident) {
+        if (fusedChecker != null && (blockDepth > 0 || fusedParamNames.contains(ident.lexeme()))) {
+            fusedChecker.markIncomplete();
+        }
+    }
+
     private void initSymbolTable() {
         symbolTable = new SymbolTable();
     }
@@ -257,14 +458,16 @@ public class Compiler {
         expect(Token.Kind.PERIOD);
         expect(Token.Kind.EOF);
 
-        return new Computation(
+        typed(varDecls);
+        typed(funcDecls);
+        return typed(new Computation(
             mainToken.lineNumber(),
             mainToken.charPosition(),
             new Symbol("main", new FuncType(new TypeList(), new VoidType())),
             varDecls,
             funcDecls,
             mainBody
-        );
+        ));
     }
 
     private List<Declaration> varDecl() {
@@ -292,9 +495,10 @@ public class Compiler {
                 expression();
             }
 
-            AST.TypeNode typeNode = new AST.TypeNode(baseTypeNode.lineNumber(), baseTypeNode.charPosition(), varType);
+            AST.TypeNode typeNode = typed(new AST.TypeNode(baseTypeNode.lineNumber(), baseTypeNode.charPosition(), varType));
+            checkFusedDeclaration(identToken);
             tryDeclareVariable(identToken, varType);
-            decls.add(new VariableDeclaration(baseTypeNode.lineNumber(), baseTypeNode.charPosition(), id, typeNode));
+            decls.add(typed(new VariableDeclaration(baseTypeNode.lineNumber(), baseTypeNode.charPosition(), id, typeNode)));
 
         } while (accept(Token.Kind.COMMA));
 
@@ -318,11 +522,11 @@ public class Compiler {
         }
 
         // Start with a base TypeNode
-        AST.TypeNode typeNode = new AST.TypeNode(
+        AST.TypeNode typeNode = typed(new AST.TypeNode(
                 typeToken.lineNumber(),
                 typeToken.charPosition(),
                 actualType
-        );
+        ));
 
         // Handle array brackets and nested dimensions
         while (accept(Token.Kind.OPEN_BRACKET)) {
@@ -345,11 +549,11 @@ public class Compiler {
             actualType = new ArrayType(size, actualType);
 
             // Update typeNode to wrap the most recent ArrayType
-            typeNode = new AST.TypeNode(
+            typeNode = typed(new AST.TypeNode(
                     typeToken.lineNumber(),
                     typeToken.charPosition(),
                     actualType
-            );
+            ));
         }
 
         return typeNode;
@@ -371,15 +575,29 @@ public class Compiler {
         Node returnTypeNode;
         if (have(Token.Kind.VOID)) {
             Token voidTok = expectRetrieve(Token.Kind.VOID);
-            returnTypeNode = new AST.TypeNode(voidTok.lineNumber(), voidTok.charPosition(), new VoidType());
+            returnTypeNode = typed(new AST.TypeNode(voidTok.lineNumber(), voidTok.charPosition(), new VoidType()));
         } else {
             returnTypeNode = typeDecl(); // int/float/bool and optional []s
         }
-        
-        FunctionBody body = funcBody();
+
+        FunctionBody body;
+        if (fusedChecker != null) {
+            // declared before the body so that recursive calls resolve
+            fusedChecker.declareFunction(id, params, returnTypeNode, funcToken.lineNumber(), funcToken.charPosition());
+            enterScope();                       // parameters
+            fusedChecker.beginFunction(id, params);
+            fusedParamNames = new java.util.HashSet<>();
+            for (FormalParameter p : params) fusedParamNames.add(p.getIdentifier().getName());
+            body = funcBody();
+            fusedParamNames = java.util.Collections.emptySet();
+            fusedChecker.endFunction();
+            exitScope();
+        } else {
+            body = funcBody();
+        }
         expect(Token.Kind.SEMICOLON);
         
-        return new FunctionDeclaration(funcToken.lineNumber(), funcToken.charPosition(), id, params, returnTypeNode, body);
+        return typed(new FunctionDeclaration(funcToken.lineNumber(), funcToken.charPosition(), id, params, returnTypeNode, body));
     }
 
     private List<FormalParameter> formalParams() {
@@ -409,10 +627,11 @@ public class Compiler {
             for (Declaration d : declsThisLine)
                 decls.add(d);
         }
+        typed(decls);
         StatementSequence stmts = statSeq();
         exitScope();
         expect(Token.Kind.CLOSE_BRACE);
-        return new FunctionBody(decls.lineNumber(), decls.charPosition(), decls, stmts);
+        return typed(new FunctionBody(decls.lineNumber(), decls.charPosition(), decls, stmts));
     }
 
     private StatementSequence statSeq() {
@@ -449,7 +668,7 @@ public class Compiler {
             }
         }
         
-        return seq;
+        return typed(seq);
     }
 
     private Statement statement() {
@@ -489,7 +708,7 @@ public class Compiler {
         if (accept(Token.Kind.ASSIGN)) {
             Expression src = expression();
             expect(Token.Kind.SEMICOLON);
-            return new Assignment(op.lineNumber(), op.charPosition(), dest, src);
+            return typed(new Assignment(op.lineNumber(), op.charPosition(), dest, src));
         }
 
         // Compound assignments: +=, -=, *=, /=, %=
@@ -501,30 +720,30 @@ public class Compiler {
             Expression result;
 
             if (op.is(Token.Kind.ADD_ASSIGN)) {
-                result = new Addition(dest.lineNumber(), dest.charPosition(), dest, src);
+                result = typed(new Addition(dest.lineNumber(), dest.charPosition(), dest, src));
             } else if (op.is(Token.Kind.SUB_ASSIGN)) {
-                result = new Subtraction(dest.lineNumber(), dest.charPosition(), dest, src);
+                result = typed(new Subtraction(dest.lineNumber(), dest.charPosition(), dest, src));
             } else if (op.is(Token.Kind.MUL_ASSIGN)) {
-                result = new Multiplication(dest.lineNumber(), dest.charPosition(), dest, src);
+                result = typed(new Multiplication(dest.lineNumber(), dest.charPosition(), dest, src));
             } else if (op.is(Token.Kind.DIV_ASSIGN)) {
-                result = new Division(dest.lineNumber(), dest.charPosition(), dest, src);
+                result = typed(new Division(dest.lineNumber(), dest.charPosition(), dest, src));
             } else { // MOD_ASSIGN
-                result = new Modulo(dest.lineNumber(), dest.charPosition(), dest, src);
+                result = typed(new Modulo(dest.lineNumber(), dest.charPosition(), dest, src));
             }
 
             expect(Token.Kind.SEMICOLON);
-            return new Assignment(dest.lineNumber(), dest.charPosition(), dest, result);
+            return typed(new Assignment(dest.lineNumber(), dest.charPosition(), dest, result));
         }
 
         // Unary increment/decrement: ++a / --a
         if (accept(Token.Kind.UNI_INC) || accept(Token.Kind.UNI_DEC)) {
             boolean isInc = op.is(Token.Kind.UNI_INC);
             expect(Token.Kind.SEMICOLON);
-            Expression one = new IntegerLiteral(dest.lineNumber(), dest.charPosition(), 1);
+            Expression one = typed(new IntegerLiteral(dest.lineNumber(), dest.charPosition(), 1));
             Expression result = isInc
-                                ? new Addition(dest.lineNumber(), dest.charPosition(), dest, one)
-                                : new Subtraction(dest.lineNumber(), dest.charPosition(), dest, one);
-            return new Assignment(dest.lineNumber(), dest.charPosition(), dest, result);
+                                ? typed(new Addition(dest.lineNumber(), dest.charPosition(), dest, one))
+                                : typed(new Subtraction(dest.lineNumber(), dest.charPosition(), dest, one));
+            return typed(new Assignment(dest.lineNumber(), dest.charPosition(), dest, result));
         }
 
         throw new QuitParseException(reportSyntaxError(NonTerminal.STATEMENT));
@@ -534,24 +753,28 @@ public class Compiler {
         Token ifToken = expectRetrieve(Token.Kind.IF);
         Expression condition = expression();
         expect(Token.Kind.THEN);
+        blockDepth++;
         StatementSequence thenBlock = statSeq();
         StatementSequence elseBlock = null;
         if (accept(Token.Kind.ELSE)) {
             elseBlock = statSeq();
         }
+        blockDepth--;
         expect(Token.Kind.FI);
         accept(Token.Kind.SEMICOLON);
-        return new IfStatement(ifToken.lineNumber(), ifToken.charPosition(), condition, thenBlock, elseBlock);
+        return typed(new IfStatement(ifToken.lineNumber(), ifToken.charPosition(), condition, thenBlock, elseBlock));
     }
 
     private WhileStatement whileStatement() {
         Token whileToken = expectRetrieve(Token.Kind.WHILE);
         Expression condition = expression();
         expect(Token.Kind.DO);
+        blockDepth++;
         StatementSequence body = statSeq();
+        blockDepth--;
         expect(Token.Kind.OD);  // OD ends the block, no semicolon
         expect(Token.Kind.SEMICOLON);
-        return new WhileStatement(whileToken.lineNumber(), whileToken.charPosition(), condition, body);
+        return typed(new WhileStatement(whileToken.lineNumber(), whileToken.charPosition(), condition, body));
     }
 
     private ReturnStatement returnStatement() {
@@ -561,7 +784,7 @@ public class Compiler {
             value = expression();
         }
         expect(Token.Kind.SEMICOLON);  // semicolon required at the end of return
-        return new ReturnStatement(retToken.lineNumber(), retToken.charPosition(), value);
+        return typed(new ReturnStatement(retToken.lineNumber(), retToken.charPosition(), value));
     }
 
     private StatementSequence statSeqUntil(Token.Kind stopToken) {
@@ -583,16 +806,18 @@ public class Compiler {
                 currentToken = scanner.next();
             }
         }
-        return seq;
+        return typed(seq);
     }
     
     private RepeatStatement repeatStatement() {
         Token repeatToken = expectRetrieve(Token.Kind.REPEAT);
+        blockDepth++;
         StatementSequence body = statSeqUntil(Token.Kind.UNTIL);
+        blockDepth--;
         expect(Token.Kind.UNTIL);
         Expression condition = expression();  // UNTIL condition ends statement naturally
         expect(Token.Kind.SEMICOLON);
-        return new RepeatStatement(repeatToken.lineNumber(), repeatToken.charPosition(), body, condition);
+        return typed(new RepeatStatement(repeatToken.lineNumber(), repeatToken.charPosition(), body, condition));
     }
 
     private Expression expression() {
@@ -606,7 +831,7 @@ public class Compiler {
             Token op = currentToken;          // capture before consuming
             accept(Token.Kind.OR);
             Expression right = andExpr();
-            left = new LogicalOr(op.lineNumber(), op.charPosition(), left, right);
+            left = typed(new LogicalOr(op.lineNumber(), op.charPosition(), left, right));
         }
         return left;
     }
@@ -617,7 +842,7 @@ public class Compiler {
             Token op = currentToken;          // capture before consuming
             accept(Token.Kind.AND);
             Expression right = relExpr();
-            left = new LogicalAnd(op.lineNumber(), op.charPosition(), left, right);
+            left = typed(new LogicalAnd(op.lineNumber(), op.charPosition(), left, right));
         }
         return left;
     }
@@ -628,7 +853,7 @@ public class Compiler {
             Token op = currentToken;
             accept(NonTerminal.REL_OP);
             Expression right = addExpr();
-            left = new Relation(op.lineNumber(), op.charPosition(), left, right, op.lexeme());
+            left = typed(new Relation(op.lineNumber(), op.charPosition(), left, right, op.lexeme()));
         }
         return left;
     }
@@ -640,9 +865,9 @@ public class Compiler {
             accept(NonTerminal.ADD_OP);
             Expression right = mulExpr();
             if (op.is(Token.Kind.ADD)) {
-                left = new Addition(op.lineNumber(), op.charPosition(), left, right);
+                left = typed(new Addition(op.lineNumber(), op.charPosition(), left, right));
             } else { // SUB
-                left = new Subtraction(op.lineNumber(), op.charPosition(), left, right);
+                left = typed(new Subtraction(op.lineNumber(), op.charPosition(), left, right));
             }
         }
         return left;
@@ -655,11 +880,11 @@ public class Compiler {
             accept(NonTerminal.MUL_OP);
             Expression right = powExpr();
             if (op.is(Token.Kind.MUL)) {
-                left = new Multiplication(op.lineNumber(), op.charPosition(), left, right);
+                left = typed(new Multiplication(op.lineNumber(), op.charPosition(), left, right));
             } else if (op.is(Token.Kind.DIV)) {
-                left = new Division(op.lineNumber(), op.charPosition(), left, right);
+                left = typed(new Division(op.lineNumber(), op.charPosition(), left, right));
             } else { // MOD
-                left = new Modulo(op.lineNumber(), op.charPosition(), left, right);
+                left = typed(new Modulo(op.lineNumber(), op.charPosition(), left, right));
             }
         }
         return left;
@@ -672,7 +897,7 @@ public class Compiler {
             Token op = currentToken;          // capture before consuming
             accept(Token.Kind.POW);
             Expression right = powExpr(); // Recursive call for right-associativity
-            return new Power(op.lineNumber(), op.charPosition(), left, right);
+            return typed(new Power(op.lineNumber(), op.charPosition(), left, right));
         }
         return left;
     }
@@ -684,12 +909,12 @@ public class Compiler {
     	if (have(Token.Kind.NOT)) {
             Token op = expectRetrieve(Token.Kind.NOT);
             Expression e = factor(); // right-associative unary
-            return new LogicalNot(op.lineNumber(), op.charPosition(), e);
+            return typed(new LogicalNot(op.lineNumber(), op.charPosition(), e));
         }
     	if (have(Token.Kind.SUB)) {  // handle unary minus
             Token op = expectRetrieve(Token.Kind.SUB);
             Expression right = factor(); // recursive call for unary
-            return new UnaryMinus(op.lineNumber(), op.charPosition(), right);
+            return typed(new UnaryMinus(op.lineNumber(), op.charPosition(), right));
         }
     	if (have(Token.Kind.IDENT)) {
     	    Token identToken = expectRetrieve(Token.Kind.IDENT);
@@ -700,29 +925,29 @@ public class Compiler {
     	    }
 
     	    // r-value designator: IDENT [expr]...
-    	    Expression d = new Identifier(identToken.lineNumber(), identToken.charPosition(), identToken.lexeme());
+    	    Expression d = typed(new Identifier(identToken.lineNumber(), identToken.charPosition(), identToken.lexeme()));
     	    while (accept(Token.Kind.OPEN_BRACKET)) {
     	        Expression index = expression();
     	        expect(Token.Kind.CLOSE_BRACKET);
-    	        d = new ArrayIndex(d.lineNumber(), d.charPosition(), d, index);
+    	        d = typed(new ArrayIndex(d.lineNumber(), d.charPosition(), d, index));
     	    }
     	    return d;
     	}
         if (have(Token.Kind.INT_VAL)) {
             Token tok = expectRetrieve(Token.Kind.INT_VAL);
-            return new IntegerLiteral(tok.lineNumber(), tok.charPosition(), Integer.parseInt(tok.lexeme()));
+            return typed(new IntegerLiteral(tok.lineNumber(), tok.charPosition(), Integer.parseInt(tok.lexeme())));
         }
         if (have(Token.Kind.FLOAT_VAL)) {
             Token tok = expectRetrieve(Token.Kind.FLOAT_VAL);
-            return new FloatLiteral(tok.lineNumber(), tok.charPosition(), Float.parseFloat(tok.lexeme()));
+            return typed(new FloatLiteral(tok.lineNumber(), tok.charPosition(), Float.parseFloat(tok.lexeme())));
         }
         if (have(Token.Kind.TRUE)) {
             Token tok = expectRetrieve(Token.Kind.TRUE);
-            return new BoolLiteral(tok.lineNumber(), tok.charPosition(), true);
+            return typed(new BoolLiteral(tok.lineNumber(), tok.charPosition(), true));
         }
         if (have(Token.Kind.FALSE)) {
             Token tok = expectRetrieve(Token.Kind.FALSE);
-            return new BoolLiteral(tok.lineNumber(), tok.charPosition(), false);
+            return typed(new BoolLiteral(tok.lineNumber(), tok.charPosition(), false));
         }
         if (accept(Token.Kind.OPEN_PAREN)) {
             Expression expr = expression();
@@ -734,12 +959,12 @@ public class Compiler {
 
     private Expression designator() {
         Token identToken = expectRetrieve(Token.Kind.IDENT);
-        Expression designator = new Identifier(identToken.lineNumber(), identToken.charPosition(), identToken.lexeme());
+        Expression designator = typed(new Identifier(identToken.lineNumber(), identToken.charPosition(), identToken.lexeme()));
 
         while (accept(Token.Kind.OPEN_BRACKET)) {
             Expression index = expression();
             expect(Token.Kind.CLOSE_BRACKET);
-            designator = new ArrayIndex(designator.lineNumber(), designator.charPosition(), designator, index);
+            designator = typed(new ArrayIndex(designator.lineNumber(), designator.charPosition(), designator, index));
         }
 
         // Only wrap in AddressOf if it is used as an L-value in assignment
@@ -749,16 +974,16 @@ public class Compiler {
     private Expression literal() {
         Token tok = currentToken;
         if (accept(Token.Kind.INT_VAL)) {
-            return new IntegerLiteral(tok.lineNumber(), tok.charPosition(), Integer.parseInt(tok.lexeme()));
+            return typed(new IntegerLiteral(tok.lineNumber(), tok.charPosition(), Integer.parseInt(tok.lexeme())));
         }
         if (accept(Token.Kind.FLOAT_VAL)) {
-            return new FloatLiteral(tok.lineNumber(), tok.charPosition(), Float.parseFloat(tok.lexeme()));
+            return typed(new FloatLiteral(tok.lineNumber(), tok.charPosition(), Float.parseFloat(tok.lexeme())));
         }
         if (accept(Token.Kind.TRUE)) {
-            return new BoolLiteral(tok.lineNumber(), tok.charPosition(), true);
+            return typed(new BoolLiteral(tok.lineNumber(), tok.charPosition(), true));
         }
         if (accept(Token.Kind.FALSE)) {
-            return new BoolLiteral(tok.lineNumber(), tok.charPosition(), false);
+            return typed(new BoolLiteral(tok.lineNumber(), tok.charPosition(), false));
         }
         throw new QuitParseException(reportSyntaxError(NonTerminal.LITERAL));
     }
@@ -777,8 +1002,9 @@ public class Compiler {
             }
         }
         expect(Token.Kind.CLOSE_PAREN);
+        typed(args);
 
-        return new FunctionCall(callToken.lineNumber(), callToken.charPosition(), id, args);
+        return typed(new FunctionCall(callToken.lineNumber(), callToken.charPosition(), id, args));
     }
     
     private FunctionCall parseFuncCall(Token identToken) {
@@ -792,7 +1018,8 @@ public class Compiler {
             }
         }
         expect(Token.Kind.CLOSE_PAREN);
-        return new FunctionCall(identToken.lineNumber(), identToken.charPosition(), id, args);
+        typed(args);
+        return typed(new FunctionCall(identToken.lineNumber(), identToken.charPosition(), id, args));
     }
     
     private IR currentIR;
@@ -919,12 +1146,7 @@ public class Compiler {
             if (e instanceof AST.Relation rel) {
                 Value L = val(rel.getLeft()), R = val(rel.getRight());
                 Variable t = newTmp();
-                final String op = switch (rel.getOperator()) {
-                    case "==" -> "cmpeq"; case "!=" -> "cmpne";
-                    case "<"  -> "cmplt"; case "<=" -> "cmple";
-                    case ">"  -> "cmpgt"; case ">=" -> "cmpge";
-                    default -> "cmp?";
-                };
+                final String op = "cmp" + rel.getOp().name().toLowerCase();
                 cur.addInstruction(new Assign(newId(), t, L, R){ @Override protected String op(){ return op; }});
                 return t;
             }
@@ -1057,445 +1279,4 @@ public class Compiler {
         // For now, no-ops — just return the graph of currentIR.
         return currentIR.asDotGraph();
     }
-    
- // ---------- Minimal interpreter for the I/O test ----------
-    	private static final class MiniInterpreter implements ast.NodeVisitor {
-        private final java.util.Scanner sc;
-        private final java.io.PrintStream out;
-        private final java.util.Map<String,Object> env = new java.util.HashMap<>();
-        private final java.util.Map<String, AST.FunctionDeclaration> funcs = new java.util.HashMap<>();
-        private Object eval; // holds last evaluated expression result
-
-        MiniInterpreter(InputStream in, java.io.PrintStream out) {
-            this.sc = new java.util.Scanner(in);
-            this.out = out;
-        }
-
-        void run(ast.Computation prog) {
-            // 1) Index function declarations (handy for user-defined calls later)
-            for (AST.Declaration d : prog.functions()) {
-                if (d instanceof AST.FunctionDeclaration) {
-                	AST.FunctionDeclaration fd = (AST.FunctionDeclaration) d;
-                    funcs.put(fd.getIdentifier().getName(), fd);
-                }
-            }
-
-            // 2) Allocate/initialize globals with sensible defaults
-            for (AST.Declaration d : prog.variables()) {
-                if (d instanceof AST.VariableDeclaration) {
-                	AST.VariableDeclaration vd = (AST.VariableDeclaration) d;
-                    AST.TypeNode tn = (AST.TypeNode) vd.getTypeNode();
-                    types.Type t = tn.getActualType();
-                    Object def = defaultValueForType(t);
-                    env.put(vd.getIdentifier().getName(), def);
-                }
-            }
-
-            // 3) Execute main body
-            prog.mainStatementSequence().accept(this);
-        }
-
-        /** Default value for a type (ints 0, floats 0.0f, bool false, arrays allocated and filled). */
-        private Object defaultValueForType(types.Type t) {
-            if (t instanceof types.IntType)   return Integer.valueOf(0);
-            if (t instanceof types.FloatType) return Float.valueOf(0.0f); // use Float, not Double
-            if (t instanceof types.BoolType)  return Boolean.FALSE;
-            if (t instanceof types.ArrayType) return allocArray((types.ArrayType) t);
-            return null; // for void or unknown, nothing to store
-        }
-
-        /** Recursively allocates Java arrays for Mocha array types (only when extent >= 0). */
-        private Object allocArray(types.ArrayType at) {
-            int n = at.getExtent();
-            if (n < 0) return null; // unspecified size: don’t allocate
-            Object[] arr = new Object[n];
-            for (int i = 0; i < n; i++) {
-                arr[i] = defaultValueForType(at.getBase());
-            }
-            return arr;
-        }
-        
-        private static final class ReturnSignal extends RuntimeException {
-            final Object value;
-            ReturnSignal(Object v) { this.value = v; }
-        }
-        
-        private boolean asBool(Object v) {
-            if (v instanceof Boolean) return (Boolean) v;
-            throw new RuntimeException("Condition is not boolean: " + v);
-        }
-        
-        @Override
-        public void visit(AST.ReturnStatement node) {
-            if (node.getValue() != null) {
-                node.getValue().accept(this);
-                throw new ReturnSignal(eval);
-            } else {
-                throw new ReturnSignal(null);
-            }
-        }
-        
-        private static boolean isInt(Object o)    { return o instanceof Integer; }
-        private static boolean isFloaty(Object o) { return o instanceof Float || o instanceof Double; }
-        private static double  toDouble(Object o) {
-            if (o instanceof Integer) return ((Integer)o).doubleValue();
-            if (o instanceof Float)   return ((Float)o).doubleValue();
-            if (o instanceof Double)  return (Double)o;
-            throw new RuntimeException("N/A");
-        }
-        
-        @Override
-        public void visit(AST.IntegerLiteral n) { eval = Integer.valueOf(n.getValue()); }
-
-        @Override
-        public void visit(AST.FloatLiteral n)   { eval = Float.valueOf(n.getValue()); }
-
-        @Override
-        public void visit(AST.UnaryMinus n) {
-            n.getExpr().accept(this);
-            Object v = eval;
-            if (isInt(v))        eval = -((Integer) v);
-            else if (isFloaty(v)) eval = Float.valueOf((float)(-toDouble(v)));
-            else throw new RuntimeException("Unary minus on non-numeric: " + v);
-        }
-
-        @Override
-        public void visit(AST.Addition n) {
-            n.getLeft().accept(this);  Object L = eval;
-            n.getRight().accept(this); Object R = eval;
-            if (isInt(L) && isInt(R)) eval = (Integer)L + (Integer)R;
-            else eval = Float.valueOf((float)(toDouble(L) + toDouble(R)));
-        }
-
-        @Override
-        public void visit(AST.Subtraction n) {
-            n.getLeft().accept(this);  Object L = eval;
-            n.getRight().accept(this); Object R = eval;
-            if (isInt(L) && isInt(R)) eval = (Integer)L - (Integer)R;
-            else eval = Float.valueOf((float)(toDouble(L) - toDouble(R)));
-        }
-
-        @Override
-        public void visit(AST.Multiplication n) {
-            n.getLeft().accept(this);  Object L = eval;
-            n.getRight().accept(this); Object R = eval;
-            if (isInt(L) && isInt(R)) eval = (Integer)L * (Integer)R;
-            else eval = Float.valueOf((float)(toDouble(L) * toDouble(R)));
-        }
-
-        @Override
-        public void visit(AST.Division n) {
-            n.getLeft().accept(this);  Object L = eval;
-            n.getRight().accept(this); Object R = eval;
-            eval = Float.valueOf((float)(toDouble(L) / toDouble(R))); // numeric division
-        }
-
-        @Override
-        public void visit(AST.Modulo n) {
-            n.getLeft().accept(this);  Object L = eval;
-            n.getRight().accept(this); Object R = eval;
-            if (isInt(L) && isInt(R)) eval = (Integer)L % (Integer)R;
-            else throw new RuntimeException("Modulo requires int operands at runtime");
-        }
-        
-        @Override
-        public void visit(AST.LogicalNot n) {
-            n.getExpression().accept(this);
-            eval = Boolean.valueOf(!asBool(eval));
-        }
-
-        @Override
-        public void visit(AST.LogicalAnd n) {
-            n.getLeft().accept(this);
-            boolean lb = asBool(eval);
-            if (!lb) { eval = Boolean.FALSE; return; } // short-circuit
-            n.getRight().accept(this);
-            eval = Boolean.valueOf(asBool(eval));
-        }
-
-        @Override
-        public void visit(AST.LogicalOr n) {
-            n.getLeft().accept(this);
-            boolean lb = asBool(eval);
-            if (lb) { eval = Boolean.TRUE; return; } // short-circuit
-            n.getRight().accept(this);
-            eval = Boolean.valueOf(asBool(eval));
-        }
-        
-        @Override
-        public void visit(AST.Power n) {
-            n.getBase().accept(this);
-            Object L = eval;
-            n.getExponent().accept(this);
-            Object R = eval;
-
-            if (isInt(L) && isInt(R)) {
-                int b = (Integer) L;
-                int e = (Integer) R;
-                if (e < 0) {
-                    // negative int exponent -> float result
-                    eval = Float.valueOf((float)Math.pow(b, e));
-                } else {
-                    eval = Integer.valueOf(intPow(b, e));
-                }
-                return;
-            }
-
-            // any float involved -> float result
-            double bd = toDouble(L);
-            double ed = toDouble(R);
-            eval = Float.valueOf((float)Math.pow(bd, ed));
-        }
-
-        // fast integer power (non-negative exponent)
-        private int intPow(int base, int exp) {
-            int result = 1;
-            int b = base;
-            int e = exp;
-            while (e > 0) {
-                if ((e & 1) == 1) result *= b;
-                b *= b;
-                e >>= 1;
-            }
-            return result;
-        }
-
-        @Override
-        public void visit(AST.Relation n) {
-            n.getLeft().accept(this);  Object L = eval;
-            n.getRight().accept(this); Object R = eval;
-
-            // Adjust the getter to match your AST: getOp() / getOperator() / getRelop()
-            String op = n.getOperator();
-
-            boolean res;
-            if (L instanceof Number && R instanceof Number) {
-                double a = toDouble(L), b = toDouble(R);
-                switch (op) {
-                    case "==": res = (a == b); break;
-                    case "!=": res = (a != b); break;
-                    case "<":  res = (a <  b); break;
-                    case "<=": res = (a <= b); break;
-                    case ">":  res = (a >  b); break;
-                    case ">=": res = (a >= b); break;
-                    default: throw new RuntimeException("Unknown relop: " + op);
-                }
-            } else if (L instanceof Boolean && R instanceof Boolean) {
-                boolean a = (Boolean)L, b = (Boolean)R;
-                switch (op) {
-                    case "==": res = (a == b); break;
-                    case "!=": res = (a != b); break;
-                    default: throw new RuntimeException("Bool relop not supported: " + op);
-                }
-            } else {
-                throw new RuntimeException("Relation operands must be both numeric or both bool");
-            }
-            eval = Boolean.valueOf(res);
-        }
-
-        // ---------- statements ----------
-        @Override
-        public void visit(AST.StatementSequence node) {
-            for (ast.Statement s : node) if (s != null) s.accept(this);
-        }
-        
-        @Override
-        public void visit(AST.VariableDeclaration n) {
-            types.Type t = ((AST.TypeNode) n.getTypeNode()).getActualType();
-            env.put(n.getIdentifier().getName(), defaultValueForType(t));
-        }
-
-//        @Override
-//        public void visit(AST.Assignment node) {
-//            node.getSource().accept(this);
-//            Object rhs = eval;
-//            // only simple identifiers needed for the first test
-//            if (node.getDestination() instanceof AST.Identifier id) {
-//                env.put(id.getName(), rhs);
-//            } else {
-//                throw new RuntimeException("Only simple assignments supported in MiniInterpreter.");
-//            }
-//            eval = null;
-//        }
-
-        @Override
-        public void visit(AST.FunctionCall n) {
-            // 1) Evaluate argument expressions to values
-            java.util.List<Object> argVals = new java.util.ArrayList<>();
-            for (ast.Expression e : n.getArguments().getArguments()) {
-                e.accept(this);
-                argVals.add(eval);
-            }
-
-            String name = n.getIdentifier().getName();
-
-            // 2) Built-ins (no default that throws!)
-            if ("printInt".equals(name)) {
-                int i = (argVals.get(0) instanceof Number) ? ((Number)argVals.get(0)).intValue() : 0;
-                out.print(i + " ");
-                eval = null; 
-                return;
-            } else if ("printFloat".equals(name)) {
-                double d = (argVals.get(0) instanceof Number) ? ((Number)argVals.get(0)).doubleValue() : 0.0;
-                out.printf("%.2f ", d);
-                eval = null; 
-                return;
-            } else if ("printBool".equals(name)) {
-                boolean b = (argVals.get(0) instanceof Boolean) ? ((Boolean)argVals.get(0)) : false;
-                out.print(b ? "true " : "false ");
-                eval = null; 
-                return;
-            } else if ("println".equals(name)) {
-                out.println();
-                eval = null; 
-                return;
-            } else if ("readInt".equals(name)) {
-                out.print("int? ");
-                eval = Integer.valueOf(sc.nextInt());
-                return;
-            } else if ("readFloat".equals(name)) {
-                out.print("float? ");
-                eval = Double.valueOf(sc.nextDouble());
-                return;
-            } else if ("readBool".equals(name)) {
-                out.print("true or false? ");
-                String tok = sc.next();
-                eval = Boolean.valueOf("true".equalsIgnoreCase(tok.trim()));
-                return;
-            }
-
-            // 3) User-defined function
-            AST.FunctionDeclaration fd = funcs.get(name);
-            if (fd == null) throw new RuntimeException("N/A");
-
-            // Save current env (simple single-frame model)
-            java.util.Map<String,Object> saved = new java.util.HashMap<>(env);
-            try {
-                // Bind parameters (values, not AST nodes!)
-                java.util.List<AST.FormalParameter> ps = fd.getParameters();
-                for (int i = 0; i < ps.size(); i++) {
-                    env.put(ps.get(i).getIdentifier().getName(), argVals.get(i));
-                }
-
-                // Allocate locals with defaults
-                for (AST.Declaration d : fd.getBody().getDeclarations()) {
-                    if (d instanceof AST.VariableDeclaration) {
-                    	AST.VariableDeclaration vd = (AST.VariableDeclaration) d;
-                        types.Type t = ((AST.TypeNode)vd.getTypeNode()).getActualType();
-                        env.put(vd.getIdentifier().getName(), defaultValueForType(t));
-                    }
-                }
-
-                // Execute body and catch return
-                try {
-                    fd.getBody().getStatements().accept(this);
-                    eval = null; // no explicit return => void
-                } catch (ReturnSignal r) {
-                    eval = r.value;
-                }
-            } finally {
-                env.clear();
-                env.putAll(saved);
-            }
-        }
-        
-        @Override
-        public void visit(AST.IfStatement n) {
-            n.getCondition().accept(this);
-            if (asBool(eval)) {
-                n.getThenBlock().accept(this);
-            } else if (n.getElseBlock() != null) {
-                n.getElseBlock().accept(this);
-            }
-            eval = null;
-        }
-
-        @Override
-        public void visit(AST.WhileStatement n) {
-            for (;;) {
-                n.getCondition().accept(this);
-                if (!asBool(eval)) break;
-                n.getBody().accept(this);
-            }
-            eval = null;
-        }
-
-        @Override
-        public void visit(AST.RepeatStatement n) {
-            do {
-                n.getBody().accept(this);
-                n.getCondition().accept(this);
-            } while (!asBool(eval));
-            eval = null;
-        }
-
-        @Override
-        public void visit(AST.ArgumentList node) {
-            // Evaluate args left-to-right; keep last in eval for convenience
-            for (ast.Expression e : node.getArguments()) e.accept(this);
-        }
-        
-        @Override
-        public void visit(AST.Assignment node) {
-            // evaluate RHS normally
-            node.getSource().accept(this);
-            Object rhs = eval;
-
-            ast.Expression dest = node.getDestination();
-            if (dest instanceof AST.Identifier) {
-            	AST.Identifier id = (AST.Identifier) dest;
-                env.put(id.getName(), rhs);
-            } else if (dest instanceof AST.ArrayIndex ) {
-            	AST.ArrayIndex ai = (AST.ArrayIndex) dest;
-                // evaluate base and index explicitly (we need the container)
-            	Object base = valueOf(ai.getBase());
-            	if (!(base instanceof Object[])) {
-            	    throw new RuntimeException("Assigning into non-array");
-            	}
-            	Object[] arr = (Object[]) base;
-
-            	// evaluate index once and validate it's numeric
-            	Object idxObj = valueOf(ai.getIndex());
-            	if (!(idxObj instanceof Number)) {
-            	    throw new RuntimeException("Array index is not an int");
-            	}
-            	int idx = ((Number) idxObj).intValue();
-
-            	if (idx < 0 || idx >= arr.length) {
-            	    throw new RuntimeException("Index out of bounds: " + idx);
-            	}
-
-            	arr[idx] = rhs;
-            } else {
-                throw new RuntimeException("Unsupported lvalue: " + dest.getClass().getSimpleName());
-            }
-            eval = null;
-        }
-
-        // ---------- expressions ----------
-        @Override public void visit(AST.BoolLiteral node)   { eval = Boolean.valueOf(node.getValue()); }
-
-        @Override
-        public void visit(AST.Identifier node) {
-            Object v = env.get(node.getName());
-            if (v == null) throw new RuntimeException("Uninitialized var: " + node.getName());
-            eval = v;
-        }
-
-        // The rest of NodeVisitor methods (not used in the I/O test) can be no-ops:
-        @Override public void visit(ast.Computation n) {}
-        @Override public void visit(AST.AddressOf n)   { throw new RuntimeException("N/A"); }
-        @Override public void visit(AST.ArrayIndex n)  { throw new RuntimeException("N/A"); }
-        @Override public void visit(AST.Dereference n) { throw new RuntimeException("N/A"); }
-        @Override public void visit(AST.FunctionBody n){ throw new RuntimeException("N/A"); }
-        @Override public void visit(AST.FunctionDeclaration n){ throw new RuntimeException("N/A"); }
-        @Override public void visit(AST.DeclarationList n){ /* globals handled in run() */ }
-        @Override public void visit(AST.TypeNode n) {}
-
-        // helper to evaluate an expression node to a Java value
-        private Object valueOf(ast.Expression e) {
-            e.accept(this);
-            return eval;
-        }
-    }
 }
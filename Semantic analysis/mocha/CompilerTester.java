@@ -1,5 +1,7 @@
 package mocha;
 
+import ast.TreeWalker;
+import ast.Visitable;
 import java.io.*;
 import org.apache.commons.cli.*;
 
@@ -13,6 +15,18 @@ public class CompilerTester {
         options.addOption("nr", "reg", true, "Num Regs"); // needed for interpreter mode
         options.addOption("a", "astOut", false, "Print AST");
         options.addOption("int", "interpret", false, "Interpreter mode");
+        options.addOption("e", "engine", true, "Interpreter engine: ast (default), spec, closure, vm, jvm");
+        options.addOption("prof", "profile", true, "Profile the run (ast engine) and report to stderr as text or json");
+        options.addOption("fuel", "fuel", true, "Stop the run (ast engine) after this many loop iterations and calls");
+        options.addOption("memo", "memoize", false, "Remember the results of pure functions (ast engine)");
+        options.addOption("snap", "snapshot", true, "Save the run's state (ast engine) to this file after -snapAfter main statements");
+        options.addOption("snapAfter", "snapshotAfter", true, "Main statements to run before saving the snapshot");
+        options.addOption("restore", "restore", true, "Resume the run (ast engine) from this snapshot file, skipping the input it read");
+        options.addOption("trace", "trace", true, "Trace the run (ast engine) and dump the last records to this file, also on an error");
+        options.addOption("ptc", "parallelTypeCheck", false, "Type check function bodies in parallel");
+        options.addOption("tc", "typeCache", true, "Directory of cached type checking results");
+        options.addOption("fused", "fusedTypeCheck", false, "Type check while parsing");
+        options.addOption("inc", "incremental", true, "Then type check this edited version of the source incrementally");
 
         HelpFormatter formatter = new HelpFormatter();
         CommandLineParser cmdParser = new DefaultParser();
@@ -65,6 +79,7 @@ public class CompilerTester {
 
         
         Compiler c = new Compiler(s, numRegs);
+        c.setFusedTypeCheck(cmd.hasOption("fused"));
         ast.AST ast = c.genAST();
         if (cmd.hasOption("a")) { // AST to Screen
             String ast_text = ast.printPreOrder();
@@ -78,18 +93,139 @@ public class CompilerTester {
         }
 
         types.TypeChecker tc = new types.TypeChecker();
+        tc.setParallel(cmd.hasOption("ptc"));
+        tc.setIncremental(cmd.hasOption("inc"));
+        if (cmd.hasOption("tc")) {
+            try {
+                tc.setCache(new types.TypeCache(java.nio.file.Paths.get(cmd.getOptionValue("tc")), 4096));
+            } catch (IOException e) {
+                System.err.println("Error accessing the type cache: \"" + cmd.getOptionValue("tc") + "\"");
+            }
+        }
 
-        if (!tc.check(ast)) {
-            System.out.println("Error type-checking file.");
-            System.out.println(tc.errorReport());
-            System.exit(-4);
+        // A fused parse that typed everything needs no second pass; with -ea the full
+        // checker still runs and must agree with it
+        boolean fused = c.isFusedTyped();
+        java.util.List<String> fusedTypes = fused ? typeSnapshot(ast) : null;
+        if (!fused || cmd.hasOption("inc") || CompilerTester.class.desiredAssertionStatus()) {
+            if (!tc.check(ast)) {
+                System.out.println("Error type-checking file.");
+                System.out.println(tc.errorReport());
+                System.exit(-4);
+            }
+            if (fused && !fusedTypes.equals(typeSnapshot(ast))) {
+                throw new AssertionError("fused type check disagrees with TypeChecker");
+            }
+        }
+
+        if (cmd.hasOption("inc")) {
+            recheck(tc, cmd.getOptionValue("inc"), numRegs);
+            return;
         }
 
         if (cmd.hasOption("int")) { // Interpreter mode - at this point the program is well-formed
-            c.interpret(in);
+            try {
+                c.setEngine(cmd.getOptionValue("engine", "ast"));
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.exit(-5);
+            }
+            c.setMemoize(cmd.hasOption("memo"));
+            Profile profile = null;
+            if (cmd.hasOption("profile")) {
+                profile = new Profile();
+                c.setProfile(profile);
+            }
+            if (cmd.hasOption("snapshot")) {
+                c.setSnapshot(java.nio.file.Paths.get(cmd.getOptionValue("snapshot")),
+                              Integer.parseInt(cmd.getOptionValue("snapshotAfter", "0")));
+            }
+            if (cmd.hasOption("restore")) c.setRestore(java.nio.file.Paths.get(cmd.getOptionValue("restore")));
+            Trace trace = null;
+            if (cmd.hasOption("trace")) {
+                trace = new Trace();
+                c.setTrace(trace);
+            }
+            if (!cmd.hasOption("fuel") && c.tailCallsUseStack()) {
+                System.err.println("Warning: only the ast and vm engines run tail calls without growing the Java stack; deep tail recursion may overflow with -e "
+                                   + cmd.getOptionValue("engine"));
+            }
+            try {
+                if (cmd.hasOption("fuel")) {
+                    RunResult result = c.interpret(in, System.out, Fuel.limit(Long.parseLong(cmd.getOptionValue("fuel"))));
+                    if (result.status() == RunResult.Status.FAILED) throw result.error();
+                    if (result.status() != RunResult.Status.COMPLETED) System.err.println(result);
+                } else {
+                    c.interpret(in);
+                }
+            } finally {
+                if (trace != null) dump(trace, cmd.getOptionValue("trace"));
+            }
+            if (profile != null) {
+                System.err.println("json".equals(cmd.getOptionValue("profile")) ? profile.toJson() : profile.toText());
+            }
         } else {
             System.out.println("Success type-checking file.");
         }
        
     }
+
+    // Checks the edited program with the checker that checked the original, listing which
+    // function bodies it re-checked and which kept their results, then checks it again
+    // from scratch: both checks must give every node the same type and symbol
+    private static void recheck(types.TypeChecker tc, String editedFile, int numRegs) {
+        ast.AST edited = parse(editedFile, numRegs);
+        boolean ok = tc.check(edited);
+        types.DependencyGraph graph = tc.dependencies();
+        for (String f : graph.functions()) {
+            System.out.println((graph.wasReused(f) ? "Reused " : "Checked ") + f + " "
+                               + new java.util.TreeSet<>(graph.dependenciesOf(f)));
+        }
+        if (!ok) {
+            System.out.println("Error type-checking file.");
+            System.out.println(tc.errorReport());
+            System.exit(-4);
+        }
+        ast.AST fresh = parse(editedFile, numRegs);
+        new types.TypeChecker().check(fresh);
+        if (!typeSnapshot(edited).equals(typeSnapshot(fresh))) {
+            throw new AssertionError("incremental type check disagrees with a full check");
+        }
+        System.out.println("Success type-checking file.");
+    }
+
+    private static ast.AST parse(String file, int numRegs) {
+        Compiler c = null;
+        try {
+            c = new Compiler(new mocha.Scanner(file, new FileReader(file)), numRegs);
+        } catch (IOException e) {
+            System.err.println("Error accessing the code file: \"" + file + "\"");
+            System.exit(-3);
+        }
+        ast.AST tree = c.genAST();
+        if (c.hasError()) {
+            System.out.println("Error parsing file.");
+            System.out.println(c.errorReport());
+            System.exit(-8);
+        }
+        return tree;
+    }
+
+    private static void dump(Trace trace, String file) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            trace.writeTo(out);
+        } catch (IOException e) {
+            System.err.println("Error writing the trace file: \"" + file + "\"");
+        }
+    }
+
+    // Type and symbol of every node, in pre-order
+    private static java.util.List<String> typeSnapshot(ast.AST tree) {
+        java.util.List<String> out = new java.util.ArrayList<>();
+        for (Visitable n : TreeWalker.preOrder(tree.getRoot())) {
+            String sym = (n instanceof ast.AST.Identifier) ? " " + ((ast.AST.Identifier) n).getSymbol() : "";
+            out.add(n.getClass().getSimpleName() + " " + n.getType() + sym);
+        }
+        return out;
+    }
 }
@@ -0,0 +1,14 @@
+package mocha;
+
+/**
+ * Executes a type-checked program. Engines read from and write to the streams
+ * they were created with; see Compiler.setEngine for the available ones.
+ */
+interface Engine {
+
+    /**
+     * Runs program, whose variables and calls frames has already resolved onto the
+     * tree. A run only reads the tree, so any number of runs may share it.
+     */
+    void run(ast.Computation program, FrameResolver frames);
+}
@@ -0,0 +1,62 @@
+package mocha;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Times every execution engine on the same program:
+ *
+ *     java mocha.EngineBenchmark <source> [data file] [runs]
+ *
+ * The program is parsed and type-checked once; each engine then runs it the given
+ * number of times (default 10) after as many warm-up runs, reading the data file
+ * afresh every time and discarding the output. Reports the best and median run.
+ */
+public class EngineBenchmark {
+
+    private static final String[] ENGINES = {"ast", "spec", "closure", "vm", "jvm"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: EngineBenchmark <source> [data file] [runs]");
+            System.exit(-1);
+        }
+        byte[] data = (args.length > 1) ? Files.readAllBytes(Paths.get(args[1])) : new byte[0];
+        int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+
+        Compiler c = new Compiler(new mocha.Scanner(args[0], new FileReader(args[0])), 24);
+        ast.AST ast = c.genAST();
+        if (c.hasError()) {
+            System.out.println("Error parsing file.");
+            System.out.println(c.errorReport());
+            System.exit(-8);
+        }
+        types.TypeChecker tc = new types.TypeChecker();
+        if (!tc.check(ast)) {
+            System.out.println("Error type-checking file.");
+            System.out.println(tc.errorReport());
+            System.exit(-4);
+        }
+
+        PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+        long baseline = 0;
+        System.out.printf("%-8s %12s %12s %8s%n", "engine", "best ms", "median ms", "speedup");
+        for (String engine : ENGINES) {
+            c.setEngine(engine);
+            for (int i = 0; i < runs; i++) c.interpret(new ByteArrayInputStream(data), sink);
+            long[] times = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                c.interpret(new ByteArrayInputStream(data), sink);
+                times[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(times);
+            long median = times[runs / 2];
+            if (baseline == 0) baseline = median;
+            System.out.printf("%-8s %12.3f %12.3f %7.2fx%n", engine, times[0] / 1e6, median / 1e6,
+                              (double) baseline / median);
+        }
+    }
+}
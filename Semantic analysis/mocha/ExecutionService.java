@@ -0,0 +1,209 @@
+package mocha;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs many (program, input) pairs concurrently, each on its own thread with its
+ * own MiniInterpreter and output buffer:
+ *
+ *     try (ExecutionService service = new ExecutionService(8, 1_000_000_000L)) {
+ *         service.submit(source, input).thenAccept(e -> System.out.print(e.output()));
+ *     }
+ *
+ * At most parallelism runs execute at any moment. Every run is metered (see Fuel)
+ * and between slices hands its permit to the longest-waiting run, so a program
+ * that loops cannot hold a processor. Programs are parsed, type-checked and
+ * resolved (see FrameResolver) once, before any run sees them; the latest distinct
+ * sources are cached, and a run only reads the tree. A run keeps the first
+ * OUTPUT_LIMIT bytes its program prints and drops the rest.
+ */
+public final class ExecutionService implements AutoCloseable {
+
+    /** What one submission produced. */
+    public static final class Execution {
+        private final String output;
+        private final boolean truncated;
+        private final String errors;
+        private final RunResult result;
+
+        Execution(String output, boolean truncated, String errors, RunResult result) {
+            this.output = output;
+            this.truncated = truncated;
+            this.errors = errors;
+            this.result = result;
+        }
+
+        /** What the program printed, up to OUTPUT_LIMIT bytes. */
+        public String output()      { return output; }
+        /** True if the program printed more than OUTPUT_LIMIT bytes, which output() leaves out. */
+        public boolean truncated()  { return truncated; }
+        /** The parse or type errors, if it did not compile. */
+        public String errors()      { return errors; }
+        /** How the run ended, or null if it did not compile. */
+        public RunResult result()   { return result; }
+    }
+
+    // a program as the cache holds it: ready to run, or its error report
+    private static final class Program {
+        final Compiler compiler;
+        final String errors;
+
+        Program(Compiler compiler, String errors) {
+            this.compiler = compiler;
+            this.errors = errors;
+        }
+    }
+
+    /** Bytes of output kept per run. */
+    public static final int OUTPUT_LIMIT = 1 << 20;
+
+    private static final int CACHED_PROGRAMS = 256;
+    private static final long SLICE = 100_000;
+
+    private final ExecutorService executor;
+    private final Semaphore processors;
+    private final long fuelLimit;
+    private final Map<String, CompletableFuture<Program>> programs =
+        new LinkedHashMap<String, CompletableFuture<Program>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Program>> eldest) {
+                return size() > CACHED_PROGRAMS;
+            }
+        };
+
+    /** A thread per run, parallelism of them executing at once, each limited to fuelLimit (or Fuel.UNLIMITED). */
+    public ExecutionService(int parallelism, long fuelLimit) {
+        this(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "mocha-run");
+            t.setDaemon(true);
+            return t;
+        }), parallelism, fuelLimit);
+    }
+
+    /** Runs on executor instead, e.g. Executors.newVirtualThreadPerTaskExecutor() where there is one. */
+    public ExecutionService(ExecutorService executor, int parallelism, long fuelLimit) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+        this.executor = executor;
+        this.processors = new Semaphore(parallelism, true);
+        this.fuelLimit = fuelLimit;
+    }
+
+    /** Runs source on input; the future completes when it has. */
+    public CompletableFuture<Execution> submit(String source, byte[] input) {
+        return CompletableFuture.supplyAsync(() -> execute(source, input), executor);
+    }
+
+    private Execution execute(String source, byte[] input) {
+        Program program = program(source);
+        if (program.errors != null) return new Execution("", false, program.errors, null);
+
+        BoundedBuffer buffer = new BoundedBuffer(OUTPUT_LIMIT);
+        PrintStream out = new PrintStream(buffer);
+        Turn turn = new Turn();
+        try {
+            turn.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Execution("", false, null, new RunResult(RunResult.Status.CANCELLED, 0, null));
+        }
+        RunResult result;
+        try {
+            result = program.compiler.interpret(new ByteArrayInputStream(input), out, Fuel.sliced(fuelLimit, SLICE, turn));
+        } finally {
+            if (turn.held) processors.release(); // not held if cancelled while waiting in a pause
+        }
+        out.flush();
+        return new Execution(buffer.toString(), buffer.truncated, null, result);
+    }
+
+    // Keeps the first limit bytes written to it and drops the rest
+    private static final class BoundedBuffer extends ByteArrayOutputStream {
+        private final int limit;
+        boolean truncated;
+
+        BoundedBuffer(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (count < limit) super.write(b);
+            else truncated = true;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            if (len > limit - count) {
+                truncated = true;
+                len = limit - count;
+            }
+            super.write(b, off, len);
+        }
+    }
+
+    // A run's hold on a processor, given up and taken back between slices
+    private final class Turn implements Fuel.Pause {
+        boolean held;
+
+        void take() throws InterruptedException {
+            processors.acquire();
+            held = true;
+        }
+
+        @Override
+        public void pause() throws InterruptedException {
+            held = false;
+            processors.release();
+            take();
+        }
+    }
+
+    // The cached program for source, compiling it the first time
+    private Program program(String source) {
+        CompletableFuture<Program> future;
+        boolean compile = false;
+        synchronized (programs) {
+            future = programs.get(source);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                programs.put(source, future);
+                compile = true;
+            }
+        }
+        if (compile) {
+            try {
+                future.complete(compile(source));
+            } catch (Throwable e) { // a StackOverflowError from deeply nested source, too
+                synchronized (programs) {
+                    programs.remove(source, future);
+                }
+                future.completeExceptionally(e);
+            }
+        }
+        return future.join();
+    }
+
+    private static Program compile(String source) {
+        Compiler c = new Compiler(new Scanner("<submitted>", new StringReader(source)), 24);
+        ast.AST ast = c.genAST();
+        if (c.hasError()) return new Program(null, "Error parsing file.\n" + c.errorReport());
+        types.TypeChecker tc = new types.TypeChecker();
+        if (!tc.check(ast)) return new Program(null, "Error type-checking file.\n" + tc.errorReport());
+        c.frames(); // runs share the tree, so it is resolved before any of them sees it
+        return new Program(c, null);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,104 @@
+package mocha;
+
+/**
+ * A Mocha array of any rank stored as one primitive array in row-major order. The
+ * extents come from the types.ArrayType chain, outermost first, and strides[k] is the
+ * number of elements one step of dimension k skips. A partially indexed array is a
+ * view: the same storage, an offset, and the dimensions that remain from depth on.
+ * Exactly one of ints, floats and bools is non-null.
+ *
+ * Assigning an array to a sub-array (m[i] = a) makes m[i] refer to a, as with the
+ * nested arrays of the other engines: the root records a as standing in for the
+ * sub-array at that dimension and position, and indexing consults the record. Only
+ * roots that have had a sub-array assigned keep one.
+ */
+final class FlatArray {
+
+    final int[] ints;
+    final double[] floats;
+    final boolean[] bools;
+    final int[] extents;
+    final int[] strides;
+    final int depth;    // first dimension this view indexes
+    final int offset;   // position of its first element
+    final FlatArray root; // the whole array this views, or itself
+
+    // arrays assigned to sub-arrays, by key(dim, position); in the root, null until the first
+    java.util.Map<Long, FlatArray> aliases;
+
+    private FlatArray(int[] ints, double[] floats, boolean[] bools, int[] extents, int[] strides, int depth, int offset,
+                      FlatArray root) {
+        this.ints = ints;
+        this.floats = floats;
+        this.bools = bools;
+        this.extents = extents;
+        this.strides = strides;
+        this.depth = depth;
+        this.offset = offset;
+        this.root = (root != null) ? root : this;
+    }
+
+    /** A zero-filled array of type t, or null if an extent is unspecified. */
+    static FlatArray allocate(types.ArrayType t) {
+        int rank = 0;
+        types.Type leaf = t;
+        while (leaf instanceof types.ArrayType) {
+            if (((types.ArrayType) leaf).getExtent() < 0) return null; // unspecified size: don't allocate
+            rank++;
+            leaf = ((types.ArrayType) leaf).getBase();
+        }
+        int[] extents = new int[rank];
+        types.Type at = t;
+        for (int k = 0; k < rank; k++) {
+            extents[k] = ((types.ArrayType) at).getExtent();
+            at = ((types.ArrayType) at).getBase();
+        }
+        int[] strides = new int[rank];
+        int size = 1;
+        for (int k = rank - 1; k >= 0; k--) {
+            strides[k] = size;
+            size = Math.multiplyExact(size, extents[k]);
+        }
+        if (leaf instanceof types.FloatType) return new FlatArray(null, new double[size], null, extents, strides, 0, 0, null);
+        if (leaf instanceof types.BoolType)  return new FlatArray(null, null, new boolean[size], extents, strides, 0, 0, null);
+        return new FlatArray(new int[size], null, null, extents, strides, 0, 0, null);
+    }
+
+    /** A root array with these extents over storage, one of int[], double[] and boolean[]. */
+    static FlatArray over(Object storage, int[] extents) {
+        int[] strides = new int[extents.length];
+        int size = 1;
+        for (int k = extents.length - 1; k >= 0; k--) {
+            strides[k] = size;
+            size *= extents[k];
+        }
+        if (storage instanceof double[])  return new FlatArray(null, (double[]) storage, null, extents, strides, 0, 0, null);
+        if (storage instanceof boolean[]) return new FlatArray(null, null, (boolean[]) storage, extents, strides, 0, 0, null);
+        return new FlatArray((int[]) storage, null, null, extents, strides, 0, 0, null);
+    }
+
+    /** The sub-array starting at position pos whose first dimension is dim. */
+    FlatArray view(int dim, int pos) {
+        return new FlatArray(ints, floats, bools, extents, strides, dim, pos, root);
+    }
+
+    /** Number of elements of this view. */
+    int size() {
+        return extents[depth] * strides[depth];
+    }
+
+    static long key(int dim, int pos) {
+        return (long) dim << 32 | pos;
+    }
+
+    /** The array assigned to the sub-array at (dim, pos) of this root, or null. */
+    FlatArray alias(int dim, int pos) {
+        return (aliases != null) ? aliases.get(key(dim, pos)) : null;
+    }
+
+    /** Makes a stand for the sub-array at (dim, pos) of this root. */
+    void setAlias(int dim, int pos, FlatArray a) {
+        if (aliases == null) aliases = new java.util.HashMap<>();
+        aliases.put(key(dim, pos), a);
+    }
+}
@@ -0,0 +1,144 @@
+package mocha;
+
+import java.io.InputStream;
+
+import ast.AST;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * MiniInterpreter instrumented to emit JDK Flight Recorder events, so what a Mocha
+ * program does shows up in a recording next to GC and JIT activity:
+ *
+ *   - mocha.FunctionCall for each user call, with its depth (a self tail call
+ *     loops inside the event of the call it replaces),
+ *   - mocha.Loop for each while or repeat loop that runs longer than its
+ *     threshold (20 ms unless the recording sets another), and
+ *   - mocha.BuiltinCall for each built-in, reads and writes.
+ *
+ * The events are disabled by default; a recording turns them on by name, e.g.
+ * with a .jfc file passed to -XX:StartFlightRecording:settings=. Compiler picks
+ * this interpreter only when one of them is enabled as a run starts, so runs
+ * without such a recording execute the plain MiniInterpreter.
+ */
+final class FlightRecordingInterpreter extends MiniInterpreter {
+
+    @Name("mocha.FunctionCall")
+    @Label("Mocha Function Call")
+    @Category("Mocha")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class FunctionCallEvent extends Event {
+        @Label("Function")
+        String function;
+        @Label("Line")
+        int line;
+        @Label("Depth")
+        @Description("Active user calls, this one included")
+        int depth;
+    }
+
+    @Name("mocha.Loop")
+    @Label("Mocha Loop")
+    @Category("Mocha")
+    @Enabled(false)
+    @StackTrace(false)
+    @Threshold("20 ms")
+    static final class LoopEvent extends Event {
+        @Label("Kind")
+        String kind;
+        @Label("Line")
+        int line;
+    }
+
+    @Name("mocha.BuiltinCall")
+    @Label("Mocha Built-in Call")
+    @Category("Mocha")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BuiltinCallEvent extends Event {
+        @Label("Built-in")
+        String builtin;
+        @Label("Line")
+        int line;
+    }
+
+    /** Whether a running recording has any of the events enabled. */
+    static boolean enabled() {
+        return new FunctionCallEvent().isEnabled() || new LoopEvent().isEnabled() || new BuiltinCallEvent().isEnabled();
+    }
+
+    private int depth;               // active user calls
+
+    FlightRecordingInterpreter(InputStream in, java.io.PrintStream out) {
+        super(in, out);
+    }
+
+    @Override
+    public void visit(AST.FunctionCall n) {
+        if (n.getBuiltin() != null) {
+            BuiltinCallEvent event = new BuiltinCallEvent();
+            event.begin();
+            super.visit(n);
+            event.end();
+            if (event.shouldCommit()) {
+                event.builtin = n.getBuiltin().functionName();
+                event.line = n.lineNumber();
+                event.commit();
+            }
+            return;
+        }
+        FunctionCallEvent event = new FunctionCallEvent();
+        event.begin();
+        int d = ++depth;
+        try {
+            super.visit(n);
+        } finally {
+            depth--;
+            event.end();
+            if (event.shouldCommit()) {
+                event.function = n.getIdentifier().getName();
+                event.line = n.lineNumber();
+                event.depth = d;
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public void visit(AST.WhileStatement n) {
+        LoopEvent event = new LoopEvent();
+        event.begin();
+        try {
+            super.visit(n);
+        } finally {
+            commit(event, "while", n);
+        }
+    }
+
+    @Override
+    public void visit(AST.RepeatStatement n) {
+        LoopEvent event = new LoopEvent();
+        event.begin();
+        try {
+            super.visit(n);
+        } finally {
+            commit(event, "repeat", n);
+        }
+    }
+
+    private static void commit(LoopEvent event, String kind, AST.Node loop) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.line = loop.lineNumber();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package mocha;
+
+import ast.AST.*;
+import ast.Computation;
+import ast.TreeWalker;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Assigns every variable a slot in either the global frame or the frame of the
+ * function declaring it, and annotates each Identifier that names a variable with
+ * its (depth, slot). Parameters take the first slots of a function frame, in order,
+ * followed by its locals. Names resolve the way the parser scopes them: a function's
+ * own parameters and locals first, then the globals.
+ *
+ * It also resolves every FunctionCall to its target, a Builtin or a declaration,
+ * following the overload the TypeChecker picked: the symbol it gave the call is the
+ * one it gave the matching declaration. A call resolved only by base name (or not
+ * type-checked) goes to the built-in of that name, else to the first declaration of
+ * that name, as the checker's base-name fallback does. A return whose value is a
+ * call to the function it is in is marked as a self tail call, and each Relation
+ * and Power gets the types of its operands.
+ */
+final class FrameResolver extends TreeWalker {
+
+    static final int GLOBAL = 0;
+    static final int LOCAL = 1;
+
+    private final Map<String, Integer> globals = new HashMap<>();
+    private final Map<FunctionDeclaration, Integer> frameSizes = new IdentityHashMap<>();
+    private Map<String, Integer> locals; // null outside function bodies
+    private FunctionDeclaration function; // being walked, or null
+    private final Map<Symbol, FunctionDeclaration> bySymbol = new IdentityHashMap<>();
+    private final Map<String, FunctionDeclaration> byName = new HashMap<>();
+
+    FrameResolver(Computation program) {
+        for (Declaration d : program.functions()) {
+            FunctionDeclaration fd = (FunctionDeclaration) d;
+            if (fd.getIdentifier().getSymbol() != null) bySymbol.put(fd.getIdentifier().getSymbol(), fd);
+            byName.putIfAbsent(fd.getIdentifier().getName(), fd);
+        }
+        program.accept(this);
+    }
+
+    int globalCount() {
+        return globals.size();
+    }
+
+    int frameSize(FunctionDeclaration fd) {
+        return frameSizes.get(fd);
+    }
+
+    private void declare(Identifier id) {
+        Map<String, Integer> scope = (locals != null) ? locals : globals;
+        Integer slot = scope.get(id.getName());
+        if (slot == null) {
+            slot = scope.size();
+            scope.put(id.getName(), slot);
+        }
+        id.setSlot(locals != null ? LOCAL : GLOBAL, slot);
+    }
+
+    @Override
+    public void visit(VariableDeclaration node) {
+        declare(node.getIdentifier());
+    }
+
+    @Override
+    public void visit(Identifier node) {
+        Integer slot = (locals != null) ? locals.get(node.getName()) : null;
+        if (slot != null) {
+            node.setSlot(LOCAL, slot);
+        } else if ((slot = globals.get(node.getName())) != null) {
+            node.setSlot(GLOBAL, slot);
+        }
+    }
+
+    @Override
+    public void visit(FunctionCall node) {
+        node.getArguments().accept(this); // the callee is not a variable
+        FunctionDeclaration fd = bySymbol.get(node.getIdentifier().getSymbol());
+        Builtin builtin = null;
+        if (fd == null) {
+            String name = node.getIdentifier().getName();
+            builtin = Builtin.named(name);
+            if (builtin == null) fd = byName.get(name);
+        }
+        node.setTarget(builtin, fd);
+    }
+
+    @Override
+    public void visit(Relation node) {
+        super.visit(node);
+        node.setOperands(operands(node.getLeft(), node.getRight()));
+    }
+
+    @Override
+    public void visit(Power node) {
+        super.visit(node);
+        node.setOperands(operands(node.getBase(), node.getExponent()));
+    }
+
+    private static Operands operands(ast.Expression left, ast.Expression right) {
+        types.Type l = left.getType(), r = right.getType();
+        if (l instanceof types.BoolType) return Operands.BOOL;
+        boolean li = l instanceof types.IntType, ri = r instanceof types.IntType;
+        if (li && ri) return Operands.INT;
+        return (li || ri) ? Operands.MIXED : Operands.FLOAT;
+    }
+
+    @Override
+    public void visit(ReturnStatement node) {
+        super.visit(node);
+        ast.Expression value = node.getValue();
+        node.setSelfTailCall(function != null && value instanceof FunctionCall
+                             && ((FunctionCall) value).getCallee() == function);
+    }
+
+    @Override
+    public void visit(FunctionDeclaration node) {
+        locals = new HashMap<>();
+        function = node;
+        for (FormalParameter p : node.getParameters()) declare(p.getIdentifier());
+        node.getBody().accept(this);
+        frameSizes.put(node, locals.size());
+        locals = null;
+        function = null;
+    }
+}
@@ -0,0 +1,39 @@
+package mocha;
+
+/**
+ * An execution budget for a metered run. Every loop iteration and every call to a
+ * user function burns one unit. A run that burns its limit stops with
+ * RunResult.Status.OUT_OF_FUEL. With a slice, the run also calls its Pause after
+ * each slice of units, where it can give up its processor to other programs before
+ * continuing; a Pause that is interrupted cancels the run.
+ */
+public final class Fuel {
+
+    /** Called on the interpreting thread between slices; may block. */
+    public interface Pause {
+        void pause() throws InterruptedException;
+    }
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    final long limit;
+    final long slice;
+    final Pause pause;
+
+    private Fuel(long limit, long slice, Pause pause) {
+        if (limit <= 0 || slice <= 0) throw new IllegalArgumentException("Fuel must be positive");
+        this.limit = limit;
+        this.slice = slice;
+        this.pause = pause;
+    }
+
+    /** At most limit units, without pausing. */
+    public static Fuel limit(long limit) {
+        return new Fuel(limit, limit, null);
+    }
+
+    /** At most limit units (or UNLIMITED), pausing after every slice of them. */
+    public static Fuel sliced(long limit, long slice, Pause pause) {
+        return new Fuel(limit, Math.min(slice, limit), pause);
+    }
+}
@@ -0,0 +1,652 @@
+package mocha;
+
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import ast.AST;
+import mocha.ClassFileWriter.Code;
+import mocha.ClassFileWriter.Label;
+
+/**
+ * Engine that translates the type-checked program into a JVM class and runs it,
+ * so HotSpot compiles Mocha code like any Java method.
+ *
+ * Each function becomes a static method with primitive parameters and locals, main
+ * becomes run(), and globals become static fields. Ints and bools are JVM ints,
+ * floats are doubles rounded to float precision after every operation (as in the
+ * interpreters, which carry floats the same way), and arrays are int[], double[]
+ * and boolean[] nested in arrays of arrays. The class is written by ClassFileWriter
+ * and defined as a hidden class in this package, so it can call JvmRuntime for I/O.
+ */
+final class JvmCompiler implements ast.NodeVisitor, Engine {
+
+    private static final int INT = MiniInterpreter.INT, FLOAT = MiniInterpreter.FLOAT,
+                             BOOL = MiniInterpreter.BOOL, REF = MiniInterpreter.REF,
+                             VOID = MiniInterpreter.VOID;
+
+    private static final String CLASS = "mocha/MochaProgram";
+    private static final String RUNTIME = "mocha/JvmRuntime";
+
+    // opcodes
+    private static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, DCONST_0 = 0x0e, BIPUSH = 0x10,
+        SIPUSH = 0x11, LDC_W = 0x13, LDC2_W = 0x14, ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19,
+        IALOAD = 0x2e, DALOAD = 0x31, AALOAD = 0x32, BALOAD = 0x33,
+        ISTORE = 0x36, DSTORE = 0x39, ASTORE = 0x3a,
+        IASTORE = 0x4f, DASTORE = 0x52, AASTORE = 0x53, BASTORE = 0x54,
+        POP = 0x57, POP2 = 0x58, DUP = 0x59, SWAP = 0x5f,
+        IADD = 0x60, DADD = 0x63, ISUB = 0x64, DSUB = 0x67, IMUL = 0x68, DMUL = 0x6b,
+        IDIV = 0x6c, DDIV = 0x6f, IREM = 0x70, INEG = 0x74, DNEG = 0x77, IXOR = 0x82,
+        I2D = 0x87, F2D = 0x8d, D2F = 0x90, DCMPL = 0x97, DCMPG = 0x98,
+        IFEQ = 0x99, IFNE = 0x9a, GOTO = 0xa7,
+        IRETURN = 0xac, DRETURN = 0xaf, ARETURN = 0xb0, RETURN = 0xb1,
+        GETSTATIC = 0xb2, PUTSTATIC = 0xb3, INVOKEVIRTUAL = 0xb6, INVOKESTATIC = 0xb8,
+        NEWARRAY = 0xbc, ANEWARRAY = 0xbd, ARRAYLENGTH = 0xbe;
+
+    // branch opcodes by relation (Bytecode.EQ .. GE)
+    private static final int[] IF_ICMP = {0x9f, 0xa0, 0xa1, 0xa4, 0xa3, 0xa2};
+    private static final int[] IF_CMP0 = {0x99, 0x9a, 0x9b, 0x9e, 0x9d, 0x9c};
+
+    private final JvmRuntime runtime;
+
+    private FrameResolver frames;
+    private ClassFileWriter cw;
+    private final Map<AST.FunctionDeclaration, String> names = new IdentityHashMap<>();
+    private final java.util.Set<Integer> fields = new java.util.HashSet<>();
+
+    // method being generated
+    private Code code;
+    private int[] localIndex;  // Mocha slot -> JVM local
+    private int nextLocal;
+    private int returnKind;
+    private boolean inMain;
+
+    JvmCompiler(InputStream in, java.io.PrintStream out) {
+        this.runtime = new JvmRuntime(in, out);
+    }
+
+    @Override
+    public void run(ast.Computation prog, FrameResolver frames) {
+        byte[] bytes = compile(prog, frames);
+        try {
+            MethodHandles.Lookup program = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            program.findStaticSetter(program.lookupClass(), "rt", JvmRuntime.class).invoke(runtime);
+            program.findStatic(program.lookupClass(), "run", MethodType.methodType(void.class)).invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        } finally {
+            runtime.flush();
+        }
+    }
+
+    /** The class file for prog, resolved by frames. */
+    byte[] compile(ast.Computation prog, FrameResolver frames) {
+        this.frames = frames;
+        cw = new ClassFileWriter(CLASS, "java/lang/Object");
+        cw.addField(ClassFileWriter.ACC_STATIC, "rt", "L" + RUNTIME + ";");
+
+        for (AST.Declaration d : prog.functions()) {
+            AST.FunctionDeclaration fd = (AST.FunctionDeclaration) d;
+            names.put(fd, "m" + names.size() + "_" + fd.getIdentifier().getName()); // overloads get their own methods
+        }
+
+        // globals, and main, which allocates the global arrays first
+        inMain = true;
+        beginMethod(new int[0]);
+        returnKind = VOID;
+        for (AST.Declaration d : prog.variables()) {
+            AST.VariableDeclaration vd = (AST.VariableDeclaration) d;
+            types.Type t = typeOf(vd.getTypeNode());
+            declareGlobal(vd.getIdentifier().getSlot(), t);
+            if (MiniInterpreter.kind(t) == REF) {
+                newArray(t);
+                code.opShort(PUTSTATIC, globalRef(vd.getIdentifier().getSlot(), t), -1);
+            }
+        }
+        block(prog.mainStatementSequence());
+        code.op(RETURN, 0);
+        cw.addMethod(ClassFileWriter.ACC_STATIC, "run", "()V", code);
+
+        inMain = false;
+        for (AST.Declaration d : prog.functions()) function((AST.FunctionDeclaration) d);
+        return cw.toByteArray();
+    }
+
+    private void function(AST.FunctionDeclaration fd) {
+        int size = frames.frameSize(fd);
+        int[] kinds = new int[size];
+        for (AST.FormalParameter p : fd.getParameters()) {
+            kinds[p.getIdentifier().getSlot()] = MiniInterpreter.kind(typeOf(p.getTypeNode()));
+        }
+        for (AST.Declaration d : fd.getBody().getDeclarations()) {
+            AST.VariableDeclaration vd = (AST.VariableDeclaration) d;
+            kinds[vd.getIdentifier().getSlot()] = MiniInterpreter.kind(typeOf(vd.getTypeNode()));
+        }
+        beginMethod(kinds);
+        returnKind = MiniInterpreter.kind(typeOf(fd.getReturnType()));
+
+        // locals start at 0, 0.0 and false; arrays are allocated
+        for (AST.Declaration d : fd.getBody().getDeclarations()) {
+            AST.VariableDeclaration vd = (AST.VariableDeclaration) d;
+            types.Type t = typeOf(vd.getTypeNode());
+            defaultValue(t);
+            store(MiniInterpreter.kind(t), localIndex[vd.getIdentifier().getSlot()]);
+        }
+        block(fd.getBody().getStatements());
+        // falling off the end returns the default value
+        switch (returnKind) {
+            case VOID:  code.op(RETURN, 0); break;
+            case FLOAT: code.op(DCONST_0, 2); code.op(DRETURN, -2); break;
+            case REF:   code.op(ACONST_NULL, 1); code.op(ARETURN, -1); break;
+            default:    code.op(ICONST_0, 1); code.op(IRETURN, -1);
+        }
+        cw.addMethod(ClassFileWriter.ACC_STATIC, names.get(fd), methodDescriptor(fd), code);
+    }
+
+    private void beginMethod(int[] slotKinds) {
+        code = new Code();
+        localIndex = new int[slotKinds.length];
+        nextLocal = 0;
+        for (int s = 0; s < slotKinds.length; s++) {
+            localIndex[s] = nextLocal;
+            nextLocal += (slotKinds[s] == FLOAT) ? 2 : 1;
+        }
+        code.maxLocals = nextLocal;
+    }
+
+    // ---------- types and descriptors ----------
+
+    private static types.Type typeOf(AST.Node typeNode) {
+        return ((AST.TypeNode) typeNode).getActualType();
+    }
+
+    private static String descriptor(types.Type t) {
+        if (t instanceof types.ArrayType) {
+            types.ArrayType at = (types.ArrayType) t;
+            types.Type base = at.getBase();
+            if (base instanceof types.BoolType) return "[Z";
+            return "[" + descriptor(base);
+        }
+        switch (MiniInterpreter.kind(t)) {
+            case FLOAT: return "D";
+            case VOID:  return "V";
+            default:    return "I";
+        }
+    }
+
+    private String methodDescriptor(AST.FunctionDeclaration fd) {
+        StringBuilder sb = new StringBuilder("(");
+        for (AST.FormalParameter p : fd.getParameters()) sb.append(descriptor(typeOf(p.getTypeNode())));
+        return sb.append(')').append(descriptor(typeOf(fd.getReturnType()))).toString();
+    }
+
+    private static String global(int slot) {
+        return "g" + slot;
+    }
+
+    // main's block may declare globals too; each gets one field
+    private void declareGlobal(int slot, types.Type t) {
+        if (fields.add(slot)) cw.addField(ClassFileWriter.ACC_STATIC, global(slot), descriptor(t));
+    }
+
+    private int globalRef(int slot, types.Type t) {
+        return cw.fieldRef(CLASS, global(slot), descriptor(t));
+    }
+
+    private static int width(int kind) {
+        return (kind == FLOAT) ? 2 : (kind == VOID) ? 0 : 1;
+    }
+
+    private static int kind(ast.Expression e) {
+        return MiniInterpreter.kind(e.getType());
+    }
+
+    // ---------- emission helpers ----------
+
+    private void load(int kind, int index) {
+        code.local(kind == FLOAT ? DLOAD : kind == REF ? ALOAD : ILOAD, index, width(kind));
+    }
+
+    private void store(int kind, int index) {
+        code.local(kind == FLOAT ? DSTORE : kind == REF ? ASTORE : ISTORE, index, -width(kind));
+    }
+
+    private int temp(int kind) {
+        int t = nextLocal;
+        nextLocal += width(kind);
+        code.maxLocals = Math.max(code.maxLocals, nextLocal);
+        return t;
+    }
+
+    private void pushInt(int v) {
+        if (v >= -1 && v <= 5)                  code.op(ICONST_0 + v, 1);
+        else if (v >= -128 && v <= 127)         code.opByte(BIPUSH, v, 1);
+        else if (v >= -32768 && v <= 32767)     code.opShort(SIPUSH, v, 1);
+        else                                    code.opShort(LDC_W, cw.integer(v), 1);
+    }
+
+    private void pushFloat(double v) {
+        code.opShort(LDC2_W, cw.doubleConstant(v), 2);
+    }
+
+    /** Rounds the double on top of the stack to float precision. */
+    private void round() {
+        code.op(D2F, -1);
+        code.op(F2D, 1);
+    }
+
+    private void runtime() {
+        code.opShort(GETSTATIC, cw.fieldRef(CLASS, "rt", "L" + RUNTIME + ";"), 1);
+    }
+
+    private void invokeRuntime(String name, String descriptor, int delta) {
+        code.opShort(INVOKEVIRTUAL, cw.methodRef(RUNTIME, name, descriptor), delta);
+    }
+
+    private void defaultValue(types.Type t) {
+        switch (MiniInterpreter.kind(t)) {
+            case FLOAT: code.op(DCONST_0, 2); break;
+            case REF:   newArray(t); break;
+            default:    code.op(ICONST_0, 1);
+        }
+    }
+
+    /** Pushes a new array of type t, nested arrays included, or null for an unspecified size. */
+    private void newArray(types.Type t) {
+        types.ArrayType at = (types.ArrayType) t;
+        if (at.getExtent() < 0) {
+            code.op(ACONST_NULL, 1);
+            return;
+        }
+        types.Type base = at.getBase();
+        if (base instanceof types.ArrayType) {
+            // outer array, then each element allocated the same way
+            pushInt(at.getExtent());
+            code.opShort(ANEWARRAY, cw.classRef(descriptor(base)), 0);
+            int arr = temp(REF);
+            int i = temp(INT);
+            store(REF, arr);
+            code.op(ICONST_0, 1);
+            store(INT, i);
+            Label test = new Label(), top = new Label();
+            code.jump(GOTO, test, 0);
+            code.place(top); // at the depth of the goto: an enclosing allocation may have its array and index pushed
+            load(REF, arr);
+            load(INT, i);
+            newArray(base);
+            code.op(AASTORE, -3);
+            code.iinc(i, 1);
+            code.place(test);
+            load(INT, i);
+            pushInt(at.getExtent());
+            code.jump(IF_ICMP[Bytecode.LT], top, -2);
+            load(REF, arr);
+        } else {
+            pushInt(at.getExtent());
+            int atype = (base instanceof types.FloatType) ? 7 : (base instanceof types.BoolType) ? 4 : 10;
+            code.opByte(NEWARRAY, atype, 0);
+        }
+    }
+
+    // ---------- expressions ----------
+
+    /** Pushes the value of e. */
+    private void expr(ast.Expression e) {
+        e.accept(this);
+    }
+
+    /** Pushes the value of e, converting an int to float when k is FLOAT. */
+    private void expr(ast.Expression e, int k) {
+        expr(e);
+        if (k == FLOAT && kind(e) == INT) code.op(I2D, 1);
+    }
+
+    @Override public void visit(AST.IntegerLiteral n) { pushInt(n.getValue()); }
+    @Override public void visit(AST.FloatLiteral n)   { pushFloat(n.getValue()); }
+    @Override public void visit(AST.BoolLiteral n)    { pushInt(n.getValue() ? 1 : 0); }
+
+    @Override
+    public void visit(AST.Identifier n) {
+        switch (n.getDepth()) {
+            case FrameResolver.LOCAL:
+                load(kind(n), localIndex[n.getSlot()]);
+                break;
+            case FrameResolver.GLOBAL:
+                code.opShort(GETSTATIC, globalRef(n.getSlot(), n.getType()), width(kind(n)));
+                break;
+            default:
+                throw new RuntimeException("Unresolved variable: " + n.getName());
+        }
+    }
+
+    /** Pushes array and index of a, checking the index unless the type checker proved it. */
+    private void arrayAndIndex(AST.ArrayIndex a) {
+        expr(a.getBase());
+        if (a.isInBounds()) {
+            expr(a.getIndex());
+        } else {
+            code.op(DUP, 1);
+            code.op(ARRAYLENGTH, 0);
+            expr(a.getIndex());
+            code.op(SWAP, 0);
+            code.opShort(INVOKESTATIC, cw.methodRef(RUNTIME, "index", "(II)I"), -1);
+        }
+    }
+
+    private static boolean isBoolArray(AST.ArrayIndex a) {
+        return a.getType() instanceof types.BoolType;
+    }
+
+    @Override
+    public void visit(AST.ArrayIndex n) {
+        arrayAndIndex(n);
+        switch (kind(n)) {
+            case FLOAT: code.op(DALOAD, 0); break;
+            case REF:   code.op(AALOAD, -1); break;
+            default:    code.op(isBoolArray(n) ? BALOAD : IALOAD, -1);
+        }
+    }
+
+    private void arithmetic(ast.Expression n, ast.Expression left, ast.Expression right, int intOp, int floatOp) {
+        if (kind(n) == INT) {
+            expr(left);
+            expr(right);
+            code.op(intOp, -1);
+        } else {
+            expr(left, FLOAT);
+            expr(right, FLOAT);
+            code.op(floatOp, -2);
+            round();
+        }
+    }
+
+    @Override public void visit(AST.Addition n)       { arithmetic(n, n.getLeft(), n.getRight(), IADD, DADD); }
+    @Override public void visit(AST.Subtraction n)    { arithmetic(n, n.getLeft(), n.getRight(), ISUB, DSUB); }
+    @Override public void visit(AST.Multiplication n) { arithmetic(n, n.getLeft(), n.getRight(), IMUL, DMUL); }
+    @Override public void visit(AST.Division n)       { arithmetic(n, n.getLeft(), n.getRight(), IDIV, DDIV); }
+    @Override public void visit(AST.Modulo n)         { arithmetic(n, n.getLeft(), n.getRight(), IREM, IREM); }
+
+    @Override
+    public void visit(AST.Power n) {
+        if (kind(n) == INT) {
+            expr(n.getBase());
+            expr(n.getExponent());
+            code.opShort(INVOKESTATIC, cw.methodRef(RUNTIME, "intPow", "(II)I"), -1);
+        } else {
+            expr(n.getBase(), FLOAT);
+            expr(n.getExponent(), FLOAT);
+            code.opShort(INVOKESTATIC, cw.methodRef("java/lang/Math", "pow", "(DD)D"), -2);
+            round();
+        }
+    }
+
+    @Override
+    public void visit(AST.UnaryMinus n) {
+        if (kind(n) == INT) {
+            expr(n.getExpr());
+            code.op(INEG, 0);
+        } else {
+            expr(n.getExpr(), FLOAT);
+            code.op(DNEG, 0);
+            round();
+        }
+    }
+
+    @Override
+    public void visit(AST.LogicalNot n) {
+        expr(n.getExpression());
+        code.op(ICONST_0 + 1, 1);
+        code.op(IXOR, -1);
+    }
+
+    // 1 or 0 from the branches of a condition
+    private void condition(ast.Expression e) {
+        Label no = new Label(), end = new Label();
+        jumpIfFalse(e, no);
+        code.op(ICONST_0 + 1, 1);
+        code.jump(GOTO, end, 0);
+        code.unreachable();
+        code.place(no);
+        code.op(ICONST_0, 1);
+        code.place(end);
+    }
+
+    @Override public void visit(AST.LogicalAnd n) { condition(n); }
+    @Override public void visit(AST.LogicalOr n)  { condition(n); }
+    @Override public void visit(AST.Relation n)   { condition(n); }
+
+    @Override
+    public void visit(AST.FunctionCall n) {
+        List<ast.Expression> args = n.getArguments().getArguments();
+
+        // 1) Built-ins
+        if (n.getBuiltin() != null) switch (n.getBuiltin()) {
+            case PRINT_INT:   runtime(); expr(args.get(0), INT);   invokeRuntime("printInt", "(I)V", -2); return;
+            case PRINT_FLOAT: runtime(); expr(args.get(0), FLOAT); invokeRuntime("printFloat", "(D)V", -3); return;
+            case PRINT_BOOL:  runtime(); expr(args.get(0), BOOL);  invokeRuntime("printBool", "(I)V", -2); return;
+            case PRINTLN:     runtime(); invokeRuntime("println", "()V", -1); return;
+            case READ_INT:    runtime(); invokeRuntime("readInt", "()I", 0); return;
+            case READ_FLOAT:  runtime(); invokeRuntime("readFloat", "()D", 1); return;
+            case READ_BOOL:   runtime(); invokeRuntime("readBool", "()I", 0); return;
+            default:
+        }
+
+        // 2) User-defined function
+        AST.FunctionDeclaration fd = n.getCallee();
+        if (fd == null) throw new RuntimeException("N/A");
+        List<AST.FormalParameter> params = fd.getParameters();
+        if (params.size() != args.size()) throw new RuntimeException("Argument count mismatch in call to " + n.getIdentifier().getName());
+        int delta = 0;
+        for (int i = 0; i < args.size(); i++) {
+            int k = MiniInterpreter.kind(typeOf(params.get(i).getTypeNode()));
+            expr(args.get(i), k);
+            delta -= width(k);
+        }
+        delta += width(MiniInterpreter.kind(typeOf(fd.getReturnType())));
+        code.opShort(INVOKESTATIC, cw.methodRef(CLASS, names.get(fd), methodDescriptor(fd)), delta);
+    }
+
+    // ---------- conditions ----------
+
+    /** Jumps to target when e is false, else falls through. */
+    private void jumpIfFalse(ast.Expression e, Label target) {
+        if (e instanceof AST.LogicalAnd) {
+            jumpIfFalse(((AST.LogicalAnd) e).getLeft(), target);
+            jumpIfFalse(((AST.LogicalAnd) e).getRight(), target);
+        } else if (e instanceof AST.LogicalOr) {
+            Label taken = new Label();
+            jumpIfTrue(((AST.LogicalOr) e).getLeft(), taken);
+            jumpIfFalse(((AST.LogicalOr) e).getRight(), target);
+            code.place(taken);
+        } else if (e instanceof AST.LogicalNot) {
+            jumpIfTrue(((AST.LogicalNot) e).getExpression(), target);
+        } else if (e instanceof AST.Relation) {
+            relation((AST.Relation) e, true, target);
+        } else {
+            expr(e);
+            code.jump(IFEQ, target, -1);
+        }
+    }
+
+    /** Jumps to target when e is true, else falls through. */
+    private void jumpIfTrue(ast.Expression e, Label target) {
+        if (e instanceof AST.LogicalOr) {
+            jumpIfTrue(((AST.LogicalOr) e).getLeft(), target);
+            jumpIfTrue(((AST.LogicalOr) e).getRight(), target);
+        } else if (e instanceof AST.LogicalAnd) {
+            Label notTaken = new Label();
+            jumpIfFalse(((AST.LogicalAnd) e).getLeft(), notTaken);
+            jumpIfTrue(((AST.LogicalAnd) e).getRight(), target);
+            code.place(notTaken);
+        } else if (e instanceof AST.LogicalNot) {
+            jumpIfFalse(((AST.LogicalNot) e).getExpression(), target);
+        } else if (e instanceof AST.Relation) {
+            relation((AST.Relation) e, false, target);
+        } else {
+            expr(e);
+            code.jump(IFNE, target, -1);
+        }
+    }
+
+    // Compare and branch to target when the relation holds, or fails if negated
+    private void relation(AST.Relation r, boolean negated, Label target) {
+        int rel = Bytecode.relation(r.getOp());
+        int branch = negated ? Bytecode.negate(rel) : rel;
+        ast.Expression left = r.getLeft(), right = r.getRight();
+        if (kind(left) == BOOL || (kind(left) == INT && kind(right) == INT)) {
+            if (kind(left) == BOOL && rel != Bytecode.EQ && rel != Bytecode.NE) {
+                throw new RuntimeException("Bool relop not supported: " + r.getOperator());
+            }
+            expr(left);
+            expr(right);
+            code.jump(IF_ICMP[branch], target, -2);
+        } else {
+            expr(left, FLOAT);
+            expr(right, FLOAT);
+            // NaN must make <, <=, >, >= false: pick the compare that yields the failing sign
+            code.op((rel == Bytecode.LT || rel == Bytecode.LE) ? DCMPG : DCMPL, -3);
+            code.jump(IF_CMP0[branch], target, -1);
+        }
+    }
+
+    // ---------- statements ----------
+
+    private void block(AST.StatementSequence seq) {
+        for (ast.Statement s : seq) {
+            if (s == null) continue;
+            int mark = nextLocal;
+            s.accept(this);
+            if (s instanceof ast.Expression) {
+                int k = kind((ast.Expression) s);
+                if (width(k) == 2) code.op(POP2, -2);
+                else if (width(k) == 1) code.op(POP, -1);
+            }
+            nextLocal = mark; // temporaries die with the statement
+            if (code.stack() != 0) throw new IllegalStateException("operand stack not empty after statement");
+        }
+    }
+
+    @Override
+    public void visit(AST.StatementSequence n) {
+        block(n);
+    }
+
+    @Override
+    public void visit(AST.Assignment n) {
+        ast.Expression dest = n.getDestination();
+        ast.Expression src = n.getSource();
+        int k = kind(dest);
+
+        if (dest instanceof AST.Identifier) {
+            AST.Identifier id = (AST.Identifier) dest;
+            expr(src, k);
+            switch (id.getDepth()) {
+                case FrameResolver.LOCAL:
+                    store(k, localIndex[id.getSlot()]);
+                    break;
+                case FrameResolver.GLOBAL:
+                    code.opShort(PUTSTATIC, globalRef(id.getSlot(), id.getType()), -width(k));
+                    break;
+                default:
+                    throw new RuntimeException("Unresolved variable: " + id.getName());
+            }
+        } else if (dest instanceof AST.ArrayIndex) {
+            AST.ArrayIndex ai = (AST.ArrayIndex) dest;
+            expr(src, k); // right-hand side first
+            int v = temp(k);
+            store(k, v);
+            arrayAndIndex(ai);
+            load(k, v);
+            switch (k) {
+                case FLOAT: code.op(DASTORE, -4); break;
+                case REF:   code.op(AASTORE, -3); break;
+                default:    code.op(isBoolArray(ai) ? BASTORE : IASTORE, -3);
+            }
+        } else {
+            throw new RuntimeException("Unsupported lvalue: " + dest.getClass().getSimpleName());
+        }
+    }
+
+    @Override
+    public void visit(AST.VariableDeclaration n) {
+        // a declaration in a statement sequence resets the variable to its default
+        AST.Identifier id = n.getIdentifier();
+        types.Type t = typeOf(n.getTypeNode());
+        defaultValue(t);
+        if (id.getDepth() == FrameResolver.LOCAL) {
+            store(MiniInterpreter.kind(t), localIndex[id.getSlot()]);
+        } else {
+            declareGlobal(id.getSlot(), t);
+            code.opShort(PUTSTATIC, globalRef(id.getSlot(), t), -width(MiniInterpreter.kind(t)));
+        }
+    }
+
+    @Override
+    public void visit(AST.IfStatement n) {
+        Label otherwise = new Label();
+        jumpIfFalse(n.getCondition(), otherwise);
+        block(n.getThenBlock());
+        if (n.getElseBlock() == null) {
+            code.place(otherwise);
+        } else {
+            Label end = new Label();
+            code.jump(GOTO, end, 0);
+            code.unreachable();
+            code.place(otherwise);
+            block(n.getElseBlock());
+            code.place(end);
+        }
+    }
+
+    @Override
+    public void visit(AST.WhileStatement n) {
+        // test at the bottom: one branch per iteration
+        Label test = new Label(), top = new Label();
+        code.jump(GOTO, test, 0);
+        code.unreachable();
+        code.place(top);
+        block(n.getBody());
+        code.place(test);
+        jumpIfTrue(n.getCondition(), top);
+    }
+
+    @Override
+    public void visit(AST.RepeatStatement n) {
+        Label top = new Label();
+        code.place(top);
+        block(n.getBody());
+        jumpIfFalse(n.getCondition(), top);
+    }
+
+    @Override
+    public void visit(AST.ReturnStatement n) {
+        ast.Expression v = n.getValue();
+        if (inMain || v == null) {
+            if (v != null) { // return from main ends the program
+                expr(v);
+                int w = width(kind(v));
+                if (w == 2) code.op(POP2, -2);
+                else if (w == 1) code.op(POP, -1);
+            }
+            code.op(RETURN, 0);
+        } else {
+            expr(v, returnKind);
+            code.op(returnKind == FLOAT ? DRETURN : returnKind == REF ? ARETURN : IRETURN, -width(returnKind));
+        }
+        code.unreachable();
+    }
+
+    // Not reached: these never occur in a statement or expression
+    @Override public void visit(AST.ArgumentList n)        { throw new RuntimeException("N/A"); }
+    @Override public void visit(ast.Computation n)         { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.AddressOf n)           { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.Dereference n)         { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.FunctionBody n)        { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.FunctionDeclaration n) { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.DeclarationList n)     { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.TypeNode n)            { throw new RuntimeException("N/A"); }
+}
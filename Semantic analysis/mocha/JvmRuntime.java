@@ -0,0 +1,65 @@
+package mocha;
+
+import java.io.InputStream;
+
+/**
+ * What code generated by JvmCompiler calls into: the I/O built-ins, with the same
+ * prompts and formatting as MiniInterpreter, and helpers too long to inline.
+ */
+final class JvmRuntime {
+
+    private final MochaIO io;
+
+    JvmRuntime(InputStream in, java.io.PrintStream out) {
+        this.io = new MochaIO(in, out);
+    }
+
+    int readInt() {
+        return io.readInt();
+    }
+
+    double readFloat() {
+        return io.readFloat();
+    }
+
+    int readBool() {
+        return io.readBool() ? 1 : 0;
+    }
+
+    void printInt(int v) {
+        io.printInt(v);
+    }
+
+    void printFloat(double v) {
+        io.printFloat(v);
+    }
+
+    void printBool(int v) {
+        io.printBool(v != 0);
+    }
+
+    void println() {
+        io.println();
+    }
+
+    void flush() {
+        io.flush();
+    }
+
+    static int intPow(int b, int e) {
+        if (e < 0) return (int) Math.pow(b, e); // truncates like any other int result
+        int result = 1;
+        while (e > 0) {
+            if ((e & 1) == 1) result *= b;
+            b *= b;
+            e >>= 1;
+        }
+        return result;
+    }
+
+    /** The index itself if it is within length, else the interpreter's error. */
+    static int index(int idx, int length) {
+        if (idx < 0 || idx >= length) throw new RuntimeException("Index out of bounds: " + idx);
+        return idx;
+    }
+}
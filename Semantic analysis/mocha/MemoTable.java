@@ -0,0 +1,61 @@
+package mocha;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of one pure function (see PurityAnalysis) by argument values, both as the
+ * raw long slots MiniInterpreter keeps primitives in. Holds at most capacity entries
+ * and evicts the least recently used.
+ */
+final class MemoTable {
+
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** Argument values, copied out of the stack. */
+    static final class Key {
+        private final long[] args;
+        private final int hash;
+
+        private Key(long[] args) {
+            this.args = args;
+            this.hash = Arrays.hashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(args, ((Key) o).args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Map<Key, Long> entries;
+
+    MemoTable(int capacity) {
+        this.entries = new LinkedHashMap<Key, Long>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** The key for the n arguments at slots[from..]. */
+    static Key key(long[] slots, int from, int n) {
+        return new Key(Arrays.copyOfRange(slots, from, from + n));
+    }
+
+    /** The remembered result, or null. */
+    Long get(Key key) {
+        return entries.get(key);
+    }
+
+    void put(Key key, long result) {
+        entries.put(key, result);
+    }
+}
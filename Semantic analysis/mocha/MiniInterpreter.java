@@ -0,0 +1,723 @@
+package mocha;
+
+import java.io.InputStream;
+import ast.AST;
+
+/**
+ * Tree-walking interpreter for type-checked programs. Globals live in their own
+ * arrays; parameters and locals live in activation records on a single value stack,
+ * indexed by the slots that FrameResolver assigns. A call pushes its arguments,
+ * which become the first slots of the callee's record, and a return pops the record
+ * by resetting the stack pointer: nothing is copied on either. A return only sets a
+ * flag that statement sequences and loops check, so unwinding to the call allocates
+ * nothing; a return in main ends the program. A self tail call (see FrameResolver)
+ * overwrites the parameters and unwinds the same way, and the call loops back to
+ * the start of the body, so tail recursion of any depth runs in constant stack.
+ * With memoization on, calls to pure functions (see PurityAnalysis) are looked up
+ * by their argument slots in a MemoTable before the body runs. A run can save its
+ * state between two main statements, or start from a saved state (see Snapshot).
+ *
+ * Evaluation is specialized on the static types the TypeChecker attached to the
+ * tree: an expression leaves its value in ival, fval or bval (or eval for arrays),
+ * and int, float and bool variables are kept unboxed in long slots. Floats are
+ * carried as doubles rounded to float precision after every operation. Arrays are
+ * FlatArrays, one primitive array each whatever their rank, indexed with strides.
+ *
+ * A run can be metered with a Fuel budget: each loop iteration and user call burns
+ * a unit off a countdown, which never runs out for an unmetered run, and the end
+ * of a slice pauses or stops the run with a Halt.
+ */
+class MiniInterpreter implements ast.NodeVisitor, Engine {
+
+    // value kinds, from static types
+    static final int INT = 0, FLOAT = 1, BOOL = 2, REF = 3, VOID = 4;
+
+    static int kind(types.Type t) {
+        if (t instanceof types.IntType)   return INT;
+        if (t instanceof types.FloatType) return FLOAT;
+        if (t instanceof types.BoolType)  return BOOL;
+        if (t instanceof types.VoidType)  return VOID;
+        return REF;
+    }
+
+    private final MochaIO io;
+    private Object[] globals;        // arrays
+    private long[] globalPrims;      // int, float (raw double bits) and bool (0/1)
+    private Object[] stack = new Object[256];
+    long[] prims = new long[256];
+    private int fp;                  // base of the active record
+    int sp;                          // first free stack slot
+    private FrameResolver frames;
+
+    // set by a return until the enclosing call (or main) has unwound to it
+    boolean returning;
+    // set with it by a self tail call, whose arguments are in the parameter slots
+    private boolean tailCall;
+
+    // results of pure functions by arguments, or null when memoization is off
+    private boolean memoize;
+    private java.util.Map<AST.FunctionDeclaration, MemoTable> memos;
+
+    // warm restart (see Snapshot): a file to save before main statement snapshotAt, one to resume from
+    private java.nio.file.Path snapshotFile;
+    private int snapshotAt = -1;
+    private java.nio.file.Path restoreFile;
+
+    // metering: fuelLeft counts down the current slice of sliceSize units
+    private Fuel fuel;
+    private long fuelLeft = Long.MAX_VALUE;
+    private long sliceSize = Long.MAX_VALUE;
+    private long fuelBurned;         // in the slices before it
+
+    /** Ends a metered run early; stackless, like any other control transfer. */
+    static final class Halt extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final Halt OUT_OF_FUEL = new Halt(RunResult.Status.OUT_OF_FUEL);
+        static final Halt CANCELLED = new Halt(RunResult.Status.CANCELLED);
+
+        final RunResult.Status status;
+
+        private Halt(RunResult.Status status) {
+            super(status.toString(), null, false, false);
+            this.status = status;
+        }
+    }
+
+    // result of the last evaluated expression, in the field for its static type
+    private int ival;
+    private double fval;
+    private boolean bval;
+    private Object eval;
+
+    MiniInterpreter(InputStream in, java.io.PrintStream out) {
+        this.io = new MochaIO(in, out);
+    }
+
+    @Override
+    public void run(ast.Computation prog, FrameResolver frames) {
+        this.frames = frames;
+        globals = new Object[frames.globalCount()];
+        globalPrims = new long[frames.globalCount()];
+        if (memoize) {
+            memos = new java.util.IdentityHashMap<>();
+            for (AST.FunctionDeclaration fd : PurityAnalysis.pureFunctions(prog)) {
+                memos.put(fd, new MemoTable(MemoTable.DEFAULT_CAPACITY));
+            }
+        }
+
+        // 1) Allocate/initialize globals with sensible defaults (calls were resolved with the frames),
+        //    or take them from a snapshot and resume main where it was saved
+        if (snapshotAt >= prog.mainStatementSequence().size()) {
+            throw new RuntimeException("Cannot snapshot after " + snapshotAt + " main statements: main has "
+                                       + prog.mainStatementSequence().size());
+        }
+        int from = 0;
+        if (restoreFile != null) {
+            from = Snapshot.restore(restoreFile, prog, globals, globalPrims, io);
+        } else {
+            for (AST.Declaration d : prog.variables()) {
+                if (d instanceof AST.VariableDeclaration) {
+                    d.accept(this);
+                }
+            }
+        }
+
+        // 2) Execute main body (a return ends it)
+        try {
+            if (from == 0 && snapshotAt < 0) prog.mainStatementSequence().accept(this);
+            else runMain(prog, from);
+        } finally {
+            io.flush();
+        }
+    }
+
+    // The main statements from from on, saving a snapshot on the way if one is wanted
+    private void runMain(ast.Computation prog, int from) {
+        AST.StatementSequence main = prog.mainStatementSequence();
+        for (int i = from; i < main.size(); i++) {
+            if (i == snapshotAt) Snapshot.save(snapshotFile, prog, i, globals, globalPrims, io);
+            ast.Statement s = main.get(i);
+            if (s == null) continue;
+            s.accept(this);
+            if (returning) return;
+        }
+    }
+
+    /** Saves the state to file once the next run() has executed statements main statements. */
+    void setSnapshot(java.nio.file.Path file, int statements) {
+        this.snapshotFile = file;
+        this.snapshotAt = statements;
+    }
+
+    /** Starts the next run() from the state saved in file rather than from the beginning. */
+    void setRestore(java.nio.file.Path file) {
+        this.restoreFile = file;
+    }
+
+    /** Memoizes calls to pure functions in the next run(). */
+    void setMemoize(boolean memoize) {
+        this.memoize = memoize;
+    }
+
+    // ---------- metering ----------
+
+    /** Meters the next run() with fuel. */
+    void setFuel(Fuel fuel) {
+        this.fuel = fuel;
+        fuelBurned = 0;
+        sliceSize = fuelLeft = fuel.slice;
+    }
+
+    /** Units burned so far by a metered run. */
+    long fuelUsed() {
+        return (fuel == null) ? 0 : fuelBurned + sliceSize - fuelLeft;
+    }
+
+    private void burn() {
+        if (--fuelLeft < 0) nextSlice();
+    }
+
+    // The slice is used up: stop at the limit, else pause and start the next one
+    private void nextSlice() {
+        fuelBurned += sliceSize;
+        sliceSize = fuelLeft = 0;
+        if (fuel == null || fuelBurned >= fuel.limit) throw Halt.OUT_OF_FUEL;
+        if (fuel.pause != null) {
+            try {
+                fuel.pause.pause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Halt.CANCELLED;
+            }
+        }
+        sliceSize = Math.min(fuel.slice, fuel.limit - fuelBurned);
+        fuelLeft = sliceSize - 1; // including the unit that got here
+    }
+
+    /** A zero-filled flat array for an array type, or null for void, unknown or an unspecified size. */
+    private Object defaultValueForType(types.Type t) {
+        return (t instanceof types.ArrayType) ? FlatArray.allocate((types.ArrayType) t) : null;
+    }
+
+    // ---------- variable slots ----------
+    long loadPrim(AST.Identifier id) {
+        switch (id.getDepth()) {
+            case FrameResolver.GLOBAL: return globalPrims[id.getSlot()];
+            case FrameResolver.LOCAL:  return prims[fp + id.getSlot()];
+            default: throw new RuntimeException("Unresolved variable: " + id.getName());
+        }
+    }
+
+    private void storePrim(AST.Identifier id, long v) {
+        switch (id.getDepth()) {
+            case FrameResolver.GLOBAL: globalPrims[id.getSlot()] = v; break;
+            case FrameResolver.LOCAL:  prims[fp + id.getSlot()] = v; break;
+            default: throw new RuntimeException("Unresolved variable: " + id.getName());
+        }
+    }
+
+    private Object loadRef(AST.Identifier id) {
+        switch (id.getDepth()) {
+            case FrameResolver.GLOBAL: return globals[id.getSlot()];
+            case FrameResolver.LOCAL:  return stack[fp + id.getSlot()];
+            default: throw new RuntimeException("Unresolved variable: " + id.getName());
+        }
+    }
+
+    private void storeRef(AST.Identifier id, Object v) {
+        switch (id.getDepth()) {
+            case FrameResolver.GLOBAL: globals[id.getSlot()] = v; break;
+            case FrameResolver.LOCAL:  stack[fp + id.getSlot()] = v; break;
+            default: throw new RuntimeException("Unresolved variable: " + id.getName());
+        }
+    }
+
+    private void ensureStack(int size) {
+        if (size > stack.length) {
+            int n = Math.max(size, stack.length * 2);
+            stack = java.util.Arrays.copyOf(stack, n);
+            prims = java.util.Arrays.copyOf(prims, n);
+        }
+    }
+
+    // ---------- typed evaluation ----------
+    private int evalInt(ast.Expression e) {
+        e.accept(this);
+        return ival;
+    }
+
+    private double evalFloat(ast.Expression e) {
+        e.accept(this);
+        return (e.getType() instanceof types.IntType) ? ival : fval; // int operands of mixed arithmetic
+    }
+
+    private boolean evalBool(ast.Expression e) {
+        e.accept(this);
+        return bval;
+    }
+
+    private Object evalRef(ast.Expression e) {
+        e.accept(this);
+        return eval;
+    }
+
+    // Value of e as a slot word of the given kind
+    long evalPrim(ast.Expression e, int kind) {
+        switch (kind) {
+            case INT:   return evalInt(e);
+            case FLOAT: return Double.doubleToRawLongBits(evalFloat(e));
+            default:    return evalBool(e) ? 1 : 0;
+        }
+    }
+
+    // The value in the result field for kind, as a slot
+    private long result(int kind) {
+        switch (kind) {
+            case INT:   return ival;
+            case FLOAT: return Double.doubleToRawLongBits(fval);
+            default:    return bval ? 1 : 0;
+        }
+    }
+
+    private void setResult(int kind, long v) {
+        switch (kind) {
+            case INT:   ival = (int) v; break;
+            case FLOAT: fval = Double.longBitsToDouble(v); break;
+            default:    bval = v != 0;
+        }
+    }
+
+    // ---------- array elements ----------
+
+    // array and next dimension of the last locate()
+    FlatArray located;
+    private int locatedDim;
+
+    /**
+     * Position in located.*s of the element or sub-array n designates. A chain of
+     * indexes a[i][j].. is resolved with stride arithmetic and no intermediate views,
+     * switching to the array a sub-array was assigned where there is one; indices
+     * are evaluated outermost first.
+     */
+    int locate(AST.ArrayIndex n) {
+        return locate(n, true);
+    }
+
+    // Unless follow, a sub-array assigned another array is located as itself, to be assigned again
+    private int locate(AST.ArrayIndex n, boolean follow) {
+        int pos;
+        if (n.getBase() instanceof AST.ArrayIndex) {
+            pos = locate((AST.ArrayIndex) n.getBase());
+        } else {
+            Object base = evalRef(n.getBase());
+            if (!(base instanceof FlatArray)) throw new RuntimeException("Indexing a non-array");
+            located = (FlatArray) base;
+            locatedDim = located.depth;
+            pos = located.offset;
+        }
+        FlatArray arr = located; // the index may itself index arrays
+        int dim = locatedDim;
+        int idx = evalInt(n.getIndex());
+        // the type checker proved some accesses in range; only the rest are checked
+        if (!n.isInBounds() && (idx < 0 || idx >= arr.extents[dim])) {
+            throw new RuntimeException("Index out of bounds: " + idx);
+        }
+        pos += idx * arr.strides[dim];
+        FlatArray alias = (follow && arr.root.aliases != null) ? arr.root.alias(dim + 1, pos) : null;
+        if (alias != null) { // a sub-array that was assigned another array
+            located = alias;
+            locatedDim = alias.depth;
+            return alias.offset;
+        }
+        located = arr;
+        locatedDim = dim + 1;
+        return pos;
+    }
+
+    private static boolean isInt(ast.Expression e) {
+        return e.getType() instanceof types.IntType;
+    }
+
+    @Override
+    public void visit(AST.ReturnStatement node) {
+        if (node.isSelfTailCall()) {
+            int base = sp;
+            pushArguments((AST.FunctionCall) node.getValue());
+            System.arraycopy(prims, base, prims, fp, sp - base);
+            System.arraycopy(stack, base, stack, fp, sp - base);
+            java.util.Arrays.fill(stack, base, sp, null);
+            sp = base;
+            tailCall = true;
+            returning = true;
+            return;
+        }
+        if (node.getValue() != null) {
+            node.getValue().accept(this);
+        }
+        returning = true; // the value, if any, is left in the typed result fields
+    }
+
+    @Override
+    public void visit(AST.IntegerLiteral n) { ival = n.getValue(); }
+
+    @Override
+    public void visit(AST.FloatLiteral n)   { fval = n.getValue(); }
+
+    @Override
+    public void visit(AST.UnaryMinus n) {
+        if (isInt(n)) ival = -evalInt(n.getExpr());
+        else fval = (float) -evalFloat(n.getExpr());
+    }
+
+    @Override
+    public void visit(AST.Addition n) {
+        if (isInt(n)) ival = evalInt(n.getLeft()) + evalInt(n.getRight());
+        else fval = (float) (evalFloat(n.getLeft()) + evalFloat(n.getRight()));
+    }
+
+    @Override
+    public void visit(AST.Subtraction n) {
+        if (isInt(n)) ival = evalInt(n.getLeft()) - evalInt(n.getRight());
+        else fval = (float) (evalFloat(n.getLeft()) - evalFloat(n.getRight()));
+    }
+
+    @Override
+    public void visit(AST.Multiplication n) {
+        if (isInt(n)) ival = evalInt(n.getLeft()) * evalInt(n.getRight());
+        else fval = (float) (evalFloat(n.getLeft()) * evalFloat(n.getRight()));
+    }
+
+    @Override
+    public void visit(AST.Division n) {
+        if (isInt(n)) ival = evalInt(n.getLeft()) / evalInt(n.getRight());
+        else fval = (float) (evalFloat(n.getLeft()) / evalFloat(n.getRight()));
+    }
+
+    @Override
+    public void visit(AST.Modulo n) {
+        ival = evalInt(n.getLeft()) % evalInt(n.getRight());
+    }
+
+    @Override
+    public void visit(AST.LogicalNot n) {
+        bval = !evalBool(n.getExpression());
+    }
+
+    @Override
+    public void visit(AST.LogicalAnd n) {
+        bval = evalBool(n.getLeft()) && evalBool(n.getRight()); // short-circuit
+    }
+
+    @Override
+    public void visit(AST.LogicalOr n) {
+        bval = evalBool(n.getLeft()) || evalBool(n.getRight()); // short-circuit
+    }
+
+    @Override
+    public void visit(AST.Power n) {
+        switch (n.getOperands()) {
+            case INT: {
+                int b = evalInt(n.getBase());
+                int e = evalInt(n.getExponent());
+                // a negative int exponent truncates like any other int result
+                ival = (e < 0) ? (int) Math.pow(b, e) : intPow(b, e);
+                break;
+            }
+            case FLOAT: {
+                n.getBase().accept(this);
+                double bd = fval;
+                n.getExponent().accept(this);
+                fval = (float) Math.pow(bd, fval);
+                break;
+            }
+            default: {
+                // any float involved -> float result
+                double bd = evalFloat(n.getBase());
+                double ed = evalFloat(n.getExponent());
+                fval = (float) Math.pow(bd, ed);
+            }
+        }
+    }
+
+    // fast integer power (non-negative exponent)
+    private int intPow(int base, int exp) {
+        int result = 1;
+        int b = base;
+        int e = exp;
+        while (e > 0) {
+            if ((e & 1) == 1) result *= b;
+            b *= b;
+            e >>= 1;
+        }
+        return result;
+    }
+
+    @Override
+    public void visit(AST.Relation n) {
+        ast.Expression left = n.getLeft(), right = n.getRight();
+        switch (n.getOperands()) {
+            case INT: {
+                int a = evalInt(left), b = evalInt(right);
+                bval = holds(n.getOp(), a, b);
+                break;
+            }
+            case FLOAT: {
+                left.accept(this);
+                double a = fval;
+                right.accept(this);
+                bval = holds(n.getOp(), a, fval);
+                break;
+            }
+            case MIXED: {
+                double a = evalFloat(left), b = evalFloat(right);
+                bval = holds(n.getOp(), a, b);
+                break;
+            }
+            default: {
+                boolean a = evalBool(left), b = evalBool(right);
+                switch (n.getOp()) {
+                    case EQ: bval = (a == b); break;
+                    case NE: bval = (a != b); break;
+                    default: throw new RuntimeException("Bool relop not supported: " + n.getOperator());
+                }
+            }
+        }
+    }
+
+    // int operands compare exactly, never by way of double
+    private static boolean holds(AST.Relation.Op op, int a, int b) {
+        switch (op) {
+            case EQ: return a == b;
+            case NE: return a != b;
+            case LT: return a <  b;
+            case LE: return a <= b;
+            case GT: return a >  b;
+            default: return a >= b;
+        }
+    }
+
+    private static boolean holds(AST.Relation.Op op, double a, double b) {
+        switch (op) {
+            case EQ: return a == b;
+            case NE: return a != b;
+            case LT: return a <  b;
+            case LE: return a <= b;
+            case GT: return a >  b;
+            default: return a >= b;
+        }
+    }
+
+    // ---------- statements ----------
+    @Override
+    public void visit(AST.StatementSequence node) {
+        for (ast.Statement s : node) {
+            if (s == null) continue;
+            s.accept(this);
+            if (returning) return;
+        }
+    }
+
+    @Override
+    public void visit(AST.VariableDeclaration n) {
+        types.Type t = ((AST.TypeNode) n.getTypeNode()).getActualType();
+        if (kind(t) == REF) storeRef(n.getIdentifier(), defaultValueForType(t));
+        else storePrim(n.getIdentifier(), 0L); // 0, 0.0 and false
+    }
+
+    @Override
+    public void visit(AST.FunctionCall n) {
+        java.util.List<ast.Expression> args = n.getArguments().getArguments();
+
+        // 1) Built-ins: the target was resolved once, by FrameResolver
+        Builtin builtin = n.getBuiltin();
+        if (builtin != null) {
+            switch (builtin) {
+                case PRINT_INT:   io.printInt(evalInt(args.get(0))); return;
+                case PRINT_FLOAT: io.printFloat(evalFloat(args.get(0))); return;
+                case PRINT_BOOL:  io.printBool(evalBool(args.get(0))); return;
+                case PRINTLN:     io.println(); return;
+                case READ_INT:    ival = io.readInt(); return;
+                case READ_FLOAT:  fval = io.readFloat(); return;
+                case READ_BOOL:   bval = io.readBool(); return;
+            }
+        }
+
+        // 2) User-defined function
+        AST.FunctionDeclaration fd = n.getCallee();
+        if (fd == null) throw new RuntimeException("N/A");
+        burn();
+
+        int base = sp;
+        pushArguments(n);
+        MemoTable memo = (memos != null) ? memos.get(fd) : null;
+        MemoTable.Key key = null;
+        if (memo != null) {
+            key = MemoTable.key(prims, base, sp - base);
+            Long known = memo.get(key);
+            if (known != null) {
+                sp = base;
+                setResult(kind(n.getType()), known);
+                return;
+            }
+        }
+
+        // Push the activation record: the arguments already fill the parameter slots
+        int savedFp = fp;
+        fp = base;
+        sp = base + frames.frameSize(fd);
+        ensureStack(sp);
+        try {
+            while (true) {
+                // Allocate locals with defaults
+                for (AST.Declaration d : fd.getBody().getDeclarations()) {
+                    if (d instanceof AST.VariableDeclaration) d.accept(this);
+                }
+
+                // Execute body; a return leaves its value in the result fields, and a
+                // self tail call its arguments in the parameter slots to go round again
+                fd.getBody().getStatements().accept(this);
+                returning = false;
+                if (!tailCall) break;
+                tailCall = false;
+                burn();
+            }
+            if (memo != null) memo.put(key, result(kind(n.getType())));
+        } finally {
+            java.util.Arrays.fill(stack, base, sp, null); // drop references held by the record
+            sp = base;
+            fp = savedFp;
+        }
+    }
+
+    // Push argument values; calls made while evaluating them use the stack above
+    void pushArguments(AST.FunctionCall call) {
+        for (ast.Expression e : call.getArguments().getArguments()) {
+            int k = kind(e.getType());
+            if (k == REF) {
+                Object v = evalRef(e);
+                ensureStack(sp + 1);
+                stack[sp] = v;
+            } else {
+                long v = evalPrim(e, k);
+                ensureStack(sp + 1);
+                prims[sp] = v;
+            }
+            sp++;
+        }
+    }
+
+    @Override
+    public void visit(AST.IfStatement n) {
+        if (evalBool(n.getCondition())) {
+            n.getThenBlock().accept(this);
+        } else if (n.getElseBlock() != null) {
+            n.getElseBlock().accept(this);
+        }
+    }
+
+    @Override
+    public void visit(AST.WhileStatement n) {
+        while (evalBool(n.getCondition())) {
+            burn();
+            n.getBody().accept(this);
+            if (returning) return;
+        }
+    }
+
+    @Override
+    public void visit(AST.RepeatStatement n) {
+        do {
+            burn();
+            n.getBody().accept(this);
+            if (returning) return;
+        } while (!evalBool(n.getCondition()));
+    }
+
+    @Override
+    public void visit(AST.ArgumentList node) {
+        // Evaluate args left-to-right; keep last in the result fields for convenience
+        for (ast.Expression e : node.getArguments()) e.accept(this);
+    }
+
+    @Override
+    public void visit(AST.Assignment node) {
+        ast.Expression dest = node.getDestination();
+        ast.Expression src = node.getSource();
+
+        if (dest instanceof AST.Identifier) {
+            AST.Identifier id = (AST.Identifier) dest;
+            int k = kind(dest.getType());
+            if (k == REF) storeRef(id, evalRef(src));
+            else storePrim(id, evalPrim(src, k));
+        } else if (dest instanceof AST.ArrayIndex) {
+            // evaluate RHS first, then base and indices
+            AST.ArrayIndex ai = (AST.ArrayIndex) dest;
+            switch (kind(dest.getType())) {
+                case INT: {
+                    int v = evalInt(src);
+                    int pos = locate(ai);
+                    located.ints[pos] = v;
+                    break;
+                }
+                case FLOAT: {
+                    double v = evalFloat(src);
+                    int pos = locate(ai);
+                    located.floats[pos] = v;
+                    break;
+                }
+                case BOOL: {
+                    boolean v = evalBool(src);
+                    int pos = locate(ai);
+                    located.bools[pos] = v;
+                    break;
+                }
+                default: {
+                    // a whole row: it refers to v from now on
+                    FlatArray v = (FlatArray) evalRef(src);
+                    int pos = locate(ai, false);
+                    if (v == null) throw new RuntimeException("Assigning a non-array row");
+                    located.root.setAlias(locatedDim, pos, v);
+                }
+            }
+        } else {
+            throw new RuntimeException("Unsupported lvalue: " + dest.getClass().getSimpleName());
+        }
+    }
+
+    // ---------- expressions ----------
+    @Override public void visit(AST.BoolLiteral node)   { bval = node.getValue(); }
+
+    @Override
+    public void visit(AST.Identifier node) {
+        switch (kind(node.getType())) {
+            case INT:   ival = (int) loadPrim(node); break;
+            case FLOAT: fval = Double.longBitsToDouble(loadPrim(node)); break;
+            case BOOL:  bval = loadPrim(node) != 0; break;
+            default: {
+                Object v = loadRef(node);
+                if (v == null) throw new RuntimeException("Uninitialized var: " + node.getName());
+                eval = v;
+            }
+        }
+    }
+
+    @Override
+    public void visit(AST.ArrayIndex node) {
+        int pos = locate(node);
+        switch (kind(node.getType())) {
+            case INT:   ival = located.ints[pos]; break;
+            case FLOAT: fval = located.floats[pos]; break;
+            case BOOL:  bval = located.bools[pos]; break;
+            default:    eval = located.view(locatedDim, pos); // partially indexed
+        }
+    }
+
+    // The rest of NodeVisitor methods (not used in the I/O test) can be no-ops:
+    @Override public void visit(ast.Computation n) {}
+    @Override public void visit(AST.AddressOf n)   { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.Dereference n) { throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.FunctionBody n){ throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.FunctionDeclaration n){ throw new RuntimeException("N/A"); }
+    @Override public void visit(AST.DeclarationList n){ /* globals handled in run() */ }
+    @Override public void visit(AST.TypeNode n) {}
+}
@@ -0,0 +1,232 @@
+package mocha;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.InputMismatchException;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Buffered I/O for the built-ins, writing the same bytes as the PrintStream and
+ * Scanner calls it replaces: "%d ", "%.2f ", "true "/"false ", the line separator,
+ * and the "int? ", "float? " and "true or false? " prompts.
+ *
+ * Output collects in one reusable byte buffer with integers and fixed two-decimal
+ * floats formatted by hand; it is written out when full, before the input blocks
+ * (so prompts show up interactively) and on flush(). Input is split into
+ * whitespace-separated tokens at the byte level and parsed without regular
+ * expressions. A float whose rounding to two decimals is too close to call falls
+ * back to String.format, so output never differs.
+ */
+final class MochaIO {
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e', ' '};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e', ' '};
+    private static final byte[] INT_PROMPT = {'i', 'n', 't', '?', ' '};
+    private static final byte[] FLOAT_PROMPT = {'f', 'l', 'o', 'a', 't', '?', ' '};
+    private static final byte[] BOOL_PROMPT = "true or false? ".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    private final InputStream in;
+    private final OutputStream out;
+
+    private final byte[] outBuf = new byte[1 << 16];
+    private int outLen;
+
+    private final byte[] inBuf = new byte[1 << 16];
+    private int inPos, inLen;
+    private long inBase;             // bytes of in before inBuf
+    private boolean eof;
+    private final StringBuilder token = new StringBuilder();
+
+    MochaIO(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    // ---------- output ----------
+
+    void flush() {
+        try {
+            out.write(outBuf, 0, outLen);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        outLen = 0;
+    }
+
+    private void reserve(int n) {
+        if (outLen + n > outBuf.length) flush();
+    }
+
+    private void put(byte[] bytes) {
+        reserve(bytes.length);
+        System.arraycopy(bytes, 0, outBuf, outLen, bytes.length);
+        outLen += bytes.length;
+    }
+
+    void printInt(int v) {
+        reserve(12);
+        putLong(v);
+        outBuf[outLen++] = ' ';
+    }
+
+    void printBool(boolean v) {
+        put(v ? TRUE : FALSE);
+    }
+
+    void println() {
+        put(NEWLINE);
+    }
+
+    /** Writes v as printf("%.2f ", v) would. */
+    void printFloat(double v) {
+        double scaled = Math.abs(v) * 100;
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        // Formatter rounds the shortest decimal form of v, which can fall on the other
+        // side of a tie than v itself when it is within an ulp or so: leave those to it
+        if (!(scaled < 1e15) || Math.abs(fraction - 0.5) <= 8 * Math.ulp(scaled)) {
+            put(String.format(Locale.ROOT, "%.2f ", v).getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+            return;
+        }
+        long cents = (long) floor + (fraction > 0.5 ? 1 : 0);
+        reserve(24);
+        if ((Double.doubleToRawLongBits(v) < 0)) outBuf[outLen++] = '-';
+        putLong(cents / 100);
+        int c = (int) (cents % 100);
+        outBuf[outLen++] = '.';
+        outBuf[outLen++] = (byte) ('0' + c / 10);
+        outBuf[outLen++] = (byte) ('0' + c % 10);
+        outBuf[outLen++] = ' ';
+    }
+
+    // Decimal digits of v; the caller has reserved room
+    private void putLong(long v) {
+        if (v < 0) {
+            outBuf[outLen++] = '-';
+            if (v == Long.MIN_VALUE) {
+                put("9223372036854775808".getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                return;
+            }
+            v = -v;
+        }
+        int start = outLen;
+        do {
+            outBuf[outLen++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = outLen - 1; i < j; i++, j--) {
+            byte t = outBuf[i];
+            outBuf[i] = outBuf[j];
+            outBuf[j] = t;
+        }
+    }
+
+    // ---------- input ----------
+
+    int readInt() {
+        put(INT_PROMPT);
+        String tok = next();
+        long v = 0;
+        int i = 0, n = tok.length();
+        boolean negative = false;
+        if (n > 1 && (tok.charAt(0) == '-' || tok.charAt(0) == '+')) {
+            negative = tok.charAt(0) == '-';
+            i = 1;
+        }
+        for (; i < n; i++) {
+            char c = tok.charAt(i);
+            if (c < '0' || c > '9' || v > Integer.MAX_VALUE + 1L) return parseInt(tok); // unusual form
+            v = v * 10 + (c - '0');
+        }
+        if (negative) v = -v;
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) throw new InputMismatchException("For input string: \"" + tok + "\"");
+        return (int) v;
+    }
+
+    // Forms the digit loop does not handle, such as grouped digits
+    private static int parseInt(String tok) {
+        java.util.Scanner sc = new java.util.Scanner(tok);
+        if (!sc.hasNextInt()) throw new InputMismatchException("For input string: \"" + tok + "\"");
+        return sc.nextInt();
+    }
+
+    double readFloat() {
+        put(FLOAT_PROMPT);
+        String tok = next();
+        try {
+            for (int i = 0; i < tok.length(); i++) {
+                char c = tok.charAt(i);
+                if (!(c >= '0' && c <= '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') {
+                    return parseFloat(tok);
+                }
+            }
+            return Double.parseDouble(tok);
+        } catch (NumberFormatException e) {
+            return parseFloat(tok);
+        }
+    }
+
+    // Forms Double.parseDouble does not take the way Scanner does, such as NaN or grouped digits
+    private static double parseFloat(String tok) {
+        java.util.Scanner sc = new java.util.Scanner(tok);
+        if (!sc.hasNextDouble()) throw new InputMismatchException("For input string: \"" + tok + "\"");
+        return sc.nextDouble();
+    }
+
+    boolean readBool() {
+        put(BOOL_PROMPT);
+        return "true".equalsIgnoreCase(next());
+    }
+
+    private int read() {
+        if (inPos == inLen) {
+            if (eof) return -1;
+            flush(); // show pending output, prompts included, before blocking
+            inBase += inLen;
+            try {
+                inLen = in.read(inBuf, 0, inBuf.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            inPos = 0;
+            if (inLen <= 0) {
+                inLen = 0;
+                eof = true;
+                return -1;
+            }
+        }
+        return inBuf[inPos++] & 0xff;
+    }
+
+    /** Bytes of input the reads so far have used up. */
+    long inputConsumed() {
+        return inBase + inPos;
+    }
+
+    /** Discards the next n bytes of input, as if read. */
+    void skipInput(long n) {
+        for (long i = 0; i < n; i++) {
+            if (read() < 0) return;
+        }
+    }
+
+    /** The next whitespace-separated token. */
+    private String next() {
+        int c;
+        do {
+            c = read();
+        } while (c >= 0 && Character.isWhitespace(c));
+        if (c < 0) throw new NoSuchElementException();
+        token.setLength(0);
+        while (c >= 0 && !Character.isWhitespace(c)) {
+            token.append((char) c);
+            c = read();
+        }
+        return token.toString();
+    }
+}
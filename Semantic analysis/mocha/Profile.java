@@ -0,0 +1,147 @@
+package mocha;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ast.AST;
+
+/**
+ * What ProfilingInterpreter measured over one or more runs: calls and cumulative
+ * time per function, entries and iterations per loop, and how many statements ran
+ * on each source line. A function's time includes its callees and is counted once
+ * for a recursive chain, from the outermost activation.
+ */
+public final class Profile {
+
+    static final class FunctionStats {
+        final AST.FunctionDeclaration decl;
+        long calls;
+        long nanos;
+        int active;  // activations on the stack
+        long start;  // of the outermost one
+
+        FunctionStats(AST.FunctionDeclaration decl) {
+            this.decl = decl;
+        }
+    }
+
+    static final class LoopStats {
+        final String kind;
+        final int line;
+        long entries;
+        long iterations;
+
+        LoopStats(String kind, int line) {
+            this.kind = kind;
+            this.line = line;
+        }
+    }
+
+    private final Map<AST.FunctionDeclaration, FunctionStats> functions = new IdentityHashMap<>();
+    private final Map<AST.Node, LoopStats> loops = new IdentityHashMap<>();
+    private long[] lines = new long[64];
+    private long runs;
+    private long nanos;
+
+    // ---------- recording (ProfilingInterpreter) ----------
+
+    FunctionStats function(AST.FunctionDeclaration fd) {
+        return functions.computeIfAbsent(fd, FunctionStats::new);
+    }
+
+    LoopStats loop(AST.Node loop, String kind) {
+        return loops.computeIfAbsent(loop, l -> new LoopStats(kind, l.lineNumber()));
+    }
+
+    void line(int line) {
+        if (line >= lines.length) lines = java.util.Arrays.copyOf(lines, Math.max(line + 1, lines.length * 2));
+        lines[line]++;
+    }
+
+    void run(long nanos) {
+        runs++;
+        this.nanos += nanos;
+    }
+
+    // ---------- reports ----------
+
+    private List<FunctionStats> sortedFunctions() {
+        List<FunctionStats> l = new ArrayList<>(functions.values());
+        l.sort((a, b) -> (a.nanos != b.nanos) ? Long.compare(b.nanos, a.nanos) : Long.compare(b.calls, a.calls));
+        return l;
+    }
+
+    private List<LoopStats> sortedLoops() {
+        List<LoopStats> l = new ArrayList<>(loops.values());
+        l.sort((a, b) -> (a.iterations != b.iterations) ? Long.compare(b.iterations, a.iterations) : Integer.compare(a.line, b.line));
+        return l;
+    }
+
+    // source lines that ran, most executed first
+    private List<int[]> sortedLines() {
+        List<int[]> l = new ArrayList<>();
+        for (int i = 0; i < lines.length; i++) if (lines[i] > 0) l.add(new int[] {i});
+        l.sort((a, b) -> (lines[a[0]] != lines[b[0]]) ? Long.compare(lines[b[0]], lines[a[0]]) : Integer.compare(a[0], b[0]));
+        return l;
+    }
+
+    /** A plain-text report, each section sorted hottest first. */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Profile: %d run(s), %.3f ms%n", runs, nanos / 1e6));
+
+        sb.append(String.format("%nFunctions%n%12s %12s %12s  %s%n", "calls", "total ms", "avg us", "function"));
+        for (FunctionStats f : sortedFunctions()) {
+            sb.append(String.format("%12d %12.3f %12.3f  %s (line %d)%n", f.calls, f.nanos / 1e6,
+                                    f.nanos / 1e3 / Math.max(1, f.calls), f.decl.getIdentifier().getName(), f.decl.lineNumber()));
+        }
+
+        sb.append(String.format("%nLoops%n%12s %12s  %s%n", "iterations", "entries", "loop"));
+        for (LoopStats l : sortedLoops()) {
+            sb.append(String.format("%12d %12d  %s (line %d)%n", l.iterations, l.entries, l.kind, l.line));
+        }
+
+        sb.append(String.format("%nLines%n%12s  %s%n", "executions", "line"));
+        for (int[] l : sortedLines()) {
+            sb.append(String.format("%12d  %d%n", lines[l[0]], l[0]));
+        }
+        return sb.toString();
+    }
+
+    /** The same report as a JSON object. */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"runs\":").append(runs).append(",\"nanos\":").append(nanos).append(",\"functions\":[");
+        String sep = "";
+        for (FunctionStats f : sortedFunctions()) {
+            sb.append(sep).append("{\"name\":\"").append(f.decl.getIdentifier().getName())
+              .append("\",\"line\":").append(f.decl.lineNumber())
+              .append(",\"calls\":").append(f.calls)
+              .append(",\"nanos\":").append(f.nanos).append('}');
+            sep = ",";
+        }
+        sb.append("],\"loops\":[");
+        sep = "";
+        for (LoopStats l : sortedLoops()) {
+            sb.append(sep).append("{\"kind\":\"").append(l.kind)
+              .append("\",\"line\":").append(l.line)
+              .append(",\"entries\":").append(l.entries)
+              .append(",\"iterations\":").append(l.iterations).append('}');
+            sep = ",";
+        }
+        sb.append("],\"lines\":[");
+        sep = "";
+        for (int[] l : sortedLines()) {
+            sb.append(sep).append("{\"line\":").append(l[0]).append(",\"executions\":").append(lines[l[0]]).append('}');
+            sep = ",";
+        }
+        return sb.append("]}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
@@ -0,0 +1,87 @@
+package mocha;
+
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import ast.AST;
+
+/**
+ * MiniInterpreter instrumented to fill in a Profile. Only the visits that matter
+ * are overridden, each recording and then deferring to the interpreter, so the
+ * plain MiniInterpreter carries no profiling code at all. Loop iterations are
+ * counted as executions of the loop's body sequence.
+ */
+final class ProfilingInterpreter extends MiniInterpreter {
+
+    private final Profile profile;
+    private final Map<AST.StatementSequence, Profile.LoopStats> loopBodies = new IdentityHashMap<>();
+
+    ProfilingInterpreter(InputStream in, java.io.PrintStream out, Profile profile) {
+        super(in, out);
+        this.profile = profile;
+    }
+
+    @Override
+    public void run(ast.Computation prog, FrameResolver frames) {
+        long start = System.nanoTime();
+        try {
+            super.run(prog, frames);
+        } finally {
+            profile.run(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void visit(AST.StatementSequence node) {
+        Profile.LoopStats loop = loopBodies.get(node);
+        if (loop != null) loop.iterations++;
+        for (ast.Statement s : node) {
+            if (s == null) continue;
+            profile.line(((AST.Node) s).lineNumber());
+            s.accept(this);
+            if (returning) return;
+        }
+    }
+
+    @Override
+    public void visit(AST.WhileStatement n) {
+        enterLoop(n, n.getBody(), "while");
+        super.visit(n);
+    }
+
+    @Override
+    public void visit(AST.RepeatStatement n) {
+        enterLoop(n, n.getBody(), "repeat");
+        super.visit(n);
+    }
+
+    private void enterLoop(AST.Node loop, AST.StatementSequence body, String kind) {
+        Profile.LoopStats stats = profile.loop(loop, kind);
+        stats.entries++;
+        loopBodies.putIfAbsent(body, stats);
+    }
+
+    @Override
+    public void visit(AST.ReturnStatement n) {
+        if (n.isSelfTailCall()) profile.function(((AST.FunctionCall) n.getValue()).getCallee()).calls++; // loops in place
+        super.visit(n);
+    }
+
+    @Override
+    public void visit(AST.FunctionCall n) {
+        AST.FunctionDeclaration fd = n.getCallee();
+        if (fd == null) {
+            super.visit(n);
+            return;
+        }
+        Profile.FunctionStats stats = profile.function(fd);
+        stats.calls++;
+        if (stats.active++ == 0) stats.start = System.nanoTime();
+        try {
+            super.visit(n);
+        } finally {
+            if (--stats.active == 0) stats.nanos += System.nanoTime() - stats.start;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package mocha;
+
+import ast.AST.*;
+import ast.Computation;
+import ast.TreeWalker;
+import ast.Visitable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the pure functions of a program: those whose result depends only on their
+ * arguments and which have no effect, so a call can be replaced by an earlier
+ * result for the same arguments. A function is pure if
+ *
+ *   - its parameters and its return value are int, float or bool,
+ *   - its body reads and writes no global variable and calls no built-in, and
+ *   - every function it calls is pure (recursion included).
+ *
+ * Local arrays are fine, they are fresh on every call. Needs the frame slots and
+ * call targets of FrameResolver.
+ */
+final class PurityAnalysis {
+
+    private PurityAnalysis() {
+    }
+
+    /** The pure functions of prog, as an identity set. */
+    static Set<FunctionDeclaration> pureFunctions(Computation prog) {
+        Map<FunctionDeclaration, List<FunctionDeclaration>> callees = new IdentityHashMap<>();
+        Set<FunctionDeclaration> pure = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Declaration d : prog.functions()) {
+            FunctionDeclaration fd = (FunctionDeclaration) d;
+            List<FunctionDeclaration> calls = new ArrayList<>();
+            if (primitiveSignature(fd) && localOnly(fd, calls)) {
+                pure.add(fd);
+                callees.put(fd, calls);
+            }
+        }
+
+        // assume the candidates pure and drop any calling a function that is not, until none changes
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (FunctionDeclaration fd : new ArrayList<>(pure)) {
+                for (FunctionDeclaration callee : callees.get(fd)) {
+                    if (!pure.contains(callee)) {
+                        pure.remove(fd);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return pure;
+    }
+
+    private static boolean primitiveSignature(FunctionDeclaration fd) {
+        for (FormalParameter p : fd.getParameters()) {
+            if (MiniInterpreter.kind(typeOf(p.getTypeNode())) > MiniInterpreter.BOOL) return false;
+        }
+        return MiniInterpreter.kind(typeOf(fd.getReturnType())) <= MiniInterpreter.BOOL;
+    }
+
+    private static types.Type typeOf(Node typeNode) {
+        return ((TypeNode) typeNode).getActualType();
+    }
+
+    // No global variable or built-in in the body; collects the user functions it calls
+    private static boolean localOnly(FunctionDeclaration fd, List<FunctionDeclaration> calls) {
+        boolean[] local = {true};
+        fd.getBody().accept(new TreeWalker() {
+            @Override
+            protected void enter(Visitable node) {
+                if (node instanceof Identifier && ((Identifier) node).getDepth() == FrameResolver.GLOBAL) {
+                    local[0] = false;
+                } else if (node instanceof FunctionCall) {
+                    FunctionCall call = (FunctionCall) node;
+                    if (call.getCallee() == null) local[0] = false; // a built-in (or unresolved)
+                    else calls.add(call.getCallee());
+                }
+            }
+        });
+        return local[0];
+    }
+}
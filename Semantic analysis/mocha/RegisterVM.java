@@ -0,0 +1,282 @@
+package mocha;
+
+import static mocha.Bytecode.*;
+
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Runs the register bytecode of Bytecode with a single switch-dispatch loop.
+ *
+ * The register files (int, double and reference cells) are preallocated and shared by
+ * all frames: a call places the callee's frame right above the caller's, copies the
+ * arguments into its first registers and clears the rest, and pushes the return pc,
+ * frame pointer, frame size and destination register on an int call stack. Neither
+ * calls nor returns allocate. Leaf arrays are int[] (ints and bools) and double[].
+ */
+final class RegisterVM implements Engine {
+
+    private final MochaIO io;
+
+    private int[] ir = new int[256];
+    private double[] fr = new double[256];
+    private Object[] ar = new Object[256];
+    private int[] calls = new int[64];
+
+    RegisterVM(InputStream in, java.io.PrintStream out) {
+        this.io = new MochaIO(in, out);
+    }
+
+    @Override
+    public void run(ast.Computation prog, FrameResolver frames) {
+        try {
+            execute(new BytecodeCompiler().compile(prog, frames));
+        } finally {
+            io.flush();
+        }
+    }
+
+    private void ensureRegisters(int size) {
+        if (size > ir.length) {
+            int n = Math.max(size, ir.length * 2);
+            ir = Arrays.copyOf(ir, n);
+            fr = Arrays.copyOf(fr, n);
+            ar = Arrays.copyOf(ar, n);
+        }
+    }
+
+    private static Object newArray(int elem, int[] extents, int level) {
+        int n = extents[level];
+        if (n < 0) return null; // unspecified size: don't allocate
+        if (level == extents.length - 1) {
+            return (elem == ELEM_FLOAT) ? new double[n] : new int[n];
+        }
+        Object[] arr = new Object[n];
+        for (int i = 0; i < n; i++) arr[i] = newArray(elem, extents, level + 1);
+        return arr;
+    }
+
+    private static RuntimeException outOfBounds(int idx) {
+        return new RuntimeException("Index out of bounds: " + idx);
+    }
+
+    private static int intPow(int b, int e) {
+        if (e < 0) return (int) Math.pow(b, e); // truncates like any other int result
+        int result = 1;
+        while (e > 0) {
+            if ((e & 1) == 1) result *= b;
+            b *= b;
+            e >>= 1;
+        }
+        return result;
+    }
+
+    void execute(int[] code) {
+        int[] gi = new int[code[GLOBAL_COUNT]];
+        double[] gf = new double[code[GLOBAL_COUNT]];
+        Object[] ga = new Object[code[GLOBAL_COUNT]];
+
+        int pc = code[MAIN_PC];
+        int size = code[MAIN_SIZE];
+        int fp = 0;
+        int csp = 0;
+        ensureRegisters(size);
+        int[] ir = this.ir;
+        double[] fr = this.fr;
+        Object[] ar = this.ar;
+
+        for (;;) {
+            switch (code[pc]) {
+                case HALT:
+                    return;
+
+                case ICONST: ir[fp + code[pc + 1]] = code[pc + 2]; pc += 3; break;
+                case FCONST: fr[fp + code[pc + 1]] = Float.intBitsToFloat(code[pc + 2]); pc += 3; break;
+                case IMOV:   ir[fp + code[pc + 1]] = ir[fp + code[pc + 2]]; pc += 3; break;
+                case FMOV:   fr[fp + code[pc + 1]] = fr[fp + code[pc + 2]]; pc += 3; break;
+                case AMOV:   ar[fp + code[pc + 1]] = ar[fp + code[pc + 2]]; pc += 3; break;
+                case I2F:    fr[fp + code[pc + 1]] = ir[fp + code[pc + 2]]; pc += 3; break;
+
+                case GETI: ir[fp + code[pc + 1]] = gi[code[pc + 2]]; pc += 3; break;
+                case GETF: fr[fp + code[pc + 1]] = gf[code[pc + 2]]; pc += 3; break;
+                case GETA: {
+                    Object v = ga[code[pc + 2]];
+                    if (v == null) throw new RuntimeException("Uninitialized var");
+                    ar[fp + code[pc + 1]] = v;
+                    pc += 3;
+                    break;
+                }
+                case PUTI: gi[code[pc + 1]] = ir[fp + code[pc + 2]]; pc += 3; break;
+                case PUTF: gf[code[pc + 1]] = fr[fp + code[pc + 2]]; pc += 3; break;
+                case PUTA: ga[code[pc + 1]] = ar[fp + code[pc + 2]]; pc += 3; break;
+
+                case IADD: ir[fp + code[pc + 1]] = ir[fp + code[pc + 2]] + ir[fp + code[pc + 3]]; pc += 4; break;
+                case ISUB: ir[fp + code[pc + 1]] = ir[fp + code[pc + 2]] - ir[fp + code[pc + 3]]; pc += 4; break;
+                case IMUL: ir[fp + code[pc + 1]] = ir[fp + code[pc + 2]] * ir[fp + code[pc + 3]]; pc += 4; break;
+                case IDIV: ir[fp + code[pc + 1]] = ir[fp + code[pc + 2]] / ir[fp + code[pc + 3]]; pc += 4; break;
+                case IMOD: ir[fp + code[pc + 1]] = ir[fp + code[pc + 2]] % ir[fp + code[pc + 3]]; pc += 4; break;
+                case IPOW: ir[fp + code[pc + 1]] = intPow(ir[fp + code[pc + 2]], ir[fp + code[pc + 3]]); pc += 4; break;
+                case FADD: fr[fp + code[pc + 1]] = (float) (fr[fp + code[pc + 2]] + fr[fp + code[pc + 3]]); pc += 4; break;
+                case FSUB: fr[fp + code[pc + 1]] = (float) (fr[fp + code[pc + 2]] - fr[fp + code[pc + 3]]); pc += 4; break;
+                case FMUL: fr[fp + code[pc + 1]] = (float) (fr[fp + code[pc + 2]] * fr[fp + code[pc + 3]]); pc += 4; break;
+                case FDIV: fr[fp + code[pc + 1]] = (float) (fr[fp + code[pc + 2]] / fr[fp + code[pc + 3]]); pc += 4; break;
+                case FPOW: fr[fp + code[pc + 1]] = (float) Math.pow(fr[fp + code[pc + 2]], fr[fp + code[pc + 3]]); pc += 4; break;
+                case INEG: ir[fp + code[pc + 1]] = -ir[fp + code[pc + 2]]; pc += 3; break;
+                case FNEG: fr[fp + code[pc + 1]] = (float) -fr[fp + code[pc + 2]]; pc += 3; break;
+                case NOT:  ir[fp + code[pc + 1]] = ir[fp + code[pc + 2]] ^ 1; pc += 3; break;
+
+                case IEQ: ir[fp + code[pc + 1]] = (ir[fp + code[pc + 2]] == ir[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case INE: ir[fp + code[pc + 1]] = (ir[fp + code[pc + 2]] != ir[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case ILT: ir[fp + code[pc + 1]] = (ir[fp + code[pc + 2]] <  ir[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case ILE: ir[fp + code[pc + 1]] = (ir[fp + code[pc + 2]] <= ir[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case IGT: ir[fp + code[pc + 1]] = (ir[fp + code[pc + 2]] >  ir[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case IGE: ir[fp + code[pc + 1]] = (ir[fp + code[pc + 2]] >= ir[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case FEQ: ir[fp + code[pc + 1]] = (fr[fp + code[pc + 2]] == fr[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case FNE: ir[fp + code[pc + 1]] = (fr[fp + code[pc + 2]] != fr[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case FLT: ir[fp + code[pc + 1]] = (fr[fp + code[pc + 2]] <  fr[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case FLE: ir[fp + code[pc + 1]] = (fr[fp + code[pc + 2]] <= fr[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case FGT: ir[fp + code[pc + 1]] = (fr[fp + code[pc + 2]] >  fr[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case FGE: ir[fp + code[pc + 1]] = (fr[fp + code[pc + 2]] >= fr[fp + code[pc + 3]]) ? 1 : 0; pc += 4; break;
+
+                case JMP: pc = code[pc + 1]; break;
+                case JZ:  pc = (ir[fp + code[pc + 1]] == 0) ? code[pc + 2] : pc + 3; break;
+                case JNZ: pc = (ir[fp + code[pc + 1]] != 0) ? code[pc + 2] : pc + 3; break;
+                case IJEQ: pc = (ir[fp + code[pc + 1]] == ir[fp + code[pc + 2]]) ? code[pc + 3] : pc + 4; break;
+                case IJNE: pc = (ir[fp + code[pc + 1]] != ir[fp + code[pc + 2]]) ? code[pc + 3] : pc + 4; break;
+                case IJLT: pc = (ir[fp + code[pc + 1]] <  ir[fp + code[pc + 2]]) ? code[pc + 3] : pc + 4; break;
+                case IJLE: pc = (ir[fp + code[pc + 1]] <= ir[fp + code[pc + 2]]) ? code[pc + 3] : pc + 4; break;
+                case IJGT: pc = (ir[fp + code[pc + 1]] >  ir[fp + code[pc + 2]]) ? code[pc + 3] : pc + 4; break;
+                case IJGE: pc = (ir[fp + code[pc + 1]] >= ir[fp + code[pc + 2]]) ? code[pc + 3] : pc + 4; break;
+
+                case NEWARR: {
+                    int n = code[pc + 3];
+                    ar[fp + code[pc + 1]] = newArray(code[pc + 2], Arrays.copyOfRange(code, pc + 4, pc + 4 + n), 0);
+                    pc += 4 + n;
+                    break;
+                }
+                case ALOADI: {
+                    int[] a = (int[]) ar[fp + code[pc + 2]];
+                    int idx = ir[fp + code[pc + 3]];
+                    if (idx < 0 || idx >= a.length) throw outOfBounds(idx);
+                    ir[fp + code[pc + 1]] = a[idx];
+                    pc += 4;
+                    break;
+                }
+                case ALOADF: {
+                    double[] a = (double[]) ar[fp + code[pc + 2]];
+                    int idx = ir[fp + code[pc + 3]];
+                    if (idx < 0 || idx >= a.length) throw outOfBounds(idx);
+                    fr[fp + code[pc + 1]] = a[idx];
+                    pc += 4;
+                    break;
+                }
+                case ALOADA: {
+                    Object[] a = (Object[]) ar[fp + code[pc + 2]];
+                    int idx = ir[fp + code[pc + 3]];
+                    if (idx < 0 || idx >= a.length) throw outOfBounds(idx);
+                    ar[fp + code[pc + 1]] = a[idx];
+                    pc += 4;
+                    break;
+                }
+                case ASTOREI: {
+                    int[] a = (int[]) ar[fp + code[pc + 1]];
+                    int idx = ir[fp + code[pc + 2]];
+                    if (idx < 0 || idx >= a.length) throw outOfBounds(idx);
+                    a[idx] = ir[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                }
+                case ASTOREF: {
+                    double[] a = (double[]) ar[fp + code[pc + 1]];
+                    int idx = ir[fp + code[pc + 2]];
+                    if (idx < 0 || idx >= a.length) throw outOfBounds(idx);
+                    a[idx] = fr[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                }
+                case ASTOREA: {
+                    Object[] a = (Object[]) ar[fp + code[pc + 1]];
+                    int idx = ir[fp + code[pc + 2]];
+                    if (idx < 0 || idx >= a.length) throw outOfBounds(idx);
+                    a[idx] = ar[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                }
+
+                case CALL: {
+                    int target = code[pc + 1];
+                    int base = fp + code[pc + 2];
+                    int nargs = code[pc + 3];
+                    if (csp + 4 > calls.length) calls = Arrays.copyOf(calls, calls.length * 2);
+                    calls[csp++] = pc + 5;
+                    calls[csp++] = fp;
+                    calls[csp++] = size;
+                    calls[csp++] = code[pc + 4];
+
+                    int callee = fp + size;
+                    size = code[target];
+                    ensureRegisters(callee + size);
+                    ir = this.ir;
+                    fr = this.fr;
+                    ar = this.ar;
+                    for (int k = 0; k < nargs; k++) {
+                        ir[callee + k] = ir[base + k];
+                        fr[callee + k] = fr[base + k];
+                        ar[callee + k] = ar[base + k];
+                    }
+                    Arrays.fill(ir, callee + nargs, callee + size, 0); // locals start at 0, 0.0, false
+                    Arrays.fill(fr, callee + nargs, callee + size, 0.0);
+                    Arrays.fill(ar, callee + nargs, callee + size, null);
+                    fp = callee;
+                    pc = target + 1;
+                    break;
+                }
+                case RET: {
+                    csp -= 4;
+                    pc = calls[csp];
+                    fp = calls[csp + 1];
+                    size = calls[csp + 2];
+                    break;
+                }
+                case RETI: {
+                    int v = ir[fp + code[pc + 1]];
+                    csp -= 4;
+                    pc = calls[csp];
+                    fp = calls[csp + 1];
+                    size = calls[csp + 2];
+                    ir[fp + calls[csp + 3]] = v;
+                    break;
+                }
+                case RETF: {
+                    double v = fr[fp + code[pc + 1]];
+                    csp -= 4;
+                    pc = calls[csp];
+                    fp = calls[csp + 1];
+                    size = calls[csp + 2];
+                    fr[fp + calls[csp + 3]] = v;
+                    break;
+                }
+                case RETA: {
+                    Object v = ar[fp + code[pc + 1]];
+                    csp -= 4;
+                    pc = calls[csp];
+                    fp = calls[csp + 1];
+                    size = calls[csp + 2];
+                    ar[fp + calls[csp + 3]] = v;
+                    break;
+                }
+
+                case RDI: ir[fp + code[pc + 1]] = io.readInt(); pc += 2; break;
+                case RDF: fr[fp + code[pc + 1]] = io.readFloat(); pc += 2; break;
+                case RDB: ir[fp + code[pc + 1]] = io.readBool() ? 1 : 0; pc += 2; break;
+                case WRI: io.printInt(ir[fp + code[pc + 1]]); pc += 2; break;
+                case WRF: io.printFloat(fr[fp + code[pc + 1]]); pc += 2; break;
+                case WRB: io.printBool(ir[fp + code[pc + 1]] != 0); pc += 2; break;
+                case WRL: io.println(); pc += 1; break;
+
+                default:
+                    throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package mocha;
+
+/** How a metered run ended, and the fuel it burned. */
+public final class RunResult {
+
+    public enum Status {
+        COMPLETED,    // the program finished (or returned from main)
+        OUT_OF_FUEL,  // stopped when it had burned its limit
+        CANCELLED,    // interrupted while paused between slices
+        FAILED        // a runtime error, see error()
+    }
+
+    private final Status status;
+    private final long fuelUsed;
+    private final RuntimeException error;
+
+    RunResult(Status status, long fuelUsed, RuntimeException error) {
+        this.status = status;
+        this.fuelUsed = fuelUsed;
+        this.error = error;
+    }
+
+    public Status status()           { return status; }
+    public long fuelUsed()           { return fuelUsed; }
+    public RuntimeException error()  { return error; }
+
+    @Override
+    public String toString() {
+        return status + " after " + fuelUsed + " fuel" + ((error != null) ? ": " + error : "");
+    }
+}
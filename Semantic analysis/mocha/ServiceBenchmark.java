@@ -0,0 +1,52 @@
+package mocha;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Measures ExecutionService throughput on one program:
+ *
+ *     java mocha.ServiceBenchmark <source> [data file] [programs] [parallelism]
+ *
+ * Submits the program the given number of times (default 1000) at parallelism 1,
+ * then at the given parallelism (default: the number of processors), after one
+ * warm-up round each, and reports programs per second.
+ */
+public class ServiceBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ServiceBenchmark <source> [data file] [programs] [parallelism]");
+            System.exit(-1);
+        }
+        String source = new String(Files.readAllBytes(Paths.get(args[0])));
+        byte[] data = (args.length > 1) ? Files.readAllBytes(Paths.get(args[1])) : new byte[0];
+        int programs = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+        int parallelism = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        double serial = 0;
+        System.out.printf("%-12s %12s %12s %8s%n", "parallelism", "ms", "programs/s", "speedup");
+        for (int p : (parallelism == 1) ? new int[] {1} : new int[] {1, parallelism}) {
+            try (ExecutionService service = new ExecutionService(p, Fuel.UNLIMITED)) {
+                round(service, source, data, programs);
+                long start = System.nanoTime();
+                round(service, source, data, programs);
+                long nanos = System.nanoTime() - start;
+                double rate = programs / (nanos / 1e9);
+                if (serial == 0) serial = rate;
+                System.out.printf("%-12d %12.3f %12.1f %7.2fx%n", p, nanos / 1e6, rate, rate / serial);
+            }
+        }
+    }
+
+    private static void round(ExecutionService service, String source, byte[] data, int programs) {
+        CompletableFuture<?>[] runs = new CompletableFuture<?>[programs];
+        for (int i = 0; i < programs; i++) runs[i] = service.submit(source, data);
+        CompletableFuture.allOf(runs).join();
+        ExecutionService.Execution e = service.submit(source, data).join();
+        if (e.errors() != null) throw new IllegalStateException(e.errors());
+        if (e.result().status() != RunResult.Status.COMPLETED) throw new IllegalStateException(e.result().toString());
+    }
+}
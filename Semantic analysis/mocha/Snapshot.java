@@ -0,0 +1,222 @@
+package mocha;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ast.TreeWalker;
+import types.DependencyGraph;
+
+/**
+ * The state of a MiniInterpreter run between two statements of the main sequence,
+ * saved so a later run of the same program can resume there instead of repeating
+ * the statements before it. Between main statements no call is active, so the state
+ * is the global slots, the arrays they reach and how much input has been read; the
+ * restored run skips that input and continues with the next statement. Output of
+ * the skipped statements is not repeated.
+ *
+ * The file holds a header and the global slots, then every array reachable from a
+ * global: each root array (its extents and storage), the arrays assigned to its
+ * sub-arrays, and the root, depth and offset of each global array, so that views
+ * and aliases come back as they were. A restore maps the file and copies the
+ * storage out in bulk.
+ */
+final class Snapshot {
+
+    private static final int MAGIC = 0x4d534e50; // "MSNP"
+    private static final int VERSION = 2;
+    private static final int CHUNK = 1 << 16;
+
+    private Snapshot() {
+    }
+
+    /** Saves to file the state as main is about to run its statement-th statement (from 0). */
+    static void save(Path file, ast.Computation prog, int statement, Object[] globals, long[] globalPrims, MochaIO io) {
+        // the roots reachable from the globals, directly or through assigned sub-arrays
+        Map<FlatArray, Integer> ids = new IdentityHashMap<>();
+        List<FlatArray> roots = new ArrayList<>();
+        for (Object g : globals) {
+            if (g != null) reach(((FlatArray) g).root, ids, roots);
+        }
+        for (int r = 0; r < roots.size(); r++) {
+            if (roots.get(r).aliases == null) continue;
+            for (FlatArray a : roots.get(r).aliases.values()) reach(a.root, ids, roots);
+        }
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(CHUNK);
+            buf.putInt(MAGIC).putInt(VERSION).putLong(fingerprint(prog)).putInt(statement).putLong(io.inputConsumed());
+            buf.putInt(globals.length);
+            for (int i = 0; i < globals.length; i++) {
+                buf = room(ch, buf, 8);
+                buf.putLong(globalPrims[i]);
+            }
+
+            room(ch, buf, 4).putInt(roots.size());
+            for (FlatArray root : roots) {
+                buf = room(ch, buf, 12 + 4 * root.extents.length);
+                buf.putInt(root.extents.length);
+                for (int e : root.extents) buf.putInt(e);
+                writeStorage(ch, buf, data(root));
+            }
+            for (FlatArray root : roots) {
+                buf = room(ch, buf, 4);
+                buf.putInt((root.aliases != null) ? root.aliases.size() : 0);
+                if (root.aliases == null) continue;
+                for (Map.Entry<Long, FlatArray> e : root.aliases.entrySet()) {
+                    buf = room(ch, buf, 20);
+                    buf.putLong(e.getKey());
+                    putRef(buf, e.getValue(), ids);
+                }
+            }
+            for (Object g : globals) {
+                buf = room(ch, buf, 12);
+                putRef(buf, (FlatArray) g, ids);
+            }
+            write(ch, buf);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void reach(FlatArray root, Map<FlatArray, Integer> ids, List<FlatArray> roots) {
+        if (ids.putIfAbsent(root, roots.size()) == null) roots.add(root);
+    }
+
+    // an array as the id of its root, its depth and its offset, or -1 for none
+    private static void putRef(ByteBuffer buf, FlatArray a, Map<FlatArray, Integer> ids) {
+        if (a == null) {
+            buf.putInt(-1).putInt(0).putInt(0);
+        } else {
+            buf.putInt(ids.get(a.root)).putInt(a.depth).putInt(a.offset);
+        }
+    }
+
+    private static void writeStorage(FileChannel ch, ByteBuffer buf, Object s) throws IOException {
+        if (s instanceof int[]) {
+            int[] v = (int[]) s;
+            buf.putInt(MiniInterpreter.INT).putInt(v.length);
+            for (int i = 0; i < v.length; ) {
+                room(ch, buf, 4);
+                int n = Math.min(v.length - i, buf.remaining() / 4);
+                buf.asIntBuffer().put(v, i, n);
+                buf.position(buf.position() + 4 * n);
+                i += n;
+            }
+        } else if (s instanceof double[]) {
+            double[] v = (double[]) s;
+            buf.putInt(MiniInterpreter.FLOAT).putInt(v.length);
+            for (int i = 0; i < v.length; ) {
+                room(ch, buf, 8);
+                int n = Math.min(v.length - i, buf.remaining() / 8);
+                buf.asDoubleBuffer().put(v, i, n);
+                buf.position(buf.position() + 8 * n);
+                i += n;
+            }
+        } else {
+            boolean[] v = (boolean[]) s;
+            buf.putInt(MiniInterpreter.BOOL).putInt(v.length);
+            for (boolean b : v) {
+                room(ch, buf, 1);
+                buf.put((byte) (b ? 1 : 0));
+            }
+        }
+    }
+
+    /**
+     * Restores the state in file into globals and globalPrims, skips the input the
+     * saving run had read, and returns the main statement to continue with.
+     */
+    static int restore(Path file, ast.Computation prog, Object[] globals, long[] globalPrims, MochaIO io) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) throw new RuntimeException("Not a snapshot: " + file);
+            if (buf.getLong() != fingerprint(prog)) throw new RuntimeException("Snapshot of another program: " + file);
+            int statement = buf.getInt();
+            long consumed = buf.getLong();
+            if (buf.getInt() != globals.length) throw new RuntimeException("Snapshot of another program: " + file);
+            for (int i = 0; i < globals.length; i++) globalPrims[i] = buf.getLong();
+
+            FlatArray[] roots = new FlatArray[buf.getInt()];
+            for (int r = 0; r < roots.length; r++) {
+                int[] extents = new int[buf.getInt()];
+                for (int k = 0; k < extents.length; k++) extents[k] = buf.getInt();
+                roots[r] = FlatArray.over(readStorage(buf), extents);
+            }
+            for (FlatArray root : roots) {
+                for (int n = buf.getInt(); n > 0; n--) {
+                    long key = buf.getLong();
+                    root.setAlias((int) (key >>> 32), (int) key, getRef(buf, roots));
+                }
+            }
+            for (int i = 0; i < globals.length; i++) globals[i] = getRef(buf, roots);
+            io.skipInput(consumed);
+            return statement;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static FlatArray getRef(ByteBuffer buf, FlatArray[] roots) {
+        int id = buf.getInt(), depth = buf.getInt(), offset = buf.getInt();
+        if (id < 0) return null;
+        return (depth == 0 && offset == 0) ? roots[id] : roots[id].view(depth, offset);
+    }
+
+    private static Object readStorage(ByteBuffer buf) {
+        int kind = buf.getInt(), n = buf.getInt();
+        if (kind == MiniInterpreter.INT) {
+            int[] v = new int[n];
+            buf.asIntBuffer().get(v);
+            buf.position(buf.position() + 4 * n);
+            return v;
+        } else if (kind == MiniInterpreter.FLOAT) {
+            double[] v = new double[n];
+            buf.asDoubleBuffer().get(v);
+            buf.position(buf.position() + 8 * n);
+            return v;
+        }
+        boolean[] v = new boolean[n];
+        for (int i = 0; i < n; i++) v[i] = buf.get() != 0;
+        return v;
+    }
+
+    private static Object data(FlatArray a) {
+        return (a.ints != null) ? a.ints : (a.floats != null) ? a.floats : a.bools;
+    }
+
+    // Identifies the program by its whole tree (globals, functions and main), as
+    // a 64-bit FNV-1a hash of the DependencyGraph labels of a pre-order walk
+    private static long fingerprint(ast.Computation prog) {
+        long h = 0xcbf29ce484222325L;
+        for (ast.Visitable n : TreeWalker.preOrder(prog)) {
+            String label = DependencyGraph.label(n);
+            for (int i = 0; i < label.length(); i++) {
+                h = (h ^ label.charAt(i)) * 0x100000001b3L;
+            }
+            h *= 0x100000001b3L; // a 0 between labels
+        }
+        return h;
+    }
+
+    // buf with at least n bytes free, writing it out first if need be
+    private static ByteBuffer room(FileChannel ch, ByteBuffer buf, int n) throws IOException {
+        if (buf.remaining() < n) write(ch, buf);
+        return buf;
+    }
+
+    private static void write(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+}
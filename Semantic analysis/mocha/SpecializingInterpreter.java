@@ -0,0 +1,1608 @@
+package mocha;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import ast.AST;
+
+/**
+ * Self-specializing interpreter. The tree is converted into executable nodes that
+ * start out uninitialized and, the first time they run, replace themselves in their
+ * parent with a version specialized for the values they saw: an int addition, a read
+ * of an int slot, an array read at a constant index, a call bound to its declaration.
+ * A specialized node that meets a value it was not built for rewrites itself to the
+ * generic version and carries on. Each specialized node does one small thing, which
+ * gives the JIT monomorphic code to inline.
+ *
+ * Typed paths (executeInt, executeFloat, executeBool) pass primitives; a child that
+ * cannot produce the requested type throws UnexpectedResult carrying the value it did
+ * produce. Variables live in Frames with unboxed slots tagged by the kind of value
+ * they hold. Arrays are nested Object[] rows of boxed elements (MiniInterpreter
+ * keeps one flat primitive array instead, see FlatArray); results are the same.
+ */
+final class SpecializingInterpreter implements Engine {
+
+    // frame slot tags
+    static final byte T_NONE = 0, T_INT = 1, T_FLOAT = 2, T_BOOL = 3, T_REF = 4;
+
+    // operators
+    static final int ADD = 0, SUB = 1, MUL = 2, DIV = 3, MOD = 4;
+    static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5; // AST.Relation.Op order
+
+    private final MochaIO io;
+    private FrameResolver frames;
+    private Frame globals;
+    private final Map<AST.FunctionDeclaration, CallTarget> targets = new IdentityHashMap<>();
+
+    SpecializingInterpreter(InputStream in, java.io.PrintStream out) {
+        this.io = new MochaIO(in, out);
+    }
+
+    @Override
+    public void run(ast.Computation prog, FrameResolver frames) {
+        this.frames = frames;
+        globals = new Frame(frames.globalCount());
+        for (AST.Declaration d : prog.variables()) {
+            AST.VariableDeclaration vd = (AST.VariableDeclaration) d;
+            initSlot(globals, vd.getIdentifier().getSlot(), ((AST.TypeNode) vd.getTypeNode()).getActualType());
+        }
+
+        Block main = new Builder().block(prog.mainStatementSequence());
+        Root root = new Root(main);
+        try {
+            root.body.execute(new Frame(0));
+        } catch (ReturnException r) {
+            // return from main ends the program
+        } finally {
+            io.flush();
+        }
+    }
+
+    // ---------- runtime ----------
+
+    /** Variables of one activation (or the globals); slot kinds are tracked in tags. */
+    static final class Frame {
+        final long[] prims;
+        final Object[] refs;
+        final byte[] tags;
+        long retPrim;       // return value, tagged like a slot
+        Object retRef;
+        byte retTag;
+
+        Frame(int size) {
+            prims = new long[size];
+            refs = new Object[size];
+            tags = new byte[size];
+        }
+
+        void setInt(int slot, int v)         { prims[slot] = v; tags[slot] = T_INT; }
+        void setFloat(int slot, double v)    { prims[slot] = Double.doubleToRawLongBits(v); tags[slot] = T_FLOAT; }
+        void setBool(int slot, boolean v)    { prims[slot] = v ? 1 : 0; tags[slot] = T_BOOL; }
+        void setRef(int slot, Object v)      { refs[slot] = v; tags[slot] = T_REF; }
+
+        void setGeneric(int slot, Object v) {
+            if (v instanceof Integer)      setInt(slot, (Integer) v);
+            else if (v instanceof Double)  setFloat(slot, (Double) v);
+            else if (v instanceof Boolean) setBool(slot, (Boolean) v);
+            else                           setRef(slot, v);
+        }
+
+        Object getGeneric(int slot) {
+            return box(tags[slot], prims[slot], refs[slot]);
+        }
+
+        Object returnValue() {
+            return box(retTag, retPrim, retRef);
+        }
+
+        static Object box(byte tag, long prim, Object ref) {
+            switch (tag) {
+                case T_INT:   return (int) prim;
+                case T_FLOAT: return Double.longBitsToDouble(prim);
+                case T_BOOL:  return prim != 0;
+                default:      return ref;
+            }
+        }
+    }
+
+    private void initSlot(Frame f, int slot, types.Type t) {
+        switch (MiniInterpreter.kind(t)) {
+            case MiniInterpreter.INT:   f.setInt(slot, 0); break;
+            case MiniInterpreter.FLOAT: f.setFloat(slot, 0.0); break;
+            case MiniInterpreter.BOOL:  f.setBool(slot, false); break;
+            default:                    f.setRef(slot, allocArray(t));
+        }
+    }
+
+    private static Object defaultElement(types.Type t) {
+        if (t instanceof types.IntType)   return Integer.valueOf(0);
+        if (t instanceof types.FloatType) return Double.valueOf(0.0);
+        if (t instanceof types.BoolType)  return Boolean.FALSE;
+        return allocArray(t);
+    }
+
+    private static Object allocArray(types.Type t) {
+        if (!(t instanceof types.ArrayType)) return null;
+        types.ArrayType at = (types.ArrayType) t;
+        if (at.getExtent() < 0) return null;
+        Object[] arr = new Object[at.getExtent()];
+        for (int i = 0; i < arr.length; i++) arr[i] = defaultElement(at.getBase());
+        return arr;
+    }
+
+    /** Thrown by a typed execute method when its value has another type. */
+    static final class UnexpectedResult extends Exception {
+        private static final long serialVersionUID = 1L;
+        final Object result;
+
+        UnexpectedResult(Object result) {
+            super(null, null, false, false);
+            this.result = result;
+        }
+    }
+
+    /** Unwinds a call; the value is in the callee frame. */
+    static final class ReturnException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final ReturnException INSTANCE = new ReturnException();
+
+        private ReturnException() {
+            super(null, null, false, false);
+        }
+    }
+
+    static int expectInt(Object v) throws UnexpectedResult {
+        if (v instanceof Integer) return (Integer) v;
+        throw new UnexpectedResult(v);
+    }
+
+    static double expectFloat(Object v) throws UnexpectedResult {
+        if (v instanceof Double || v instanceof Integer) return ((Number) v).doubleValue();
+        throw new UnexpectedResult(v);
+    }
+
+    static boolean expectBool(Object v) throws UnexpectedResult {
+        if (v instanceof Boolean) return (Boolean) v;
+        throw new UnexpectedResult(v);
+    }
+
+    static boolean condition(Expr e, Frame f) {
+        try {
+            return e.executeBool(f);
+        } catch (UnexpectedResult u) {
+            throw new RuntimeException("Condition is not boolean: " + u.result);
+        }
+    }
+
+    // ---------- node base classes ----------
+
+    abstract static class Node {
+        Node parent;
+
+        final <T extends Node> T adopt(T child) {
+            if (child != null) child.parent = this;
+            return child;
+        }
+
+        /** Puts replacement where this node is in its parent. */
+        final <T extends Node> T replace(T replacement) {
+            replacement.parent = parent;
+            parent.replaceChild(this, replacement);
+            return replacement;
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            throw new IllegalStateException(getClass().getSimpleName() + " has no rewritable children");
+        }
+    }
+
+    /** Holds the top node of a body so that it can be replaced like any other. */
+    static final class Root extends Node {
+        Stmt body;
+
+        Root(Stmt body) {
+            this.body = adopt(body);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) {
+            body = (Stmt) replacement;
+        }
+    }
+
+    abstract static class Stmt extends Node {
+        abstract void execute(Frame f);
+    }
+
+    abstract static class Expr extends Node {
+        abstract Object executeGeneric(Frame f);
+
+        int executeInt(Frame f) throws UnexpectedResult {
+            return expectInt(executeGeneric(f));
+        }
+
+        double executeFloat(Frame f) throws UnexpectedResult {
+            return expectFloat(executeGeneric(f));
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            return expectBool(executeGeneric(f));
+        }
+    }
+
+    abstract static class IntExpr extends Expr {
+        @Override
+        abstract int executeInt(Frame f) throws UnexpectedResult;
+
+        @Override
+        Object executeGeneric(Frame f) {
+            try {
+                return executeInt(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeFloat(Frame f) throws UnexpectedResult {
+            try {
+                return executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(e.result);
+            }
+        }
+    }
+
+    abstract static class FloatExpr extends Expr {
+        @Override
+        abstract double executeFloat(Frame f) throws UnexpectedResult;
+
+        @Override
+        Object executeGeneric(Frame f) {
+            try {
+                return executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+    }
+
+    abstract static class BoolExpr extends Expr {
+        @Override
+        abstract boolean executeBool(Frame f) throws UnexpectedResult;
+
+        @Override
+        Object executeGeneric(Frame f) {
+            try {
+                return executeBool(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+    }
+
+    // ---------- constants ----------
+
+    static final class IntConst extends IntExpr {
+        final int value;
+        IntConst(int value) { this.value = value; }
+        @Override int executeInt(Frame f) { return value; }
+    }
+
+    static final class FloatConst extends FloatExpr {
+        final double value;
+        FloatConst(double value) { this.value = value; }
+        @Override double executeFloat(Frame f) { return value; }
+    }
+
+    static final class BoolConst extends BoolExpr {
+        final boolean value;
+        BoolConst(boolean value) { this.value = value; }
+        @Override boolean executeBool(Frame f) { return value; }
+    }
+
+    // ---------- variables ----------
+
+    /** A global slot if global is set, else a slot of the current frame. */
+    abstract static class SlotNode extends Expr {
+        final Frame global;
+        final int slot;
+
+        SlotNode(Frame global, int slot) {
+            this.global = global;
+            this.slot = slot;
+        }
+
+        final Frame frame(Frame f) {
+            return global != null ? global : f;
+        }
+
+        final Object generalize(Frame f) {
+            return replace(new GenericRead(global, slot)).executeGeneric(f);
+        }
+    }
+
+    static final class UninitializedRead extends SlotNode {
+        UninitializedRead(Frame global, int slot) { super(global, slot); }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Frame fr = frame(f);
+            switch (fr.tags[slot]) {
+                case T_INT:   replace(new IntRead(global, slot)); break;
+                case T_FLOAT: replace(new FloatRead(global, slot)); break;
+                case T_BOOL:  replace(new BoolRead(global, slot)); break;
+                default:      replace(new GenericRead(global, slot));
+            }
+            return fr.getGeneric(slot);
+        }
+    }
+
+    static final class IntRead extends SlotNode {
+        IntRead(Frame global, int slot) { super(global, slot); }
+
+        @Override
+        int executeInt(Frame f) throws UnexpectedResult {
+            Frame fr = frame(f);
+            if (fr.tags[slot] == T_INT) return (int) fr.prims[slot];
+            throw new UnexpectedResult(generalize(f));
+        }
+
+        @Override
+        double executeFloat(Frame f) throws UnexpectedResult {
+            return executeInt(f);
+        }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Frame fr = frame(f);
+            return (fr.tags[slot] == T_INT) ? (Object) (int) fr.prims[slot] : generalize(f);
+        }
+    }
+
+    static final class FloatRead extends SlotNode {
+        FloatRead(Frame global, int slot) { super(global, slot); }
+
+        @Override
+        double executeFloat(Frame f) throws UnexpectedResult {
+            Frame fr = frame(f);
+            if (fr.tags[slot] == T_FLOAT) return Double.longBitsToDouble(fr.prims[slot]);
+            throw new UnexpectedResult(generalize(f));
+        }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Frame fr = frame(f);
+            return (fr.tags[slot] == T_FLOAT) ? (Object) Double.longBitsToDouble(fr.prims[slot]) : generalize(f);
+        }
+    }
+
+    static final class BoolRead extends SlotNode {
+        BoolRead(Frame global, int slot) { super(global, slot); }
+
+        @Override
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            Frame fr = frame(f);
+            if (fr.tags[slot] == T_BOOL) return fr.prims[slot] != 0;
+            throw new UnexpectedResult(generalize(f));
+        }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Frame fr = frame(f);
+            return (fr.tags[slot] == T_BOOL) ? (Object) (fr.prims[slot] != 0) : generalize(f);
+        }
+    }
+
+    static final class GenericRead extends SlotNode {
+        GenericRead(Frame global, int slot) { super(global, slot); }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Object v = frame(f).getGeneric(slot);
+            if (v == null) throw new RuntimeException("Uninitialized var");
+            return v;
+        }
+    }
+
+    /** Stores a value into a slot of the frame given to executeInto. */
+    abstract static class WriteNode extends Stmt {
+        final Frame global;
+        final int slot;
+        Expr value;
+
+        WriteNode(Frame global, int slot, Expr value) {
+            this.global = global;
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        final void execute(Frame f) {
+            executeInto(f, global != null ? global : f);
+        }
+
+        /** Evaluates the value in from and stores it into the slot of into. */
+        abstract void executeInto(Frame from, Frame into);
+
+        final void generalize(Frame into, Object v) {
+            replace(new GenericWrite(global, slot, value));
+            into.setGeneric(slot, v);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) {
+            value = (Expr) replacement;
+        }
+    }
+
+    static final class UninitializedWrite extends WriteNode {
+        UninitializedWrite(Frame global, int slot, Expr value) { super(global, slot, value); }
+
+        @Override
+        void executeInto(Frame from, Frame into) {
+            Object v = value.executeGeneric(from);
+            if (v instanceof Integer)      replace(new IntWrite(global, slot, value));
+            else if (v instanceof Double)  replace(new FloatWrite(global, slot, value));
+            else if (v instanceof Boolean) replace(new BoolWrite(global, slot, value));
+            else                           replace(new GenericWrite(global, slot, value));
+            into.setGeneric(slot, v);
+        }
+    }
+
+    static final class IntWrite extends WriteNode {
+        IntWrite(Frame global, int slot, Expr value) { super(global, slot, value); }
+
+        @Override
+        void executeInto(Frame from, Frame into) {
+            try {
+                into.setInt(slot, value.executeInt(from));
+            } catch (UnexpectedResult e) {
+                generalize(into, e.result);
+            }
+        }
+    }
+
+    static final class FloatWrite extends WriteNode {
+        FloatWrite(Frame global, int slot, Expr value) { super(global, slot, value); }
+
+        @Override
+        void executeInto(Frame from, Frame into) {
+            try {
+                into.setFloat(slot, value.executeFloat(from));
+            } catch (UnexpectedResult e) {
+                generalize(into, e.result);
+            }
+        }
+    }
+
+    static final class BoolWrite extends WriteNode {
+        BoolWrite(Frame global, int slot, Expr value) { super(global, slot, value); }
+
+        @Override
+        void executeInto(Frame from, Frame into) {
+            try {
+                into.setBool(slot, value.executeBool(from));
+            } catch (UnexpectedResult e) {
+                generalize(into, e.result);
+            }
+        }
+    }
+
+    static final class GenericWrite extends WriteNode {
+        GenericWrite(Frame global, int slot, Expr value) { super(global, slot, value); }
+
+        @Override
+        void executeInto(Frame from, Frame into) {
+            into.setGeneric(slot, value.executeGeneric(from));
+        }
+    }
+
+    // ---------- arrays ----------
+
+    static Object element(Object[] arr, int idx, boolean checked) {
+        if (checked && (idx < 0 || idx >= arr.length)) {
+            throw new RuntimeException("Index out of bounds: " + idx);
+        }
+        return arr[idx];
+    }
+
+    abstract static class ArrayNode extends Expr {
+        Expr array, index;
+        final boolean inBounds; // proven by the type checker
+
+        ArrayNode(Expr array, Expr index, boolean inBounds) {
+            this.array = adopt(array);
+            this.index = adopt(index);
+            this.inBounds = inBounds;
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) {
+            if (array == old) array = (Expr) replacement;
+            if (index == old) index = (Expr) replacement;
+        }
+    }
+
+    static final class UninitializedArrayRead extends ArrayNode {
+        UninitializedArrayRead(Expr array, Expr index, boolean inBounds) { super(array, index, inBounds); }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Object[] arr = (Object[]) array.executeGeneric(f);
+            int idx = (Integer) index.executeGeneric(f);
+            if (index instanceof IntConst && idx >= 0 && idx < arr.length) {
+                replace(new ConstIndexArrayRead(array, (IntConst) index, inBounds));
+            } else {
+                replace(new ArrayRead(array, index, inBounds));
+            }
+            return element(arr, idx, true);
+        }
+    }
+
+    /** Read at a literal index; assumes it is within every array seen here. */
+    static final class ConstIndexArrayRead extends ArrayNode {
+        final int idx;
+
+        ConstIndexArrayRead(Expr array, IntConst index, boolean inBounds) {
+            super(array, index, inBounds);
+            this.idx = index.value;
+        }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Object[] arr = (Object[]) array.executeGeneric(f);
+            if (idx < arr.length) return arr[idx];
+            replace(new ArrayRead(array, index, inBounds));
+            return element(arr, idx, true);
+        }
+    }
+
+    static final class ArrayRead extends ArrayNode {
+        ArrayRead(Expr array, Expr index, boolean inBounds) { super(array, index, inBounds); }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Object[] arr = (Object[]) array.executeGeneric(f);
+            try {
+                return element(arr, index.executeInt(f), !inBounds);
+            } catch (UnexpectedResult e) {
+                throw new RuntimeException("Array index is not an int: " + e.result);
+            }
+        }
+    }
+
+    static final class ArrayWrite extends Stmt {
+        Expr array, index, value;
+        final boolean inBounds;
+
+        ArrayWrite(Expr array, Expr index, Expr value, boolean inBounds) {
+            this.array = adopt(array);
+            this.index = adopt(index);
+            this.value = adopt(value);
+            this.inBounds = inBounds;
+        }
+
+        @Override
+        void execute(Frame f) {
+            Object v = value.executeGeneric(f); // right-hand side first
+            Object base = array.executeGeneric(f);
+            if (!(base instanceof Object[])) throw new RuntimeException("Assigning into non-array");
+            Object[] arr = (Object[]) base;
+            int idx;
+            try {
+                idx = index.executeInt(f);
+            } catch (UnexpectedResult e) {
+                throw new RuntimeException("Array index is not an int");
+            }
+            if (!inBounds && (idx < 0 || idx >= arr.length)) {
+                throw new RuntimeException("Index out of bounds: " + idx);
+            }
+            arr[idx] = v;
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) {
+            if (array == old) array = (Expr) replacement;
+            if (index == old) index = (Expr) replacement;
+            if (value == old) value = (Expr) replacement;
+        }
+    }
+
+    // ---------- arithmetic ----------
+
+    static int intOp(int op, int a, int b) {
+        switch (op) {
+            case ADD: return a + b;
+            case SUB: return a - b;
+            case MUL: return a * b;
+            case DIV: return a / b;
+            default:  return a % b;
+        }
+    }
+
+    static double floatOp(int op, double a, double b) {
+        switch (op) {
+            case ADD: return (float) (a + b);
+            case SUB: return (float) (a - b);
+            case MUL: return (float) (a * b);
+            case DIV: return (float) (a / b);
+            default:  throw new RuntimeException("Modulo requires int operands at runtime");
+        }
+    }
+
+    static Object genericOp(int op, Object l, Object r) {
+        if (l instanceof Integer && r instanceof Integer) return intOp(op, (Integer) l, (Integer) r);
+        if (l instanceof Number && r instanceof Number) {
+            return floatOp(op, ((Number) l).doubleValue(), ((Number) r).doubleValue());
+        }
+        throw new RuntimeException("Arithmetic on non-numeric operands: " + l + ", " + r);
+    }
+
+    abstract static class BinaryNode extends Expr {
+        final int op;
+        Expr left, right;
+
+        BinaryNode(int op, Expr left, Expr right) {
+            this.op = op;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) {
+            if (left == old) left = (Expr) replacement;
+            if (right == old) right = (Expr) replacement;
+        }
+    }
+
+    static final class UninitializedArith extends BinaryNode {
+        UninitializedArith(int op, Expr left, Expr right) { super(op, left, right); }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Object l = left.executeGeneric(f);
+            Object r = right.executeGeneric(f);
+            if (l instanceof Integer && r instanceof Integer)   replace(new IntArith(op, left, right));
+            else if (l instanceof Number && r instanceof Number) replace(new FloatArith(op, left, right));
+            else                                                replace(new GenericArith(op, left, right));
+            return genericOp(op, l, r);
+        }
+    }
+
+    static final class IntArith extends BinaryNode {
+        IntArith(int op, Expr left, Expr right) { super(op, left, right); }
+
+        @Override
+        int executeInt(Frame f) throws UnexpectedResult {
+            int a, b;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(generalize(e.result, right.executeGeneric(f)));
+            }
+            try {
+                b = right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(generalize(a, e.result));
+            }
+            return intOp(op, a, b);
+        }
+
+        @Override
+        double executeFloat(Frame f) throws UnexpectedResult {
+            try {
+                return executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(e.result);
+            }
+        }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            try {
+                return executeInt(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+
+        private Object generalize(Object l, Object r) {
+            replace(new GenericArith(op, left, right));
+            return genericOp(op, l, r);
+        }
+    }
+
+    static final class FloatArith extends BinaryNode {
+        FloatArith(int op, Expr left, Expr right) { super(op, left, right); }
+
+        @Override
+        double executeFloat(Frame f) throws UnexpectedResult {
+            double a, b;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(generalize(e.result, right.executeGeneric(f)));
+            }
+            try {
+                b = right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(generalize(a, e.result));
+            }
+            return floatOp(op, a, b);
+        }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            try {
+                return executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+
+        private Object generalize(Object l, Object r) {
+            replace(new GenericArith(op, left, right));
+            return genericOp(op, l, r);
+        }
+    }
+
+    static final class GenericArith extends BinaryNode {
+        GenericArith(int op, Expr left, Expr right) { super(op, left, right); }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Object l = left.executeGeneric(f);
+            return genericOp(op, l, right.executeGeneric(f));
+        }
+    }
+
+    static Object genericPow(Object l, Object r) {
+        if (l instanceof Integer && r instanceof Integer) return intPow((Integer) l, (Integer) r);
+        return floatPow(((Number) l).doubleValue(), ((Number) r).doubleValue());
+    }
+
+    static int intPow(int b, int e) {
+        if (e < 0) return (int) Math.pow(b, e);
+        int result = 1;
+        while (e > 0) {
+            if ((e & 1) == 1) result *= b;
+            b *= b;
+            e >>= 1;
+        }
+        return result;
+    }
+
+    static double floatPow(double b, double e) {
+        return (float) Math.pow(b, e);
+    }
+
+    static final class UninitializedPow extends BinaryNode {
+        UninitializedPow(Expr base, Expr exponent) { super(0, base, exponent); }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Object l = left.executeGeneric(f);
+            Object r = right.executeGeneric(f);
+            if (l instanceof Integer && r instanceof Integer) replace(new IntPow(left, right));
+            else                                              replace(new GenericPow(left, right));
+            return genericPow(l, r);
+        }
+    }
+
+    static final class IntPow extends BinaryNode {
+        IntPow(Expr base, Expr exponent) { super(0, base, exponent); }
+
+        @Override
+        int executeInt(Frame f) throws UnexpectedResult {
+            int a, b;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(generalize(e.result, right.executeGeneric(f)));
+            }
+            try {
+                b = right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(generalize(a, e.result));
+            }
+            return intPow(a, b);
+        }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            try {
+                return executeInt(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+
+        private Object generalize(Object l, Object r) {
+            replace(new GenericPow(left, right));
+            return genericPow(l, r);
+        }
+    }
+
+    static final class GenericPow extends BinaryNode {
+        GenericPow(Expr base, Expr exponent) { super(0, base, exponent); }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Object l = left.executeGeneric(f);
+            return genericPow(l, right.executeGeneric(f));
+        }
+    }
+
+    static final class UninitializedNeg extends Expr {
+        Expr operand;
+
+        UninitializedNeg(Expr operand) { this.operand = adopt(operand); }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            Object v = operand.executeGeneric(f);
+            if (v instanceof Integer) {
+                replace(new IntNeg(operand));
+                return -(Integer) v;
+            }
+            replace(new FloatNeg(operand));
+            return (double) (float) -((Number) v).doubleValue();
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { operand = (Expr) replacement; }
+    }
+
+    static final class IntNeg extends IntExpr {
+        Expr operand;
+
+        IntNeg(Expr operand) { this.operand = adopt(operand); }
+
+        @Override
+        int executeInt(Frame f) throws UnexpectedResult {
+            try {
+                return -operand.executeInt(f);
+            } catch (UnexpectedResult e) {
+                replace(new FloatNeg(operand));
+                throw new UnexpectedResult((double) (float) -expectFloat(e.result));
+            }
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { operand = (Expr) replacement; }
+    }
+
+    static final class FloatNeg extends FloatExpr {
+        Expr operand;
+
+        FloatNeg(Expr operand) { this.operand = adopt(operand); }
+
+        @Override
+        double executeFloat(Frame f) throws UnexpectedResult {
+            return (float) -operand.executeFloat(f);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { operand = (Expr) replacement; }
+    }
+
+    // ---------- logic and comparison ----------
+
+    static final class Not extends BoolExpr {
+        Expr operand;
+
+        Not(Expr operand) { this.operand = adopt(operand); }
+
+        @Override
+        boolean executeBool(Frame f) {
+            return !condition(operand, f);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { operand = (Expr) replacement; }
+    }
+
+    static final class And extends BoolExpr {
+        Expr left, right;
+
+        And(Expr left, Expr right) { this.left = adopt(left); this.right = adopt(right); }
+
+        @Override
+        boolean executeBool(Frame f) {
+            return condition(left, f) && condition(right, f);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) {
+            if (left == old) left = (Expr) replacement;
+            if (right == old) right = (Expr) replacement;
+        }
+    }
+
+    static final class Or extends BoolExpr {
+        Expr left, right;
+
+        Or(Expr left, Expr right) { this.left = adopt(left); this.right = adopt(right); }
+
+        @Override
+        boolean executeBool(Frame f) {
+            return condition(left, f) || condition(right, f);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) {
+            if (left == old) left = (Expr) replacement;
+            if (right == old) right = (Expr) replacement;
+        }
+    }
+
+    static boolean compare(int op, int a, int b) {
+        switch (op) {
+            case EQ: return a == b;
+            case NE: return a != b;
+            case LT: return a < b;
+            case LE: return a <= b;
+            case GT: return a > b;
+            default: return a >= b;
+        }
+    }
+
+    static boolean compare(int op, double a, double b) {
+        switch (op) {
+            case EQ: return a == b;
+            case NE: return a != b;
+            case LT: return a < b;
+            case LE: return a <= b;
+            case GT: return a > b;
+            default: return a >= b;
+        }
+    }
+
+    static boolean genericCompare(int op, Object l, Object r) {
+        if (l instanceof Integer && r instanceof Integer) return compare(op, (int) (Integer) l, (int) (Integer) r);
+        if (l instanceof Number && r instanceof Number) {
+            return compare(op, ((Number) l).doubleValue(), ((Number) r).doubleValue());
+        }
+        if (l instanceof Boolean && r instanceof Boolean) {
+            if (op == EQ) return l.equals(r);
+            if (op == NE) return !l.equals(r);
+            throw new RuntimeException("Bool relop not supported");
+        }
+        throw new RuntimeException("Relation operands must be both numeric or both bool");
+    }
+
+    abstract static class CompareNode extends BoolExpr {
+        final int op;
+        Expr left, right;
+
+        CompareNode(int op, Expr left, Expr right) {
+            this.op = op;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        final boolean generalize(Object l, Object r) {
+            replace(new GenericCompare(op, left, right));
+            return genericCompare(op, l, r);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) {
+            if (left == old) left = (Expr) replacement;
+            if (right == old) right = (Expr) replacement;
+        }
+    }
+
+    static final class UninitializedCompare extends CompareNode {
+        UninitializedCompare(int op, Expr left, Expr right) { super(op, left, right); }
+
+        @Override
+        boolean executeBool(Frame f) {
+            Object l = left.executeGeneric(f);
+            Object r = right.executeGeneric(f);
+            if (l instanceof Integer && r instanceof Integer)    replace(new IntCompare(op, left, right));
+            else if (l instanceof Number && r instanceof Number) replace(new FloatCompare(op, left, right));
+            else                                                 replace(new GenericCompare(op, left, right));
+            return genericCompare(op, l, r);
+        }
+    }
+
+    static final class IntCompare extends CompareNode {
+        IntCompare(int op, Expr left, Expr right) { super(op, left, right); }
+
+        @Override
+        boolean executeBool(Frame f) {
+            int a, b;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return generalize(e.result, right.executeGeneric(f));
+            }
+            try {
+                b = right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return generalize(a, e.result);
+            }
+            return compare(op, a, b);
+        }
+    }
+
+    static final class FloatCompare extends CompareNode {
+        FloatCompare(int op, Expr left, Expr right) { super(op, left, right); }
+
+        @Override
+        boolean executeBool(Frame f) {
+            double a, b;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return generalize(e.result, right.executeGeneric(f));
+            }
+            try {
+                b = right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return generalize(a, e.result);
+            }
+            return compare(op, a, b);
+        }
+    }
+
+    static final class GenericCompare extends CompareNode {
+        GenericCompare(int op, Expr left, Expr right) { super(op, left, right); }
+
+        @Override
+        boolean executeBool(Frame f) {
+            Object l = left.executeGeneric(f);
+            return genericCompare(op, l, right.executeGeneric(f));
+        }
+    }
+
+    // ---------- calls ----------
+
+    /** A converted function: its body, frame size and local initializers. */
+    final class CallTarget {
+        final Root body;
+        final int frameSize;
+        final int[] localSlots;
+        final types.Type[] localTypes;
+
+        CallTarget(AST.FunctionDeclaration fd) {
+            frameSize = frames.frameSize(fd);
+            List<AST.VariableDeclaration> locals = new ArrayList<>();
+            for (AST.Declaration d : fd.getBody().getDeclarations()) locals.add((AST.VariableDeclaration) d);
+            localSlots = new int[locals.size()];
+            localTypes = new types.Type[locals.size()];
+            for (int i = 0; i < locals.size(); i++) {
+                localSlots[i] = locals.get(i).getIdentifier().getSlot();
+                localTypes[i] = ((AST.TypeNode) locals.get(i).getTypeNode()).getActualType();
+            }
+            body = new Root(new Builder().block(fd.getBody().getStatements()));
+        }
+
+        void invoke(Frame callee) {
+            for (int i = 0; i < localSlots.length; i++) initSlot(callee, localSlots[i], localTypes[i]);
+            try {
+                body.body.execute(callee);
+            } catch (ReturnException r) {
+                // value is in callee.ret*
+            }
+        }
+    }
+
+    private CallTarget targetFor(AST.FunctionDeclaration fd) {
+        if (fd == null) throw new RuntimeException("N/A");
+        CallTarget t = targets.get(fd);
+        if (t == null) {
+            t = new CallTarget(fd);
+            targets.put(fd, t);
+        }
+        return t;
+    }
+
+    /** Resolves its callee on first execution and replaces itself with a DirectCall. */
+    final class UninitializedCall extends Expr {
+        final AST.FunctionDeclaration callee;
+        final Expr[] args;
+
+        UninitializedCall(AST.FunctionDeclaration callee, Expr[] args) {
+            this.callee = callee;
+            this.args = args;
+            for (Expr a : args) adopt(a);
+        }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            CallTarget target = targetFor(callee);
+            WriteNode[] writes = new WriteNode[args.length];
+            for (int i = 0; i < args.length; i++) writes[i] = new UninitializedWrite(null, i, args[i]);
+            return replace(new DirectCall(target, writes)).executeGeneric(f);
+        }
+    }
+
+    /** Call bound to one target; arguments are written straight into the callee frame. */
+    static final class DirectCall extends Expr {
+        final CallTarget target;
+        final WriteNode[] args;
+
+        DirectCall(CallTarget target, WriteNode[] args) {
+            this.target = target;
+            this.args = args;
+            for (WriteNode a : args) adopt(a);
+        }
+
+        private Frame call(Frame f) {
+            Frame callee = new Frame(target.frameSize);
+            for (WriteNode a : args) a.executeInto(f, callee);
+            target.invoke(callee);
+            return callee;
+        }
+
+        @Override
+        Object executeGeneric(Frame f) {
+            return call(f).returnValue();
+        }
+
+        @Override
+        int executeInt(Frame f) throws UnexpectedResult {
+            Frame callee = call(f);
+            if (callee.retTag == T_INT) return (int) callee.retPrim;
+            throw new UnexpectedResult(callee.returnValue());
+        }
+
+        @Override
+        double executeFloat(Frame f) throws UnexpectedResult {
+            Frame callee = call(f);
+            if (callee.retTag == T_FLOAT) return Double.longBitsToDouble(callee.retPrim);
+            return expectFloat(callee.returnValue());
+        }
+
+        @Override
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            Frame callee = call(f);
+            if (callee.retTag == T_BOOL) return callee.retPrim != 0;
+            throw new UnexpectedResult(callee.returnValue());
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) {
+            for (int i = 0; i < args.length; i++) if (args[i] == old) args[i] = (WriteNode) replacement;
+        }
+    }
+
+    static final class ReturnNode extends Stmt {
+        Expr value; // null for a bare return
+
+        ReturnNode(Expr value) { this.value = adopt(value); }
+
+        @Override
+        void execute(Frame f) {
+            if (value != null) {
+                Object v = value.executeGeneric(f);
+                if (v instanceof Integer)      replace(new IntReturn(value));
+                else if (v instanceof Double)  replace(new FloatReturn(value));
+                else if (v instanceof Boolean) replace(new BoolReturn(value));
+                else                           replace(new GenericReturn(value));
+                setReturn(f, v);
+            }
+            throw ReturnException.INSTANCE;
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { value = (Expr) replacement; }
+    }
+
+    static void setReturn(Frame f, Object v) {
+        if (v instanceof Integer)      { f.retPrim = (Integer) v; f.retTag = T_INT; }
+        else if (v instanceof Double)  { f.retPrim = Double.doubleToRawLongBits((Double) v); f.retTag = T_FLOAT; }
+        else if (v instanceof Boolean) { f.retPrim = ((Boolean) v) ? 1 : 0; f.retTag = T_BOOL; }
+        else                           { f.retRef = v; f.retTag = T_REF; }
+    }
+
+    static final class IntReturn extends Stmt {
+        Expr value;
+
+        IntReturn(Expr value) { this.value = adopt(value); }
+
+        @Override
+        void execute(Frame f) {
+            try {
+                f.retPrim = value.executeInt(f);
+                f.retTag = T_INT;
+            } catch (UnexpectedResult e) {
+                replace(new GenericReturn(value));
+                setReturn(f, e.result);
+            }
+            throw ReturnException.INSTANCE;
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { value = (Expr) replacement; }
+    }
+
+    static final class FloatReturn extends Stmt {
+        Expr value;
+
+        FloatReturn(Expr value) { this.value = adopt(value); }
+
+        @Override
+        void execute(Frame f) {
+            try {
+                f.retPrim = Double.doubleToRawLongBits(value.executeFloat(f));
+                f.retTag = T_FLOAT;
+            } catch (UnexpectedResult e) {
+                replace(new GenericReturn(value));
+                setReturn(f, e.result);
+            }
+            throw ReturnException.INSTANCE;
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { value = (Expr) replacement; }
+    }
+
+    static final class BoolReturn extends Stmt {
+        Expr value;
+
+        BoolReturn(Expr value) { this.value = adopt(value); }
+
+        @Override
+        void execute(Frame f) {
+            try {
+                f.retPrim = value.executeBool(f) ? 1 : 0;
+                f.retTag = T_BOOL;
+            } catch (UnexpectedResult e) {
+                replace(new GenericReturn(value));
+                setReturn(f, e.result);
+            }
+            throw ReturnException.INSTANCE;
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { value = (Expr) replacement; }
+    }
+
+    static final class GenericReturn extends Stmt {
+        Expr value;
+
+        GenericReturn(Expr value) { this.value = adopt(value); }
+
+        @Override
+        void execute(Frame f) {
+            setReturn(f, value.executeGeneric(f));
+            throw ReturnException.INSTANCE;
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { value = (Expr) replacement; }
+    }
+
+    // ---------- built-ins ----------
+
+    final class PrintInt extends Stmt {
+        Expr arg;
+
+        PrintInt(Expr arg) { this.arg = adopt(arg); }
+
+        @Override
+        void execute(Frame f) {
+            int i;
+            try {
+                i = arg.executeInt(f);
+            } catch (UnexpectedResult e) {
+                i = (e.result instanceof Number) ? ((Number) e.result).intValue() : 0;
+            }
+            io.printInt(i);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { arg = (Expr) replacement; }
+    }
+
+    final class PrintFloat extends Stmt {
+        Expr arg;
+
+        PrintFloat(Expr arg) { this.arg = adopt(arg); }
+
+        @Override
+        void execute(Frame f) {
+            double d;
+            try {
+                d = arg.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                d = 0.0;
+            }
+            io.printFloat(d);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { arg = (Expr) replacement; }
+    }
+
+    final class PrintBool extends Stmt {
+        Expr arg;
+
+        PrintBool(Expr arg) { this.arg = adopt(arg); }
+
+        @Override
+        void execute(Frame f) {
+            boolean b;
+            try {
+                b = arg.executeBool(f);
+            } catch (UnexpectedResult e) {
+                b = false;
+            }
+            io.printBool(b);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { arg = (Expr) replacement; }
+    }
+
+    final class Println extends Stmt {
+        @Override
+        void execute(Frame f) {
+            io.println();
+        }
+    }
+
+    final class ReadInt extends IntExpr {
+        @Override
+        int executeInt(Frame f) {
+            return io.readInt();
+        }
+    }
+
+    final class ReadFloat extends FloatExpr {
+        @Override
+        double executeFloat(Frame f) {
+            return io.readFloat();
+        }
+    }
+
+    final class ReadBool extends BoolExpr {
+        @Override
+        boolean executeBool(Frame f) {
+            return io.readBool();
+        }
+    }
+
+    // ---------- statements ----------
+
+    static final class Block extends Stmt {
+        final Stmt[] stmts;
+
+        Block(Stmt[] stmts) {
+            this.stmts = stmts;
+            for (Stmt s : stmts) adopt(s);
+        }
+
+        @Override
+        void execute(Frame f) {
+            for (Stmt s : stmts) s.execute(f);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) {
+            for (int i = 0; i < stmts.length; i++) if (stmts[i] == old) stmts[i] = (Stmt) replacement;
+        }
+    }
+
+    static final class ExprStmt extends Stmt {
+        Expr expr;
+
+        ExprStmt(Expr expr) { this.expr = adopt(expr); }
+
+        @Override
+        void execute(Frame f) {
+            expr.executeGeneric(f);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { expr = (Expr) replacement; }
+    }
+
+    static final class If extends Stmt {
+        Expr cond;
+        final Stmt then, otherwise; // otherwise may be null
+
+        If(Expr cond, Stmt then, Stmt otherwise) {
+            this.cond = adopt(cond);
+            this.then = adopt(then);
+            this.otherwise = adopt(otherwise);
+        }
+
+        @Override
+        void execute(Frame f) {
+            if (condition(cond, f)) then.execute(f);
+            else if (otherwise != null) otherwise.execute(f);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { cond = (Expr) replacement; }
+    }
+
+    static final class While extends Stmt {
+        Expr cond;
+        final Stmt body;
+
+        While(Expr cond, Stmt body) {
+            this.cond = adopt(cond);
+            this.body = adopt(body);
+        }
+
+        @Override
+        void execute(Frame f) {
+            while (condition(cond, f)) body.execute(f);
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { cond = (Expr) replacement; }
+    }
+
+    static final class Repeat extends Stmt {
+        Expr cond;
+        final Stmt body;
+
+        Repeat(Stmt body, Expr cond) {
+            this.body = adopt(body);
+            this.cond = adopt(cond);
+        }
+
+        @Override
+        void execute(Frame f) {
+            do {
+                body.execute(f);
+            } while (!condition(cond, f));
+        }
+
+        @Override
+        void replaceChild(Node old, Node replacement) { cond = (Expr) replacement; }
+    }
+
+    /** A declaration in a statement sequence: resets the variable to its default. */
+    final class Declare extends Stmt {
+        final Frame global;
+        final int slot;
+        final types.Type type;
+
+        Declare(Frame global, int slot, types.Type type) {
+            this.global = global;
+            this.slot = slot;
+            this.type = type;
+        }
+
+        @Override
+        void execute(Frame f) {
+            initSlot(global != null ? global : f, slot, type);
+        }
+    }
+
+    // ---------- conversion from the AST ----------
+
+    /** Builds uninitialized executable nodes for a tree. */
+    private final class Builder extends ast.TreeWalker {
+        private Node result;
+
+        Expr expr(ast.Expression e) {
+            e.accept(this);
+            return (Expr) result;
+        }
+
+        Stmt stmt(ast.Statement s) {
+            s.accept(this);
+            Node n = result;
+            return (n instanceof Expr) ? new ExprStmt((Expr) n) : (Stmt) n;
+        }
+
+        Block block(AST.StatementSequence seq) {
+            List<Stmt> out = new ArrayList<>();
+            for (ast.Statement s : seq) if (s != null) out.add(stmt(s));
+            return new Block(out.toArray(new Stmt[0]));
+        }
+
+        private Frame scope(AST.Identifier id) {
+            switch (id.getDepth()) {
+                case FrameResolver.GLOBAL: return globals;
+                case FrameResolver.LOCAL:  return null;
+                default: throw new RuntimeException("Unresolved variable: " + id.getName());
+            }
+        }
+
+        @Override public void visit(AST.IntegerLiteral n) { result = new IntConst(n.getValue()); }
+        @Override public void visit(AST.FloatLiteral n)   { result = new FloatConst(n.getValue()); }
+        @Override public void visit(AST.BoolLiteral n)    { result = new BoolConst(n.getValue()); }
+
+        @Override
+        public void visit(AST.Identifier n) {
+            result = new UninitializedRead(scope(n), n.getSlot());
+        }
+
+        @Override
+        public void visit(AST.ArrayIndex n) {
+            result = new UninitializedArrayRead(expr(n.getBase()), expr(n.getIndex()), n.isInBounds());
+        }
+
+        @Override public void visit(AST.Addition n)       { result = new UninitializedArith(ADD, expr(n.getLeft()), expr(n.getRight())); }
+        @Override public void visit(AST.Subtraction n)    { result = new UninitializedArith(SUB, expr(n.getLeft()), expr(n.getRight())); }
+        @Override public void visit(AST.Multiplication n) { result = new UninitializedArith(MUL, expr(n.getLeft()), expr(n.getRight())); }
+        @Override public void visit(AST.Division n)       { result = new UninitializedArith(DIV, expr(n.getLeft()), expr(n.getRight())); }
+        @Override public void visit(AST.Modulo n)         { result = new UninitializedArith(MOD, expr(n.getLeft()), expr(n.getRight())); }
+        @Override public void visit(AST.Power n)          { result = new UninitializedPow(expr(n.getBase()), expr(n.getExponent())); }
+        @Override public void visit(AST.UnaryMinus n)     { result = new UninitializedNeg(expr(n.getExpr())); }
+        @Override public void visit(AST.LogicalNot n)     { result = new Not(expr(n.getExpression())); }
+        @Override public void visit(AST.LogicalAnd n)     { result = new And(expr(n.getLeft()), expr(n.getRight())); }
+        @Override public void visit(AST.LogicalOr n)      { result = new Or(expr(n.getLeft()), expr(n.getRight())); }
+
+        @Override
+        public void visit(AST.Relation n) {
+            result = new UninitializedCompare(n.getOp().ordinal(), expr(n.getLeft()), expr(n.getRight()));
+        }
+
+        @Override
+        public void visit(AST.FunctionCall n) {
+            List<ast.Expression> args = n.getArguments().getArguments();
+            if (n.getBuiltin() != null) switch (n.getBuiltin()) {
+                case PRINT_INT:   result = new PrintInt(expr(args.get(0))); return;
+                case PRINT_FLOAT: result = new PrintFloat(expr(args.get(0))); return;
+                case PRINT_BOOL:  result = new PrintBool(expr(args.get(0))); return;
+                case PRINTLN:     result = new Println(); return;
+                case READ_INT:    result = new ReadInt(); return;
+                case READ_FLOAT:  result = new ReadFloat(); return;
+                case READ_BOOL:   result = new ReadBool(); return;
+                default:
+            }
+            Expr[] converted = new Expr[args.size()];
+            for (int i = 0; i < converted.length; i++) converted[i] = expr(args.get(i));
+            result = new UninitializedCall(n.getCallee(), converted);
+        }
+
+        @Override
+        public void visit(AST.Assignment n) {
+            ast.Expression dest = n.getDestination();
+            if (dest instanceof AST.Identifier) {
+                AST.Identifier id = (AST.Identifier) dest;
+                result = new UninitializedWrite(scope(id), id.getSlot(), expr(n.getSource()));
+            } else if (dest instanceof AST.ArrayIndex) {
+                AST.ArrayIndex ai = (AST.ArrayIndex) dest;
+                result = new ArrayWrite(expr(ai.getBase()), expr(ai.getIndex()), expr(n.getSource()), ai.isInBounds());
+            } else {
+                throw new RuntimeException("Unsupported lvalue: " + dest.getClass().getSimpleName());
+            }
+        }
+
+        @Override
+        public void visit(AST.IfStatement n) {
+            result = new If(expr(n.getCondition()), block(n.getThenBlock()),
+                            n.getElseBlock() != null ? block(n.getElseBlock()) : null);
+        }
+
+        @Override
+        public void visit(AST.WhileStatement n) {
+            result = new While(expr(n.getCondition()), block(n.getBody()));
+        }
+
+        @Override
+        public void visit(AST.RepeatStatement n) {
+            result = new Repeat(block(n.getBody()), expr(n.getCondition()));
+        }
+
+        @Override
+        public void visit(AST.ReturnStatement n) {
+            result = new ReturnNode(n.getValue() != null ? expr(n.getValue()) : null);
+        }
+
+        @Override
+        public void visit(AST.StatementSequence n) {
+            result = block(n);
+        }
+
+        @Override
+        public void visit(AST.VariableDeclaration n) {
+            AST.Identifier id = n.getIdentifier();
+            result = new Declare(scope(id), id.getSlot(), ((AST.TypeNode) n.getTypeNode()).getActualType());
+        }
+    }
+}
@@ -1,4 +1,5 @@
 package mocha;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
@@ -8,6 +9,8 @@ public class SymbolTable {
 
     // TODO: Create Symbol Table structure
 	private Stack<Map<String, Symbol>> table;
+	// scopes below this depth are never popped (the global scope, or a frozen parent)
+	private int baseDepth = 1;
 
 	public SymbolTable () {
 	    this.table = new Stack<>();
@@ -53,7 +56,31 @@ public class SymbolTable {
 	        e.printStackTrace();
 	    }
 	}
+
+	private SymbolTable (Stack<Map<String, Symbol>> frozen) {
+	    this.table = new Stack<>();
+	    for (Map<String, Symbol> scope : frozen) {
+	        table.push(Collections.unmodifiableMap(scope));
+	    }
+	    this.baseDepth = table.size() + 1;
+	    enterScope();
+	}
+
+    /**
+     * Returns a new table layered on a read-only view of this table's current scopes.
+     * Lookups fall through to the frozen scopes; inserts only ever land in the new
+     * top scope, so any number of layered tables can be used concurrently as long as
+     * this table is not modified meanwhile.
+     */
+    public SymbolTable layered() {
+        return new SymbolTable(table);
+    }
     
+    /** Read-only view of the outermost (global) scope. */
+    public Map<String, Symbol> globalScope() {
+        return Collections.unmodifiableMap(table.get(0));
+    }
+
     public void enterScope()
     {
         table.push(new HashMap<String, Symbol>());
@@ -64,7 +91,7 @@ public class SymbolTable {
      */
     public void exitScope() {
         // Don't ever pop the global scope
-        if (table.size() > 1) {
+        if (table.size() > baseDepth) {
             table.pop();
         }
     }
@@ -0,0 +1,209 @@
+package mocha;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The last records of what TracingInterpreter ran, kept in a ring buffer of fixed
+ * size: every statement as it starts, every assignment with the old and new value
+ * of the variable or array element, every call of a user function with its
+ * arguments, and the error a run ended with. Once the buffer is full each record
+ * overwrites the oldest one.
+ *
+ * A record is four longs (a header of type, value kind, name and source line, then
+ * three payload words); values are the raw slots MiniInterpreter keeps, and names
+ * are indexes into a table, so recording allocates nothing once the names are
+ * known. The buffer can be written out in binary at any point of a run or after it,
+ * read back, and printed as text:
+ *
+ *     java mocha.Trace <dump file>
+ */
+public final class Trace {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    // record types
+    static final int STATEMENT = 0,  // name: statement class; a: column
+                     ASSIGN = 1,     // name: variable; a: old, b: new
+                     STORE = 2,      // name: array variable; a: shape << 32 | element, b: old, c: new
+                     CALL = 3,       // name: function; a: argument count, one ARG record per argument follows
+                     ARG = 4,        // a: value
+                     ERROR = 5;      // name: message
+
+    private static final int WORDS = 4;
+    private static final int MAGIC = 0x4d545243; // "MTRC"
+
+    private final long[] ring;
+    private final int mask;
+    private long count;              // records written, including overwritten ones
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /** Keeps the last capacity records (rounded up to a power of two). */
+    public Trace(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.ring = new long[size * WORDS];
+        this.mask = size - 1;
+    }
+
+    public Trace() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // ---------- recording (TracingInterpreter) ----------
+
+    int name(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    void record(int type, int kind, int name, int line, long a, long b, long c) {
+        int at = (int) (count++ & mask) * WORDS;
+        ring[at] = (long) type << 56 | (long) kind << 48 | (long) (name & 0xffffff) << 24 | (line & 0xffffff);
+        ring[at + 1] = a;
+        ring[at + 2] = b;
+        ring[at + 3] = c;
+    }
+
+    /** Records held, at most the capacity. */
+    public int size() {
+        return (int) Math.min(count, mask + 1);
+    }
+
+    /** Records overwritten since the start. */
+    public long dropped() {
+        return count - size();
+    }
+
+    // ---------- dumps ----------
+
+    /** Writes the records held, oldest first, with the name table. */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(names.size());
+        for (String n : names) data.writeUTF(n);
+        data.writeLong(dropped());
+        data.writeInt(size());
+        for (long i = count - size(); i < count; i++) {
+            int at = (int) (i & mask) * WORDS;
+            for (int w = 0; w < WORDS; w++) data.writeLong(ring[at + w]);
+        }
+        data.flush();
+    }
+
+    /** A trace as writeTo() wrote it. */
+    public static Trace readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) throw new IOException("not a trace");
+        int n = data.readInt();
+        List<String> table = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) table.add(data.readUTF());
+        long dropped = data.readLong();
+        int size = data.readInt();
+        Trace t = new Trace(Math.max(size, 1));
+        for (String s : table) t.name(s);
+        t.count = dropped;
+        for (int i = 0; i < size; i++) {
+            int at = (int) (t.count++ & t.mask) * WORDS;
+            for (int w = 0; w < WORDS; w++) t.ring[at + w] = data.readLong();
+        }
+        return t;
+    }
+
+    /** The records held, oldest first, one line each (a call with its arguments). */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        if (dropped() > 0) sb.append(String.format("... %d earlier record(s) dropped%n", dropped()));
+        long i = count - size();
+        while (i < count) {
+            int at = (int) (i++ & mask) * WORDS;
+            long h = ring[at];
+            int type = (int) (h >>> 56), kind = (int) (h >>> 48) & 0xff;
+            String name = names.get((int) (h >>> 24) & 0xffffff);
+            int line = (int) h & 0xffffff;
+            long a = ring[at + 1], b = ring[at + 2], c = ring[at + 3];
+            switch (type) {
+                case STATEMENT:
+                    sb.append(String.format("%5d:%-3d %s%n", line, a, name));
+                    break;
+                case ASSIGN:
+                    sb.append(String.format("%9s   %s = %s (was %s)%n", "", name, value(kind, b), value(kind, a)));
+                    break;
+                case STORE:
+                    sb.append(String.format("%9s   %s%s = %s (was %s)%n", "", name,
+                                            indexes(names.get((int) (a >>> 32)), (int) a), value(kind, c), value(kind, b)));
+                    break;
+                case CALL: {
+                    StringBuilder args = new StringBuilder();
+                    for (long k = 0; k < a && i < count; k++) {
+                        int arg = (int) (i++ & mask) * WORDS;
+                        if (k > 0) args.append(", ");
+                        args.append(value((int) (ring[arg] >>> 48) & 0xff, ring[arg + 1]));
+                    }
+                    sb.append(String.format("%9s   call %s(%s)%n", "", name, args));
+                    break;
+                }
+                case ARG:
+                    break; // of a call that was overwritten
+                default:
+                    sb.append(String.format("%9s   error: %s%n", "", name));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String value(int kind, long v) {
+        switch (kind) {
+            case MiniInterpreter.INT:   return Integer.toString((int) v);
+            case MiniInterpreter.FLOAT: return Float.toString((float) Double.longBitsToDouble(v));
+            case MiniInterpreter.BOOL:  return (v != 0) ? "true" : "false";
+            default:                    return "<array>";
+        }
+    }
+
+    // The subscripts of element pos of an array with the given extents ("10,10")
+    private static String indexes(String shape, int pos) {
+        String[] extents = shape.split(",");
+        int[] idx = new int[extents.length];
+        for (int k = extents.length - 1; k >= 0; k--) {
+            int extent = Integer.parseInt(extents[k]);
+            idx[k] = pos % extent;
+            pos /= extent;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int x : idx) sb.append('[').append(x).append(']');
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: Trace <dump file>");
+            System.exit(-1);
+        }
+        try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+            System.out.print(readFrom(in).toText());
+        }
+    }
+}
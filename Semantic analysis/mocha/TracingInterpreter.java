@@ -0,0 +1,114 @@
+package mocha;
+
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import ast.AST;
+
+/**
+ * MiniInterpreter instrumented to fill in a Trace, the way ProfilingInterpreter
+ * fills in a Profile: the plain interpreter carries no tracing code and checks no
+ * flag. Statements are recorded as they start, assignments with the value before
+ * and after, and user calls (self tail calls included) once their arguments are
+ * pushed. Calls to built-ins are not recorded as calls. An error that ends the run
+ * is recorded before it propagates.
+ */
+final class TracingInterpreter extends MiniInterpreter {
+
+    private final Trace trace;
+    private final Map<Class<?>, Integer> statementNames = new IdentityHashMap<>();
+    private int[] lastExtents;       // of the last array stored to, and their name
+    private int lastShape;
+    private int line;                // of the statement running
+
+    TracingInterpreter(InputStream in, java.io.PrintStream out, Trace trace) {
+        super(in, out);
+        this.trace = trace;
+    }
+
+    @Override
+    public void run(ast.Computation prog, FrameResolver frames) {
+        try {
+            super.run(prog, frames);
+        } catch (RuntimeException | StackOverflowError e) {
+            String message = (e.getMessage() != null) ? e.getMessage() : e.getClass().getSimpleName();
+            trace.record(Trace.ERROR, VOID, trace.name(message), line, 0, 0, 0);
+            throw e;
+        }
+    }
+
+    @Override
+    public void visit(AST.StatementSequence node) {
+        for (ast.Statement s : node) {
+            if (s == null) continue;
+            AST.Node n = (AST.Node) s;
+            line = n.lineNumber();
+            Integer name = statementNames.get(s.getClass());
+            if (name == null) {
+                name = trace.name(s.getClass().getSimpleName());
+                statementNames.put(s.getClass(), name);
+            }
+            trace.record(Trace.STATEMENT, VOID, name, line, n.charPosition(), 0, 0);
+            s.accept(this);
+            if (returning) return;
+        }
+    }
+
+    @Override
+    public void visit(AST.Assignment node) {
+        ast.Expression dest = node.getDestination();
+        int k = kind(dest.getType());
+        if (dest instanceof AST.Identifier) {
+            AST.Identifier id = (AST.Identifier) dest;
+            long old = (k == REF) ? 0 : loadPrim(id);
+            super.visit(node);
+            long now = (k == REF) ? 0 : loadPrim(id);
+            trace.record(Trace.ASSIGN, k, trace.name(id.getName()), line, old, now, 0);
+        } else if (dest instanceof AST.ArrayIndex && k != REF) {
+            // as MiniInterpreter does it: the value, then base and indices
+            long v = evalPrim(node.getSource(), k);
+            AST.ArrayIndex ai = (AST.ArrayIndex) dest;
+            int pos = locate(ai);
+            FlatArray a = located;
+            long old;
+            switch (k) {
+                case INT:   old = a.ints[pos];   a.ints[pos] = (int) v; break;
+                case FLOAT: old = Double.doubleToRawLongBits(a.floats[pos]); a.floats[pos] = Double.longBitsToDouble(v); break;
+                default:    old = a.bools[pos] ? 1 : 0; a.bools[pos] = v != 0;
+            }
+            trace.record(Trace.STORE, k, trace.name(arrayName(ai)), line, (long) shape(a) << 32 | pos, old, v);
+        } else {
+            super.visit(node); // a whole row
+        }
+    }
+
+    private static String arrayName(AST.ArrayIndex ai) {
+        ast.Expression base = ai.getBase();
+        while (base instanceof AST.ArrayIndex) base = ((AST.ArrayIndex) base).getBase();
+        return (base instanceof AST.Identifier) ? ((AST.Identifier) base).getName() : "<array>";
+    }
+
+    // The name of the extents of a, as Trace prints elements by them
+    private int shape(FlatArray a) {
+        if (a.extents != lastExtents) {
+            StringBuilder sb = new StringBuilder();
+            for (int e : a.extents) sb.append((sb.length() > 0) ? "," : "").append(e);
+            lastShape = trace.name(sb.toString());
+            lastExtents = a.extents;
+        }
+        return lastShape;
+    }
+
+    @Override
+    void pushArguments(AST.FunctionCall call) {
+        int base = sp;
+        super.pushArguments(call);
+        java.util.List<ast.Expression> args = call.getArguments().getArguments();
+        trace.record(Trace.CALL, VOID, trace.name(call.getIdentifier().getName()), call.lineNumber(), args.size(), 0, 0);
+        for (int i = 0; i < args.size(); i++) {
+            int k = kind(args.get(i).getType());
+            trace.record(Trace.ARG, k, 0, call.lineNumber(), (k == REF) ? 0 : prims[base + i], 0, 0);
+        }
+    }
+}
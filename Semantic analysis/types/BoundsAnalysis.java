@@ -0,0 +1,123 @@
+package types;
+
+import ast.AST.*;
+import ast.Expression;
+import ast.Statement;
+import ast.TreeWalker;
+import ast.Visitable;
+import mocha.Builtin;
+import mocha.Symbol;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds array accesses indexed by the induction variable of a simple counting loop,
+ * which are in range on every iteration:
+ *
+ *     i = K;  ...  while (i < N) do  ... a[i] ...  i = i + C;  od;
+ *
+ * K, N and C are integer literals with K >= 0 and C >= 0 (the operator may also be
+ * <=), i + C cannot overflow past the largest i the loop admits, i is not assigned
+ * anywhere else between the initialization and the end of the body, and every array
+ * indexed by i has a declared extent covering N. A global i additionally requires
+ * that the body calls no user function, which could assign it; a call counts as a
+ * built-in by the symbol the checker bound to it, so a user overload of a built-in
+ * name is a user function.
+ */
+final class BoundsAnalysis {
+
+    private BoundsAnalysis() {
+    }
+
+    /** Marks the in-range accesses of the counting loops directly in seq. */
+    static void markLoops(StatementSequence seq, Map<String, Symbol> globals) {
+        List<Statement> stmts = new ArrayList<>();
+        for (Statement s : seq) stmts.add(s);
+
+        for (int k = 0; k < stmts.size(); k++) {
+            if (!(stmts.get(k) instanceof WhileStatement)) continue;
+            WhileStatement loop = (WhileStatement) stmts.get(k);
+            if (!(loop.getCondition() instanceof Relation)) continue;
+
+            Relation cond = (Relation) loop.getCondition();
+            if (!(cond.getLeft() instanceof Identifier) || !(cond.getRight() instanceof IntegerLiteral)) continue;
+            Symbol var = ((Identifier) cond.getLeft()).getSymbol();
+            if (var == null || !(var.type() instanceof IntType)) continue;
+
+            // largest value i takes inside the body
+            int limit = ((IntegerLiteral) cond.getRight()).getValue();
+            if (cond.getOp() == Relation.Op.LT)      limit -= 1;
+            else if (cond.getOp() != Relation.Op.LE) continue;
+
+            boolean global = globals.get(var.name()) == var;
+            if (!initializedNonNegative(stmts, k, var, global, globals)) continue;
+            if (!countsUp(loop.getBody(), var, limit, global, globals)) continue;
+
+            for (Visitable n : TreeWalker.preOrder(loop.getBody())) {
+                if (!(n instanceof ArrayIndex)) continue;
+                ArrayIndex ai = (ArrayIndex) n;
+                if (!(ai.getIndex() instanceof Identifier) || ((Identifier) ai.getIndex()).getSymbol() != var) continue;
+                Type base = ai.getBase().getType();
+                if (base instanceof ArrayType && limit < ((ArrayType) base).getExtent()) {
+                    ai.setInBounds(true);
+                }
+            }
+        }
+    }
+
+    // The closest earlier statement that touches i must be i = K with K >= 0
+    private static boolean initializedNonNegative(List<Statement> stmts, int loopAt, Symbol var, boolean global,
+                                                  Map<String, Symbol> globals) {
+        for (int k = loopAt - 1; k >= 0; k--) {
+            Statement s = stmts.get(k);
+            if (s instanceof Assignment && isVar(((Assignment) s).getDestination(), var)) {
+                Expression src = ((Assignment) s).getSource();
+                return src instanceof IntegerLiteral && ((IntegerLiteral) src).getValue() >= 0;
+            }
+            if (s != null && mayAssign(s, var, global, globals)) return false;
+        }
+        return false;
+    }
+
+    // The body ends with i = i + C, 0 <= C <= MAX_VALUE - limit, and nothing else in it may assign i
+    private static boolean countsUp(StatementSequence body, Symbol var, int limit, boolean global,
+                                    Map<String, Symbol> globals) {
+        Statement last = null;
+        List<Statement> rest = new ArrayList<>();
+        for (Statement s : body) {
+            if (last != null) rest.add(last);
+            last = s;
+        }
+        if (!(last instanceof Assignment) || !isVar(((Assignment) last).getDestination(), var)) return false;
+        Expression src = ((Assignment) last).getSource();
+        if (!(src instanceof Addition)) return false;
+        Addition add = (Addition) src;
+        if (!isVar(add.getLeft(), var) || !(add.getRight() instanceof IntegerLiteral)) return false;
+        int step = ((IntegerLiteral) add.getRight()).getValue();
+        // a larger step wraps i negative, and i < N would still hold
+        if (step < 0 || (long) limit + step > Integer.MAX_VALUE) return false;
+        for (Statement s : rest) {
+            if (s != null && mayAssign(s, var, global, globals)) return false;
+        }
+        return true;
+    }
+
+    private static boolean mayAssign(Statement stmt, Symbol var, boolean global, Map<String, Symbol> globals) {
+        for (Visitable n : TreeWalker.preOrder(stmt)) {
+            if (n instanceof Assignment && isVar(((Assignment) n).getDestination(), var)) return true;
+            if (global && n instanceof FunctionCall && !callsBuiltin((FunctionCall) n, globals)) return true;
+        }
+        return false;
+    }
+
+    // Built-ins are bound under their bare name, user functions (overloads included) under a mangled one
+    private static boolean callsBuiltin(FunctionCall call, Map<String, Symbol> globals) {
+        Symbol callee = call.getIdentifier().getSymbol();
+        return callee != null && Builtin.named(callee.name()) != null && globals.get(callee.name()) == callee;
+    }
+
+    private static boolean isVar(Expression e, Symbol var) {
+        return e instanceof Identifier && ((Identifier) e).getSymbol() == var;
+    }
+}
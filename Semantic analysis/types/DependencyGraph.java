@@ -0,0 +1,166 @@
+package types;
+
+import ast.AST.*;
+import ast.TreeWalker;
+import ast.Visitable;
+import mocha.Symbol;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Records which global names (function signatures, built-ins and global variables)
+ * each function body resolved during a check, so that a later check of an edited
+ * program only has to revisit the bodies whose text or dependencies changed.
+ * Functions are keyed by their mangled name, e.g. "foo#IF".
+ */
+public class DependencyGraph {
+
+    private static final class FunctionRecord {
+        final String fingerprint;
+        final Set<String> dependencies;
+        final List<Visitable> nodes;     // pre-order, see TreeWalker.preOrder
+        final boolean clean;             // body produced no type errors
+        final boolean reused;            // results copied from the previous check
+
+        FunctionRecord(String fingerprint, Set<String> dependencies, List<Visitable> nodes, boolean clean,
+                       boolean reused) {
+            this.fingerprint = fingerprint;
+            this.dependencies = dependencies;
+            this.nodes = nodes;
+            this.clean = clean;
+            this.reused = reused;
+        }
+    }
+
+    private final Map<String, Symbol> globals;
+    private final Map<String, FunctionRecord> functions = new HashMap<>();
+
+    DependencyGraph(Map<String, Symbol> globalScope) {
+        this.globals = new HashMap<>(globalScope);
+    }
+
+    /** Mangled names of the functions seen by the check, sorted. */
+    public Set<String> functions() {
+        return Collections.unmodifiableSet(new TreeSet<>(functions.keySet()));
+    }
+
+    /** True if the body of the given function was not re-checked but took the previous check's results. */
+    public boolean wasReused(String function) {
+        FunctionRecord rec = functions.get(function);
+        return rec != null && rec.reused;
+    }
+
+    /** Global names resolved by the body of the given function, or an empty set. */
+    public Set<String> dependenciesOf(String function) {
+        FunctionRecord rec = functions.get(function);
+        return rec == null ? Collections.emptySet() : Collections.unmodifiableSet(rec.dependencies);
+    }
+
+    /** Functions whose bodies resolved the given global name. */
+    public Set<String> dependentsOf(String name) {
+        Set<String> out = new TreeSet<>();
+        for (Map.Entry<String, FunctionRecord> e : functions.entrySet()) {
+            if (e.getValue().dependencies.contains(name)) out.add(e.getKey());
+        }
+        return out;
+    }
+
+    void record(String key, String fingerprint, FunctionDeclaration fd, Set<String> deps, boolean clean) {
+        // two bodies with one mangled name: neither can be reused safely
+        if (functions.containsKey(key)) clean = false;
+        functions.put(key, new FunctionRecord(fingerprint, deps, TreeWalker.preOrder(fd), clean, false));
+    }
+
+    /**
+     * If the previous check saw an error-free body with the same fingerprint whose
+     * dependencies still have the same types, copy its node types and symbols onto
+     * fd, record it in next, and return true.
+     */
+    boolean reuse(String key, String fingerprint, FunctionDeclaration fd, DependencyGraph next) {
+        FunctionRecord rec = functions.get(key);
+        if (rec == null || !rec.clean || !rec.fingerprint.equals(fingerprint) || next.functions.containsKey(key)) {
+            return false;
+        }
+        for (String dep : rec.dependencies) {
+            if (!Objects.equals(signature(dep), next.signature(dep))) return false;
+        }
+        List<Visitable> nodes = TreeWalker.preOrder(fd);
+        if (nodes.size() != rec.nodes.size()) return false;
+
+        for (int i = 0; i < nodes.size(); i++) {
+            Visitable from = rec.nodes.get(i);
+            Visitable to = nodes.get(i);
+            to.setType(from.getType());
+            if (from instanceof Identifier) {
+                ((Identifier) to).setSymbol(rebind(((Identifier) from).getSymbol(), next));
+            } else if (from instanceof ArrayIndex) {
+                ((ArrayIndex) to).setInBounds(((ArrayIndex) from).isInBounds());
+            }
+        }
+        next.functions.put(key, new FunctionRecord(fingerprint, rec.dependencies, nodes, true, true));
+        return true;
+    }
+
+    private String signature(String name) {
+        Symbol s = globals.get(name);
+        return s == null ? null : String.valueOf(s.type());
+    }
+
+    // globals are re-created by every check; locals and parameters belong to the body
+    private Symbol rebind(Symbol sym, DependencyGraph next) {
+        if (sym != null && globals.get(sym.name()) == sym) {
+            return next.globals.get(sym.name());
+        }
+        return sym;
+    }
+
+    /**
+     * Structural hash of a function declaration: node kinds, names, literal values and
+     * declared types in pre-order. Source positions are not included, so moving a
+     * function around does not change its fingerprint.
+     */
+    public static String fingerprint(FunctionDeclaration fd) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Visitable n : TreeWalker.preOrder(fd)) {
+            md.update(label(n).getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    /**
+     * Kind plus payload; variable-arity nodes include their arity so the label
+     * sequence of a pre-order walk determines the tree.
+     */
+    public static String label(Visitable n) {
+        String kind = n.getClass().getSimpleName();
+        if (n instanceof Identifier)          return kind + ":" + ((Identifier) n).getName();
+        if (n instanceof IntegerLiteral)      return kind + ":" + ((IntegerLiteral) n).getValue();
+        if (n instanceof FloatLiteral)        return kind + ":" + ((FloatLiteral) n).getValue();
+        if (n instanceof BoolLiteral)         return kind + ":" + ((BoolLiteral) n).getValue();
+        if (n instanceof Relation)            return kind + ":" + ((Relation) n).getOperator();
+        if (n instanceof TypeNode)            return kind + ":" + ((TypeNode) n).getActualType();
+        if (n instanceof StatementSequence)   return kind + ":" + ((StatementSequence) n).size();
+        if (n instanceof DeclarationList)     return kind + ":" + ((DeclarationList) n).size();
+        if (n instanceof ArgumentList)        return kind + ":" + ((ArgumentList) n).getArguments().size();
+        if (n instanceof FunctionDeclaration) return kind + ":" + ((FunctionDeclaration) n).getParameters().size();
+        if (n instanceof IfStatement)         return kind + ":" + (((IfStatement) n).getElseBlock() != null);
+        if (n instanceof ReturnStatement)     return kind + ":" + (((ReturnStatement) n).getValue() != null);
+        return kind;
+    }
+}
@@ -0,0 +1,290 @@
+package types;
+
+import ast.AST.*;
+import ast.TreeWalker;
+import ast.Visitable;
+import mocha.Symbol;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * On-disk cache of type-checking results for function declarations.
+ *
+ * An entry is stored under the structural fingerprint of the declaration and holds
+ * the global names the body resolved, the type of every node, the symbol of every
+ * identifier and the bounds fact of every array access. An entry is only used when
+ * the hash of the body together with the current signatures of those names matches
+ * the one it was stored with. Only bodies that checked without errors are stored.
+ *
+ * The cache holds at most maxEntries files; the least recently used ones are
+ * evicted first (file modification times carry recency across runs).
+ */
+public class TypeCache {
+
+    private static final int MAGIC = 0x4d544332; // "MTC2"
+    private static final String SUFFIX = ".tc";
+
+    private final Path dir;
+    private final int maxEntries;
+    // fingerprint -> last use, in access order
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    public TypeCache(Path dir, int maxEntries) throws IOException {
+        this.dir = dir;
+        this.maxEntries = Math.max(1, maxEntries);
+        Files.createDirectories(dir);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : ds) files.add(p);
+        }
+        Map<Path, Long> mtime = new HashMap<>();
+        for (Path p : files) mtime.put(p, Files.getLastModifiedTime(p).toMillis());
+        files.sort(Comparator.comparing(mtime::get));
+        for (Path p : files) {
+            String name = p.getFileName().toString();
+            index.put(name.substring(0, name.length() - SUFFIX.length()), mtime.get(p));
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Applies a cached result to fd if one exists for its fingerprint and is still
+     * valid against the given global scope. Returns the names the body depends on,
+     * or null on a miss.
+     */
+    Set<String> load(String fingerprint, FunctionDeclaration fd, Map<String, Symbol> globals) {
+        if (!index.containsKey(fingerprint)) return null;
+        Path file = fileFor(fingerprint);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) return null;
+            String key = in.readUTF();
+            Set<String> deps = new HashSet<>();
+            int nDeps = in.readInt();
+            for (int i = 0; i < nDeps; i++) deps.add(in.readUTF());
+            if (!key.equals(resultKey(fingerprint, deps, globals))) return null;
+
+            int nLocals = in.readInt();
+            Symbol[] locals = new Symbol[nLocals];
+            for (int i = 0; i < nLocals; i++) {
+                String name = in.readUTF();
+                locals[i] = new Symbol(name, decode(in.readUTF()));
+            }
+
+            List<Visitable> nodes = TreeWalker.preOrder(fd);
+            if (in.readInt() != nodes.size()) return null;
+            Type[] types = new Type[nodes.size()];
+            Symbol[] symbols = new Symbol[nodes.size()];
+            boolean[] inBounds = new boolean[nodes.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = decode(in.readUTF());
+                if (nodes.get(i) instanceof ArrayIndex) inBounds[i] = in.readBoolean();
+                switch (in.readByte()) {
+                    case 1:  symbols[i] = locals[in.readInt()]; break;
+                    case 2:
+                        symbols[i] = globals.get(in.readUTF());
+                        if (symbols[i] == null) return null;
+                        break;
+                    default: break;
+                }
+            }
+            // only touch the tree once the whole entry has been read
+            for (int i = 0; i < types.length; i++) {
+                Visitable n = nodes.get(i);
+                n.setType(types[i]);
+                if (n instanceof Identifier) ((Identifier) n).setSymbol(symbols[i]);
+                if (n instanceof ArrayIndex) ((ArrayIndex) n).setInBounds(inBounds[i]);
+            }
+            touch(fingerprint, file);
+            return deps;
+        } catch (IOException | RuntimeException e) {
+            return null; // unreadable or stale entry: check the body normally
+        }
+    }
+
+    /** Stores the result of a successful check of fd. */
+    void store(String fingerprint, FunctionDeclaration fd, Set<String> deps, Map<String, Symbol> globals) {
+        List<Visitable> nodes = TreeWalker.preOrder(fd);
+        for (Visitable n : nodes) {
+            if (n.getType() instanceof ErrorType) return; // not a reusable result
+        }
+        List<String> sortedDeps = new ArrayList<>(deps);
+        Collections.sort(sortedDeps);
+
+        Map<Symbol, Integer> localIds = new IdentityHashMap<>();
+        List<Symbol> locals = new ArrayList<>();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeUTF(resultKey(fingerprint, deps, globals));
+            out.writeInt(sortedDeps.size());
+            for (String d : sortedDeps) out.writeUTF(d);
+
+            ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+            DataOutputStream nodeOut = new DataOutputStream(nodeBytes);
+            nodeOut.writeInt(nodes.size());
+            for (Visitable n : nodes) {
+                nodeOut.writeUTF(encode(n.getType()));
+                if (n instanceof ArrayIndex) nodeOut.writeBoolean(((ArrayIndex) n).isInBounds());
+                Symbol sym = (n instanceof Identifier) ? ((Identifier) n).getSymbol() : null;
+                if (sym == null) {
+                    nodeOut.writeByte(0);
+                } else if (globals.get(sym.name()) == sym) {
+                    nodeOut.writeByte(2);
+                    nodeOut.writeUTF(sym.name());
+                } else {
+                    Integer id = localIds.get(sym);
+                    if (id == null) {
+                        id = locals.size();
+                        localIds.put(sym, id);
+                        locals.add(sym);
+                    }
+                    nodeOut.writeByte(1);
+                    nodeOut.writeInt(id);
+                }
+            }
+            nodeOut.flush();
+
+            out.writeInt(locals.size());
+            for (Symbol s : locals) {
+                out.writeUTF(s.name());
+                out.writeUTF(encode(s.type()));
+            }
+            out.write(nodeBytes.toByteArray());
+            out.flush();
+
+            Path file = fileFor(fingerprint);
+            Path tmp = Files.createTempFile(dir, fingerprint, ".tmp");
+            Files.write(tmp, bytes.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            touch(fingerprint, file);
+            evict();
+        } catch (IOException e) {
+            // the cache is an optimization; a failed write only costs a later re-check
+        }
+    }
+
+    private void touch(String fingerprint, Path file) throws IOException {
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(file, java.nio.file.attribute.FileTime.fromMillis(now));
+        index.put(fingerprint, now);
+    }
+
+    private void evict() {
+        Iterator<String> it = index.keySet().iterator();
+        while (index.size() > maxEntries && it.hasNext()) {
+            String eldest = it.next();
+            it.remove();
+            try {
+                Files.deleteIfExists(fileFor(eldest));
+            } catch (IOException ignore) {
+                // removed from the index anyway; a stale file is never read without validation
+            }
+        }
+    }
+
+    private Path fileFor(String fingerprint) {
+        return dir.resolve(fingerprint + SUFFIX);
+    }
+
+    // Hash of the body fingerprint plus the current signature of every name it resolved
+    static String resultKey(String fingerprint, Set<String> deps, Map<String, Symbol> globals) {
+        List<String> sorted = new ArrayList<>(deps);
+        Collections.sort(sorted);
+        StringBuilder sb = new StringBuilder(fingerprint);
+        for (String d : sorted) {
+            Symbol s = globals.get(d);
+            sb.append('\0').append(d).append('=').append(s == null ? "-" : encode(s.type()));
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : md.digest(sb.toString().getBytes(StandardCharsets.UTF_8))) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Type codec -------------------------------------------------------------------
+    // I F B V, A<extent>,<base>, L<n>;<types>, P<params TypeList><return>, N for null
+
+    static String encode(Type t) {
+        StringBuilder sb = new StringBuilder();
+        encode(t, sb);
+        return sb.toString();
+    }
+
+    private static void encode(Type t, StringBuilder sb) {
+        if (t == null)                  sb.append('N');
+        else if (t instanceof IntType)   sb.append('I');
+        else if (t instanceof FloatType) sb.append('F');
+        else if (t instanceof BoolType)  sb.append('B');
+        else if (t instanceof VoidType)  sb.append('V');
+        else if (t instanceof ArrayType) {
+            ArrayType a = (ArrayType) t;
+            sb.append('A').append(a.getExtent()).append(',');
+            encode(a.getBase(), sb);
+        } else if (t instanceof TypeList) {
+            TypeList tl = (TypeList) t;
+            sb.append('L').append(tl.size()).append(';');
+            for (int i = 0; i < tl.size(); i++) encode(tl.get(i), sb);
+        } else if (t instanceof FuncType) {
+            FuncType f = (FuncType) t;
+            sb.append('P');
+            encode(f.arguments(), sb);
+            encode(f.returnType(), sb);
+        } else {
+            throw new IllegalArgumentException("Type cannot be cached: " + t);
+        }
+    }
+
+    static Type decode(String code) {
+        int[] pos = {0};
+        Type t = decode(code, pos);
+        if (pos[0] != code.length()) throw new IllegalArgumentException("Bad type code: " + code);
+        return t;
+    }
+
+    private static Type decode(String s, int[] pos) {
+        char c = s.charAt(pos[0]++);
+        switch (c) {
+            case 'N': return null;
+            case 'I': return new IntType();
+            case 'F': return new FloatType();
+            case 'B': return new BoolType();
+            case 'V': return new VoidType();
+            case 'A': {
+                int extent = readInt(s, pos, ',');
+                return new ArrayType(extent, decode(s, pos));
+            }
+            case 'L': {
+                int n = readInt(s, pos, ';');
+                TypeList tl = new TypeList();
+                for (int i = 0; i < n; i++) tl.append(decode(s, pos));
+                return tl;
+            }
+            case 'P': {
+                Type params = decode(s, pos);
+                return new FuncType((TypeList) params, decode(s, pos));
+            }
+            default:
+                throw new IllegalArgumentException("Bad type code: " + s);
+        }
+    }
+
+    private static int readInt(String s, int[] pos, char end) {
+        int stop = s.indexOf(end, pos[0]);
+        int v = Integer.parseInt(s.substring(pos[0], stop));
+        pos[0] = stop + 1;
+        return v;
+    }
+}
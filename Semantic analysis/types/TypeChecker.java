@@ -7,12 +7,95 @@ import mocha.SymbolTable;
 import ast.NodeVisitor;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class TypeChecker implements NodeVisitor {
 
     private StringBuilder errorBuffer;
     private SymbolTable table;
     private Symbol currentFunction;
+    // non-null when function bodies should be checked concurrently
+    private ForkJoinPool pool;
+    // incremental mode: dependencies of the last check, and names resolved by the body being checked
+    private boolean incremental;
+    private DependencyGraph graph;
+    private Set<String> currentDeps;
+    // optional persistent cache of function body results
+    private TypeCache cache;
+    // fused mode: nodes are typed as the parser builds them, so visits do not descend
+    private boolean shallow;
+    private boolean incomplete;
+    // fused mode: names of calls that found no exact overload, which a later declaration could take
+    private Set<String> inexactCalls;
+
+    public TypeChecker() {
+    }
+
+    // Checker over an existing table with its own errors (parallel workers, fused mode)
+    private TypeChecker(SymbolTable table) {
+        this.table = table;
+        this.errorBuffer = new StringBuilder();
+    }
+
+    /**
+     * A checker for the fused parse-and-check pipeline. It shares the parser's symbol
+     * table and is applied to each node right after the parser builds it: children are
+     * already typed, so visits only type the node itself, and scopes, variables and
+     * functions are declared as the parser reaches them.
+     */
+    public static TypeChecker fused(SymbolTable parserTable) {
+        TypeChecker tc = new TypeChecker(parserTable);
+        tc.shallow = true;
+        tc.inexactCalls = new HashSet<>();
+        return tc;
+    }
+
+    /**
+     * Fused mode: record that the program uses something a single pass cannot decide the
+     * way check() does (e.g. a forward reference), so the full checker must run.
+     */
+    public void markIncomplete() {
+        incomplete = true;
+    }
+
+    /** Fused mode: true if every node was typed without error. */
+    public boolean isComplete() {
+        return !incomplete && !hasError();
+    }
+
+    /**
+     * Check function bodies concurrently on the common ForkJoinPool.
+     * The error report is identical to the one produced by a sequential check.
+     */
+    public void setParallel(boolean parallel) {
+        this.pool = parallel ? ForkJoinPool.commonPool() : null;
+    }
+
+    /**
+     * Keep a dependency graph between checks. A later check() on this instance only
+     * re-checks function bodies that changed or whose referenced signatures or globals
+     * changed; the other bodies get their types and symbols from the previous check.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        if (!incremental) this.graph = null;
+    }
+
+    /**
+     * Reuse results for function bodies found in the given on-disk cache, and store
+     * the results of bodies that check cleanly.
+     */
+    public void setCache(TypeCache cache) {
+        this.cache = cache;
+    }
+
+    /** Dependencies recorded by the last incremental check, or null. */
+    public DependencyGraph dependencies() {
+        return graph;
+    }
 
     public boolean check(Visitable ast) {
         this.table = new SymbolTable();
@@ -83,8 +166,8 @@ public class TypeChecker implements NodeVisitor {
 
     // A helper for visiting binary expressions
     private void visitBinaryExpression(Expression node, Expression left, Expression right, String operation) {
-        left.accept(this);
-        right.accept(this);
+        descend(left);
+        descend(right);
 
         Type leftType = left.getType();
         Type rightType = right.getType();
@@ -130,55 +213,212 @@ public class TypeChecker implements NodeVisitor {
 
     @Override
     public void visit(Computation node) {
+        if (shallow) {
+            node.setType(new VoidType());
+            return;
+        }
         // (0) Make globals visible to function bodies
         node.variables().accept(this);
 
         // (1) Predeclare all functions with both mangled and base names
         for (Declaration d : node.functions()) {
             if (d instanceof AST.FunctionDeclaration) {
-
             	AST.FunctionDeclaration fd = (AST.FunctionDeclaration) d;
-                // Build the parameter typelist and ensure TypeNodes are set
-                TypeList tl = new TypeList();
-                for (AST.FormalParameter p : fd.getParameters()) {
-                    p.getTypeNode().accept(this);
-                    tl.append(p.getTypeNode().getType());
-                }
-                // Resolve return type
-                fd.getReturnType().accept(this);
-                Type ret = fd.getReturnType().getType();
-                FuncType fty = new FuncType(tl, ret);
-
-                // Mangled name for exact overload match
-                java.util.List<Type> paramList = new java.util.ArrayList<>();
-                for (AST.FormalParameter p : fd.getParameters()) {
-                    paramList.add(p.getTypeNode().getType());
-                }
-                String base = fd.getIdentifier().getName();
-                String mangled = mangleFunc(base, paramList);
-
-                try {
-                    table.insert(mangled, fty);
-                } catch (Throwable e) {
-                    reportError(fd.lineNumber(), fd.charPosition(), e.getMessage());
-                }
-
-                // Also insert the plain base name ONCE (for fallback mismatch diagnostics)
-                try {
-                    table.lookup(base); // already present? fine
-                } catch (Throwable nf) {
-                    try { table.insert(base, fty); }
-                    catch (Throwable ignore) { /* okay if another file inserted it */ }
-                }
+                declareFunction(fd.getIdentifier(), fd.getParameters(), fd.getReturnType(),
+                                fd.lineNumber(), fd.charPosition());
             }
         }
 
         // (2) Now type-check function bodies and main
-        node.functions().accept(this);
+        checkFunctions(node.functions());
         node.mainStatementSequence().accept(this);
         node.setType(new VoidType());
     }
     
+    /**
+     * Declares a function signature in the current scope under its mangled name, and
+     * under its plain name if that is still free. Used for the predeclaration pass, and
+     * by the parser in fused mode as soon as it has read a function header.
+     */
+    public void declareFunction(Identifier id, List<FormalParameter> params, ast.AST.Node returnType, int lineNum, int charPos) {
+        // Build the parameter typelist and ensure TypeNodes are set
+        TypeList tl = new TypeList();
+        List<Type> paramList = new ArrayList<>();
+        for (FormalParameter p : params) {
+            p.getTypeNode().accept(this);
+            tl.append(p.getTypeNode().getType());
+            paramList.add(p.getTypeNode().getType());
+        }
+        // Resolve return type
+        returnType.accept(this);
+        FuncType fty = new FuncType(tl, returnType.getType());
+
+        // Mangled name for exact overload match
+        String base = id.getName();
+        String mangled = mangleFunc(base, paramList);
+        // fused: an earlier call of this name was bound to a built-in or another overload
+        if (shallow && inexactCalls.contains(base)) markIncomplete();
+
+        try {
+            table.insert(mangled, fty);
+        } catch (Throwable e) {
+            reportError(lineNum, charPos, e.getMessage());
+        }
+
+        // Also insert the plain base name ONCE (for fallback mismatch diagnostics)
+        try {
+            table.lookup(base); // already present? fine
+        } catch (Throwable nf) {
+            try { table.insert(base, fty); }
+            catch (Throwable ignore) { /* okay if another file inserted it */ }
+        }
+    }
+
+    /**
+     * Fused mode: the parser is about to read the body of the function with this header.
+     * Parameters are declared in the current scope.
+     */
+    public void beginFunction(Identifier id, List<FormalParameter> params) {
+        List<Type> paramList = new ArrayList<>();
+        for (FormalParameter p : params) paramList.add(p.getTypeNode().getType());
+        try {
+            currentFunction = table.lookup(mangleFunc(id.getName(), paramList));
+        } catch (Throwable e) {
+            markIncomplete();
+            return;
+        }
+        currentFunctionName = id.getName();
+        for (FormalParameter p : params) {
+            try {
+                p.getIdentifier().setSymbol(table.insert(p.getIdentifier().getName(), p.getTypeNode().getType()));
+            } catch (Throwable e) {
+                markIncomplete();
+            }
+        }
+    }
+
+    /** Fused mode: the parser has finished the current function body. */
+    public void endFunction() {
+        currentFunction = null;
+        currentFunctionName = null;
+    }
+
+    private void descend(Visitable child) {
+        if (!shallow) child.accept(this);
+    }
+
+    private void enterScope() {
+        if (!shallow) table.enterScope();
+    }
+
+    private void exitScope() {
+        if (!shallow) table.exitScope();
+    }
+
+    private static final class BodyCheck {
+        final Declaration decl;
+        final String key, fingerprint;
+        final Set<String> deps;
+        ForkJoinTask<String> task;
+        String errors;
+
+        BodyCheck(Declaration decl, String key, String fingerprint, Set<String> deps) {
+            this.decl = decl;
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.deps = deps;
+        }
+    }
+
+    // Each body only reads the globals and signatures predeclared above, so bodies can
+    // be checked independently (and in parallel). Errors are merged in source order.
+    private void checkFunctions(DeclarationList funcs) {
+        DependencyGraph previous = graph;
+        graph = incremental ? new DependencyGraph(table.globalScope()) : null;
+        boolean parallel = pool != null && funcs.size() > 1;
+
+        List<BodyCheck> checks = new ArrayList<>();
+        for (Declaration d : funcs) {
+            BodyCheck bc;
+            if ((graph != null || cache != null) && d instanceof FunctionDeclaration) {
+                FunctionDeclaration fd = (FunctionDeclaration) d;
+                String key = functionKey(fd);
+                String fingerprint = DependencyGraph.fingerprint(fd);
+                if (graph != null && previous != null && previous.reuse(key, fingerprint, fd, graph)) {
+                    continue;
+                }
+                Set<String> cached = (cache != null) ? cache.load(fingerprint, fd, table.globalScope()) : null;
+                if (cached != null) {
+                    if (graph != null) graph.record(key, fingerprint, fd, cached, true);
+                    continue;
+                }
+                bc = new BodyCheck(d, key, fingerprint, new HashSet<>());
+            } else {
+                bc = new BodyCheck(d, null, null, null);
+            }
+
+            if (parallel) {
+                TypeChecker worker = new TypeChecker(table.layered());
+                final BodyCheck job = bc;
+                bc.task = pool.submit(() -> worker.checkBody(job.decl, job.deps));
+            } else {
+                bc.errors = checkBody(bc.decl, bc.deps);
+            }
+            checks.add(bc);
+        }
+
+        for (BodyCheck bc : checks) {
+            if (bc.task != null) {
+                bc.errors = bc.task.join();
+                errorBuffer.append(bc.errors);
+            }
+            if (bc.key == null) continue;
+            FunctionDeclaration fd = (FunctionDeclaration) bc.decl;
+            if (graph != null) {
+                graph.record(bc.key, bc.fingerprint, fd, bc.deps, bc.errors.isEmpty());
+            }
+            if (cache != null && bc.errors.isEmpty()) {
+                cache.store(bc.fingerprint, fd, bc.deps, table.globalScope());
+            }
+        }
+        funcs.setType(new VoidType());
+    }
+
+    // Checks one declaration and returns the errors it added; resolved names go to deps
+    private String checkBody(Declaration d, Set<String> deps) {
+        int mark = errorBuffer.length();
+        currentDeps = deps;
+        try {
+            d.accept(this);
+        } finally {
+            currentDeps = null;
+        }
+        return errorBuffer.substring(mark);
+    }
+
+    private String functionKey(FunctionDeclaration fd) {
+        List<Type> paramList = new ArrayList<>();
+        for (FormalParameter p : fd.getParameters()) {
+            paramList.add(p.getTypeNode().getType());
+        }
+        return mangleFunc(fd.getIdentifier().getName(), paramList);
+    }
+
+    // Name lookup from within an expression; a global name (or one that is not declared
+    // at all, which a later global declaration could supply) is remembered as a
+    // dependency of the current body, a local or parameter is not
+    private Symbol lookup(String name) {
+        Symbol sym;
+        try {
+            sym = table.lookup(name);
+        } catch (Error notFound) {
+            if (currentDeps != null) currentDeps.add(name);
+            throw notFound;
+        }
+        if (currentDeps != null && table.globalScope().get(name) == sym) currentDeps.add(name);
+        return sym;
+    }
+
     // LITERALS
     @Override
     public void visit(BoolLiteral node) {
@@ -199,7 +439,7 @@ public class TypeChecker implements NodeVisitor {
     @Override
     public void visit(AddressOf node) {
         try {
-            Symbol symbol = table.lookup(node.getIdentifier().getName());
+            Symbol symbol = lookup(node.getIdentifier().getName());
             node.getIdentifier().setSymbol(symbol);
             node.setType(symbol.type());
         } catch (Throwable e) {
@@ -221,8 +461,8 @@ public class TypeChecker implements NodeVisitor {
     @Override
     public void visit(AST.ArrayIndex node) {
         // Type-check children first
-        node.getBase().accept(this);
-        node.getIndex().accept(this);
+        descend(node.getBase());
+        descend(node.getIndex());
 
         Type baseType  = node.getBase().getType();
         Type indexType = node.getIndex().getType();
@@ -260,6 +500,7 @@ public class TypeChecker implements NodeVisitor {
                 node.setType(new ErrorType(msg));
                 return;
             }
+            node.setInBounds(extent >= 0);
         }
 
         // Normal rule
@@ -282,7 +523,7 @@ public class TypeChecker implements NodeVisitor {
     // EXPRESSIONS
     @Override
     public void visit(LogicalNot node) {
-        node.getExpression().accept(this);
+        descend(node.getExpression());
         Type exprType = node.getExpression().getType();
         Type resultType = exprType.not();
 
@@ -294,8 +535,8 @@ public class TypeChecker implements NodeVisitor {
 
     @Override
     public void visit(Power node) {
-        node.getBase().accept(this);
-        node.getExponent().accept(this);
+        descend(node.getBase());
+        descend(node.getExponent());
 
         Type baseType = node.getBase().getType();
         Type expType  = node.getExponent().getType();
@@ -361,8 +602,8 @@ public class TypeChecker implements NodeVisitor {
     // STATEMENTS
     @Override
     public void visit(Assignment node) {
-        node.getDestination().accept(this);
-        node.getSource().accept(this);
+        descend(node.getDestination());
+        descend(node.getSource());
         Type destType = node.getDestination().getType();
         Type sourceType = node.getSource().getType();
         
@@ -384,47 +625,47 @@ public class TypeChecker implements NodeVisitor {
 
     @Override
     public void visit(IfStatement node) {
-        node.getCondition().accept(this);
+        descend(node.getCondition());
         Type condType = node.getCondition().getType();
 
         if (!(condType instanceof BoolType)) {
             reportError(node.lineNumber(), node.charPosition(), "IfStat requires bool condition not " + condType + ".");
         }
 
-        table.enterScope();
-        node.getThenBlock().accept(this);
-        table.exitScope();
+        enterScope();
+        descend(node.getThenBlock());
+        exitScope();
 
         if (node.getElseBlock() != null) {
-            table.enterScope();
-            node.getElseBlock().accept(this);
-            table.exitScope();
+            enterScope();
+            descend(node.getElseBlock());
+            exitScope();
         }
         node.setType(new VoidType());
     }
     
     @Override
     public void visit(WhileStatement node) {
-        node.getCondition().accept(this);
+        descend(node.getCondition());
         Type condType = node.getCondition().getType();
 
         if (!(condType instanceof BoolType)) {
             reportError(node.lineNumber(), node.charPosition(), "WhileStat requires bool condition not " + shortName(condType) + ".");
         }
 
-        table.enterScope();
-        node.getBody().accept(this);
-        table.exitScope();
+        enterScope();
+        descend(node.getBody());
+        exitScope();
         node.setType(new VoidType());
     }
 
     @Override
     public void visit(RepeatStatement node) {
-        table.enterScope();
-        node.getBody().accept(this);
-        table.exitScope();
+        enterScope();
+        descend(node.getBody());
+        exitScope();
         
-        node.getCondition().accept(this);
+        descend(node.getCondition());
         Type condType = node.getCondition().getType();
 
         if (!(condType instanceof BoolType)) {
@@ -446,7 +687,7 @@ public class TypeChecker implements NodeVisitor {
 
         if (expected instanceof VoidType) {
             if (node.getValue() != null) {
-                node.getValue().accept(this);
+                descend(node.getValue());
                 Type actual = node.getValue().getType();
                 // legacy wording you want:
                 reportError(node.lineNumber(), node.charPosition(),
@@ -457,7 +698,7 @@ public class TypeChecker implements NodeVisitor {
                 reportError(node.lineNumber(), node.charPosition(),
                     "Function " + fnName + " must return a value of type " + expected + ".");
             } else {
-                node.getValue().accept(this);
+                descend(node.getValue());
                 Type actual = node.getValue().getType();
                 Type ok = expected.assign(actual);
                 if (ok instanceof ErrorType) {
@@ -473,8 +714,9 @@ public class TypeChecker implements NodeVisitor {
     @Override
     public void visit(StatementSequence node) {
         for (Statement s : node) {
-            if (s != null) s.accept(this);
+            if (s != null) descend(s);
         }
+        BoundsAnalysis.markLoops(node, table.globalScope());
         node.setType(new VoidType());
     }
     
@@ -482,7 +724,7 @@ public class TypeChecker implements NodeVisitor {
     @Override
     public void visit(FunctionCall node) {
         // 1) type-check args and collect both TypeList + java list
-        node.getArguments().accept(this);
+        descend(node.getArguments());
         TypeList argTL = (TypeList) node.getArguments().getType();
 
         java.util.List<Type> argList = new java.util.ArrayList<>();
@@ -498,12 +740,13 @@ public class TypeChecker implements NodeVisitor {
 
         try {
             // exact overload
-            funcSymbol = table.lookup(mangled);
+            funcSymbol = lookup(mangled);
             resultType = funcSymbol.type().call(argTL);
         } catch (Throwable notFound) {
             try {
                 // fallback: base name (built-ins / non-overloaded insertions)
-                funcSymbol = table.lookup(base);
+                if (shallow) inexactCalls.add(base);
+                funcSymbol = lookup(base);
                 resultType = funcSymbol.type().call(argTL);
             } catch (Throwable nf2) {
                 reportError(node.lineNumber(), node.charPosition(),
@@ -530,7 +773,7 @@ public class TypeChecker implements NodeVisitor {
     public void visit(ArgumentList node) {
         TypeList argTypes = new TypeList();
         for (Expression expr : node.getArguments()) {
-            expr.accept(this);
+            descend(expr);
             // Change this line from .add() to .append()
             argTypes.append(expr.getType());
         }
@@ -539,6 +782,16 @@ public class TypeChecker implements NodeVisitor {
     
     @Override
     public void visit(FunctionDeclaration node) {
+        if (shallow) {
+            // fused: the body was typed between beginFunction and endFunction
+            try {
+                node.getIdentifier().setSymbol(table.lookup(functionKey(node)));
+            } catch (Throwable e) {
+                markIncomplete();
+            }
+            node.setType(new VoidType());
+            return;
+        }
         // Build types (ensures TypeNodes are set)
         TypeList paramTL = new TypeList();
         List<Type> paramList = new ArrayList<>();
@@ -589,8 +842,8 @@ public class TypeChecker implements NodeVisitor {
 
     @Override
     public void visit(FunctionBody node) {
-        node.getDeclarations().accept(this);
-        node.getStatements().accept(this);
+        descend(node.getDeclarations());
+        descend(node.getStatements());
         node.setType(new VoidType());
     }
 
@@ -598,7 +851,7 @@ public class TypeChecker implements NodeVisitor {
     @Override
     public void visit(DeclarationList node) {
         for (Declaration d : node) {
-            d.accept(this);
+            descend(d);
         }
         node.setType(new VoidType());
     }
@@ -606,18 +859,27 @@ public class TypeChecker implements NodeVisitor {
     @Override
     public void visit(VariableDeclaration node) {
         // First, visit the type node
-        node.getTypeNode().accept(this);
+        descend(node.getTypeNode());
         Type varType = node.getTypeNode().getType();
 
         // Check for invalid array sizes
         AST.Identifier id = node.getIdentifier();
         checkArrayDimensions(varType, id.lineNumber(), id.charPosition(), id.getName());
 
-        try {
-            Symbol sym = table.insert(node.getIdentifier().getName(), varType);
-            node.getIdentifier().setSymbol(sym);
-        } catch (Throwable e) {
-            reportError(node.lineNumber(), node.charPosition(), e.getMessage());
+        if (shallow) {
+            // fused: the parser has already declared it
+            try {
+                node.getIdentifier().setSymbol(table.lookup(node.getIdentifier().getName()));
+            } catch (Throwable e) {
+                markIncomplete();
+            }
+        } else {
+            try {
+                Symbol sym = table.insert(node.getIdentifier().getName(), varType);
+                node.getIdentifier().setSymbol(sym);
+            } catch (Throwable e) {
+                reportError(node.lineNumber(), node.charPosition(), e.getMessage());
+            }
         }
 
         // Variable declarations themselves do not have a runtime type
@@ -642,7 +904,7 @@ public class TypeChecker implements NodeVisitor {
     @Override
     public void visit(Identifier node) {
         try {
-            Symbol symbol = table.lookup(node.getName());
+            Symbol symbol = lookup(node.getName());
             node.setSymbol(symbol);
             node.setType(symbol.type());
         } catch (Throwable e) {
@@ -660,7 +922,7 @@ public class TypeChecker implements NodeVisitor {
     @Override
     public void visit(UnaryMinus unaryMinus) {
         // Typecheck the inner expression
-        unaryMinus.getExpr().accept(this);
+        descend(unaryMinus.getExpr());
 
         // Check if the type is numeric
         Type exprType = unaryMinus.getExpr().getType();
@@ -0,0 +1,33 @@
+#!/usr/bin/env bash
+#
+# Companion to run.sh for testcases that need command line options. Each testcase in
+# misc/flagtests starts with a line
+#
+#     // Run with: <options>
+#
+# and is run from the repository root as "-s <testcase> <options>". As with run.sh, only
+# stdout is compared to the .out file of the same name. Files the options refer to
+# (e.g. the edited program of -inc) end in .edit, so they are not run on their own.
+
+fail=0
+dir=misc/flagtests
+echo "Running tests with options..."
+files=$(find $dir -type f -name "*.txt" -exec basename {} \; | sort)
+for file in $files; do
+	file=${file%.txt}
+	flags=$(sed -n '1s|^// Run with: ||p' $dir/$file.txt)
+	echo "Running $file ($flags)"
+	mvn -q exec:java -Dexec.args="-s $dir/$file.txt $flags" | \
+		diff --ignore-all-space - $dir/$file.out > /dev/null
+	if [ $? -ne 0 ]; then
+		echo "Test: $file failed"
+		fail=1
+	fi
+done
+if [ $fail -eq 1 ]; then
+	echo "Some tests failed"
+	exit 1
+else
+	echo "All tests passed!!"
+	exit 0
+fi